@@ -0,0 +1,26 @@
+package me.archdukeliamus.dygenerate.gradle;
+
+import org.gradle.api.provider.Property;
+
+/**
+ * The <code>dygenerate</code> extension, setting the defaults for the transform tasks of every source set.
+ */
+public abstract class DygenerateExtension {
+	/**
+	 * Whether to evaluate pure dynamic constants of primitive or <code>String</code> type at transform time, false by default.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setFoldConstants(boolean)
+	 */
+	public abstract Property<Boolean> getFoldConstants();
+
+	/**
+	 * Whether to replace <code>MethodHandle</code> fields only used to <code>invokeExact</code> with call sites, false by default.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setHandleFields(boolean)
+	 */
+	public abstract Property<Boolean> getHandleFields();
+
+	/**
+	 * Whether to look up classes, methods and fields named by constants only once, false by default.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setReflectionConstants(boolean)
+	 */
+	public abstract Property<Boolean> getReflectionConstants();
+}
@@ -0,0 +1,55 @@
+package me.archdukeliamus.dygenerate.gradle;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.compile.AbstractCompile;
+import org.gradle.api.tasks.compile.JavaCompile;
+
+/**
+ * Adds a {@link DygenerateTransform} task after the Java compile task of every source set. The compiler writes to a directory of its own
+ * under <code>build/dygenerate</code>, and the transform task writes the transformed classes to the directory the compiler would have used,
+ * in its place as the classes directory of the source set, so that tests, jars and dependent projects all see the transformed classes. The
+ * compiler's own output is never modified, which keeps incremental compilation working.
+ * <br><br>
+ * The plugin does nothing until the <code>java</code> plugin is applied.
+ */
+public class DygeneratePlugin implements Plugin<Project> {
+	/**
+	 * Apply the plugin.
+	 */
+	@Override
+	public void apply(Project project) {
+		DygenerateExtension extension = project.getExtensions().create("dygenerate", DygenerateExtension.class);
+		extension.getFoldConstants().convention(false);
+		extension.getHandleFields().convention(false);
+		extension.getReflectionConstants().convention(false);
+		project.getPlugins().withType(JavaPlugin.class, plugin -> {
+			SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+			sourceSets.all(sourceSet -> addTransform(project, extension, sourceSet));
+		});
+	}
+
+	private static void addTransform(Project project, DygenerateExtension extension, SourceSet sourceSet) {
+		TaskProvider<JavaCompile> compile = project.getTasks().named(sourceSet.getCompileJavaTaskName(), JavaCompile.class);
+		Provider<Directory> untransformed = project.getLayout().getBuildDirectory().dir("dygenerate/untransformed/java/" + sourceSet.getName());
+		TaskProvider<DygenerateTransform> transform = project.getTasks().register(sourceSet.getTaskName("dygenerate", "classes"),
+				DygenerateTransform.class, task -> {
+			task.setDescription("Transforms the compiled " + sourceSet.getName() + " classes with Dygenerate.");
+			task.getClasses().from(compile.flatMap(AbstractCompile::getDestinationDirectory));
+			task.getFoldConstants().convention(extension.getFoldConstants());
+			task.getHandleFields().convention(extension.getHandleFields());
+			task.getReflectionConstants().convention(extension.getReflectionConstants());
+		});
+		// the transform takes over the classes directory, so move the compiler out of its way
+		sourceSet.getJava().compiledBy(transform, DygenerateTransform::getOutputDirectory);
+		sourceSet.compiledBy(transform);
+		project.getTasks().named(sourceSet.getClassesTaskName()).configure(task -> task.dependsOn(transform));
+		compile.configure(task -> task.getDestinationDirectory().set(untransformed));
+	}
+}
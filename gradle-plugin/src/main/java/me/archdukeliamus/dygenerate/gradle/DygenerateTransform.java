@@ -0,0 +1,120 @@
+package me.archdukeliamus.dygenerate.gradle;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Transforms compiled classes into an output directory, keeping their paths relative to the directories they come from. Other files found
+ * among the classes, such as resources written by annotation processors, are copied unchanged.
+ * <br><br>
+ * The task is incremental: after a change, only the class files added or modified since the last run are transformed, and the outputs of
+ * those removed are deleted. Every class is transformed on its own, so this gives the same result as a full run. The files are handed to
+ * workers in batches, so that they are transformed in parallel up to the number of workers the build allows, and the outputs are cacheable.
+ */
+@CacheableTask
+public abstract class DygenerateTransform extends DefaultTask {
+	private static final int FILES_PER_BATCH = 64; // enough to outweigh the cost of a work item, few enough to spread over the workers
+
+	/**
+	 * The compiled classes to transform.
+	 */
+	@Incremental
+	@InputFiles
+	@PathSensitive(PathSensitivity.RELATIVE)
+	public abstract ConfigurableFileCollection getClasses();
+
+	/**
+	 * Whether to evaluate pure dynamic constants of primitive or <code>String</code> type at transform time.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setFoldConstants(boolean)
+	 */
+	@Input
+	public abstract Property<Boolean> getFoldConstants();
+
+	/**
+	 * Whether to replace <code>MethodHandle</code> fields only used to <code>invokeExact</code> with call sites.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setHandleFields(boolean)
+	 */
+	@Input
+	public abstract Property<Boolean> getHandleFields();
+
+	/**
+	 * Whether to look up classes, methods and fields named by constants only once.
+	 * @see me.archdukeliamus.dygenerate.TransformOptions#setReflectionConstants(boolean)
+	 */
+	@Input
+	public abstract Property<Boolean> getReflectionConstants();
+
+	/**
+	 * The directory to write the transformed classes to.
+	 */
+	@OutputDirectory
+	public abstract DirectoryProperty getOutputDirectory();
+
+	@Inject
+	protected abstract WorkerExecutor getWorkerExecutor();
+
+	@Inject
+	protected abstract FileSystemOperations getFileSystemOperations();
+
+	/**
+	 * Transform the classes changed since the last run, or all of them if the last run is unknown.
+	 */
+	@TaskAction
+	public void transform(InputChanges changes) {
+		File outputDirectory = getOutputDirectory().get().getAsFile();
+		if (!changes.isIncremental()) {
+			// the outputs may be from anything, so start over
+			getFileSystemOperations().delete(spec -> spec.delete(outputDirectory));
+			outputDirectory.mkdirs();
+		}
+		WorkQueue queue = getWorkerExecutor().noIsolation();
+		Map<File,File> batch = new LinkedHashMap<>();
+		for (FileChange change : changes.getFileChanges(getClasses())) {
+			if (change.getFileType() == FileType.DIRECTORY) continue;
+			File target = new File(outputDirectory, change.getNormalizedPath());
+			if (change.getChangeType() == ChangeType.REMOVED) {
+				target.delete();
+				continue;
+			}
+			batch.put(target, change.getFile());
+			if (batch.size() == FILES_PER_BATCH) {
+				submit(queue, batch);
+				batch = new LinkedHashMap<>();
+			}
+		}
+		if (!batch.isEmpty()) submit(queue, batch);
+		// failures are reported when the queue finishes
+	}
+
+	private void submit(WorkQueue queue, Map<File,File> batch) {
+		queue.submit(TransformClasses.class, parameters -> {
+			parameters.getFiles().set(batch);
+			parameters.getFoldConstants().set(getFoldConstants());
+			parameters.getHandleFields().set(getHandleFields());
+			parameters.getReflectionConstants().set(getReflectionConstants());
+		});
+	}
+}
@@ -0,0 +1,80 @@
+package me.archdukeliamus.dygenerate.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import me.archdukeliamus.dygenerate.ClassTransformException;
+import me.archdukeliamus.dygenerate.Dygenerate;
+import me.archdukeliamus.dygenerate.TransformOptions;
+
+/**
+ * A batch of files for {@link DygenerateTransform} to transform in one worker. A class that fails does not stop the rest of the batch; the
+ * failures are reported together at the end.
+ */
+public abstract class TransformClasses implements WorkAction<TransformClasses.Parameters> {
+	/**
+	 * The files of a batch.
+	 */
+	public interface Parameters extends WorkParameters {
+		/**
+		 * The files to write, each mapped to the file to transform into it.
+		 */
+		MapProperty<File,File> getFiles();
+
+		/**
+		 * Whether to fold constants.
+		 */
+		Property<Boolean> getFoldConstants();
+
+		/**
+		 * Whether to replace method handle fields.
+		 */
+		Property<Boolean> getHandleFields();
+
+		/**
+		 * Whether to make reflective lookups constant.
+		 */
+		Property<Boolean> getReflectionConstants();
+	}
+
+	/**
+	 * Transform the batch.
+	 */
+	@Override
+	public void execute() {
+		TransformOptions options = new TransformOptions();
+		options.setFoldConstants(getParameters().getFoldConstants().get());
+		options.setHandleFields(getParameters().getHandleFields().get());
+		options.setReflectionConstants(getParameters().getReflectionConstants().get());
+		List<String> errors = new ArrayList<>();
+		for (Map.Entry<File,File> entry : getParameters().getFiles().get().entrySet()) {
+			File target = entry.getKey();
+			File source = entry.getValue();
+			try {
+				byte[] bytecode = Files.readAllBytes(source.toPath());
+				if (source.getName().endsWith(".class")) {
+					bytecode = Dygenerate.transformBytecodes(bytecode, options, null);
+				}
+				Files.createDirectories(target.getParentFile().toPath());
+				Files.write(target.toPath(), bytecode);
+			} catch (IOException ex) {
+				errors.add(source + ": I/O problem: " + ex.getMessage());
+			} catch (ClassTransformException ex) {
+				errors.add(source + ": problem transforming bytecode: " + ex.getMessage());
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new GradleException(String.join("\n", errors));
+		}
+	}
+}
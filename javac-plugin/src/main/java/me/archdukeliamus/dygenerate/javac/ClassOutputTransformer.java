@@ -0,0 +1,71 @@
+package me.archdukeliamus.dygenerate.javac;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import me.archdukeliamus.dygenerate.ClassTransformException;
+import me.archdukeliamus.dygenerate.Dygenerate;
+import me.archdukeliamus.dygenerate.TransformOptions;
+import me.archdukeliamus.dygenerate.TransformReport;
+
+/**
+ * Transforms each class once <code>javac</code> has generated it, rewriting the class file in the class output location. Classes left
+ * unchanged are not written again. The class is read back and written through the filer, and so through the compiler's file manager, which
+ * need not keep its output on a file system; the transformed class is attributed to the type it was compiled from, so that incremental
+ * builds know where it came from.
+ */
+final class ClassOutputTransformer implements TaskListener {
+	private final Filer filer;
+	private final Elements elements;
+	private final Messager messager;
+	private final TransformOptions options;
+
+	ClassOutputTransformer(Filer filer, Elements elements, Messager messager, TransformOptions options) {
+		this.filer = filer;
+		this.elements = elements;
+		this.messager = messager;
+		this.options = options;
+	}
+
+	@Override
+	public void finished(TaskEvent event) {
+		if (event.getKind() != TaskEvent.Kind.GENERATE) return;
+		TypeElement type = event.getTypeElement();
+		PackageElement pkg = elements.getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String binaryName = elements.getBinaryName(type).toString();
+		String fileName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + ".class";
+		try {
+			FileObject file = filer.getResource(StandardLocation.CLASS_OUTPUT, packageName, fileName);
+			byte[] classBytecode;
+			try (InputStream in = file.openInputStream()) {
+				classBytecode = in.readAllBytes();
+			}
+			TransformReport report = new TransformReport(); // only to tell whether the class changed
+			classBytecode = Dygenerate.transformBytecodes(classBytecode, options, report);
+			if (report.getChangedClasses().isEmpty()) return;
+			// the compiler writes classes behind the filer's back, so the filer lets them be created once more
+			FileObject transformed = filer.createResource(StandardLocation.CLASS_OUTPUT, packageName, fileName, type);
+			try (OutputStream out = transformed.openOutputStream()) {
+				out.write(classBytecode);
+			}
+		} catch (IOException | IllegalArgumentException ex) {
+			messager.printMessage(Diagnostic.Kind.ERROR, binaryName + ": I/O problem rewriting class: " + ex.getMessage(), type);
+		} catch (ClassTransformException ex) {
+			messager.printMessage(Diagnostic.Kind.ERROR, binaryName + ": problem transforming bytecode: " + ex.getMessage(), type);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package me.archdukeliamus.dygenerate.javac;
+
+import java.lang.reflect.Field;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+import com.sun.source.util.JavacTask;
+
+import me.archdukeliamus.dygenerate.TransformOptions;
+
+/**
+ * Transforms classes as <code>javac</code> compiles them, instead of in a separate pass over the compiled output. Put the jar of this
+ * project and its dependencies on the annotation processor path, for example with Gradle's <code>annotationProcessor</code> configuration,
+ * and each class is transformed as by {@link me.archdukeliamus.dygenerate.Dygenerate#transformBytecodes(byte[], TransformOptions,
+ * me.archdukeliamus.dygenerate.TransformReport) Dygenerate.transformBytecodes} right after <code>javac</code> writes it. The same
+ * annotations and bootstrap data strings apply. Problems are reported as compile errors against the class.
+ * <br><br>
+ * This is an annotation processor only so that it is found and given the class output location through public compiler API. It claims
+ * the annotations of Dygenerate, which no other processor handles, and no others, and generates nothing but the transformed classes. It
+ * is an isolating processor for Gradle's incremental compilation, as each class is transformed on its own.
+ * <br><br>
+ * The option <code>-Adygenerate.foldConstants=true</code> enables constant folding, <code>-Adygenerate.handleFields=true</code> the
+ * replacement of method handle fields and <code>-Adygenerate.reflectionConstants=true</code> constant reflective lookups.
+ */
+@SupportedAnnotationTypes({"me.archdukeliamus.dygenerate.InvokeDynamic", "me.archdukeliamus.dygenerate.ConstantDynamic",
+		"me.archdukeliamus.dygenerate.LazyConstant"})
+@SupportedOptions({DygenerateProcessor.FOLD_CONSTANTS, DygenerateProcessor.HANDLE_FIELDS, DygenerateProcessor.REFLECTION_CONSTANTS})
+public final class DygenerateProcessor extends AbstractProcessor {
+	static final String FOLD_CONSTANTS = "dygenerate.foldConstants";
+	static final String HANDLE_FIELDS = "dygenerate.handleFields";
+	static final String REFLECTION_CONSTANTS = "dygenerate.reflectionConstants";
+
+	/**
+	 * Create the processor, as the compiler does.
+	 */
+	public DygenerateProcessor() {}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		JavacTask task;
+		try {
+			task = JavacTask.instance(unwrap(processingEnv));
+		} catch (IllegalArgumentException ex) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Dygenerate only transforms classes compiled by javac");
+			return;
+		}
+		TransformOptions options = new TransformOptions();
+		options.setFoldConstants(Boolean.parseBoolean(processingEnv.getOptions().get(FOLD_CONSTANTS)));
+		options.setHandleFields(Boolean.parseBoolean(processingEnv.getOptions().get(HANDLE_FIELDS)));
+		options.setReflectionConstants(Boolean.parseBoolean(processingEnv.getOptions().get(REFLECTION_CONSTANTS)));
+		task.addTaskListener(new ClassOutputTransformer(processingEnv.getFiler(), processingEnv.getElementUtils(), processingEnv.getMessager(),
+				options));
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		return true; // the annotations are read from the class files as they are transformed
+	}
+
+	// Gradle's incremental compilation wraps the compiler's environment in one of its own, keeping the original in a field named delegate
+	private static ProcessingEnvironment unwrap(ProcessingEnvironment processingEnv) {
+		for (Class<?> cls = processingEnv.getClass(); cls != Object.class; cls = cls.getSuperclass()) {
+			try {
+				Field delegate = cls.getDeclaredField("delegate");
+				delegate.setAccessible(true);
+				Object wrapped = delegate.get(processingEnv);
+				if (wrapped instanceof ProcessingEnvironment) return unwrap((ProcessingEnvironment) wrapped);
+			} catch (NoSuchFieldException ex) {
+				continue;
+			} catch (IllegalAccessException | RuntimeException ex) {
+				break; // not a wrapper we can see into
+			}
+		}
+		return processingEnv;
+	}
+}
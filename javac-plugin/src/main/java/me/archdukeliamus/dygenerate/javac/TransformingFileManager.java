@@ -0,0 +1,73 @@
+package me.archdukeliamus.dygenerate.javac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+
+import me.archdukeliamus.dygenerate.ClassTransformException;
+import me.archdukeliamus.dygenerate.Dygenerate;
+import me.archdukeliamus.dygenerate.TransformOptions;
+
+/**
+ * A file manager transforming classes on their way out of the compiler, for code that compiles through <code>javax.tools</code>. Wrap the
+ * file manager passed to <code>JavaCompiler.getTask</code> with it, and every class the compiler writes is transformed in memory before it
+ * reaches the wrapped file manager, so it is never written untransformed or read back.
+ * <br><br>
+ * A class that cannot be transformed fails the write with an <code>IOException</code>, which the compiler reports as an error.
+ */
+public final class TransformingFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+	private final TransformOptions options;
+
+	/**
+	 * Wrap a file manager.
+	 * @param fileManager the file manager to write the transformed classes to
+	 * @param options the optional passes to run
+	 */
+	public TransformingFileManager(JavaFileManager fileManager, TransformOptions options) {
+		super(fileManager);
+		this.options = options;
+	}
+
+	@Override
+	public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+			throws IOException {
+		JavaFileObject file = super.getJavaFileForOutput(location, className, kind, sibling);
+		if (kind != JavaFileObject.Kind.CLASS) return file;
+		return new ForwardingJavaFileObject<JavaFileObject>(file) {
+			@Override
+			public OutputStream openOutputStream() {
+				// collect the class, and transform it when the compiler closes the stream
+				return new FilterOutputStream(new ByteArrayOutputStream()) {
+					private boolean closed;
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						if (closed) return;
+						closed = true;
+						byte[] classBytecode;
+						try {
+							classBytecode = Dygenerate.transformBytecodes(((ByteArrayOutputStream) out).toByteArray(), options, null);
+						} catch (ClassTransformException ex) {
+							throw new IOException(className + ": problem transforming bytecode: " + ex.getMessage(), ex);
+						}
+						try (OutputStream target = fileObject.openOutputStream()) {
+							target.write(classBytecode);
+						}
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,141 @@
+package me.archdukeliamus.dygenerate.bench;
+
+import static me.archdukeliamus.dygenerate.BootstrapDataStrings.*;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates a synthetic corpus of classes for the startup benchmark, as they would come out of <code>javac</code> before post-processing.
+ * Each class has a number of surrogate methods, cycling through a mix of indy and condy bootstraps from {@link me.archdukeliamus.dygenerate.BootstrapDataStrings},
+ * and a <code>public static int run()</code> method calling every surrogate once and returning a hash of the results. Every site has its
+ * own static arguments, so that no two sites share a constant pool entry, except for the duck typed sites, which are all calls to a single
+ * <code>length</code> surrogate as the call site name is the name of the method called.
+ */
+final class CorpusGenerator {
+	/**
+	 * The package of the generated classes.
+	 */
+	static final String PACKAGE = "me/archdukeliamus/dygenerate/bench/corpus";
+	private static final String INDY = "Lme/archdukeliamus/dygenerate/InvokeDynamic;";
+	private static final String CONDY = "Lme/archdukeliamus/dygenerate/ConstantDynamic;";
+	private static final int KINDS = 6;
+
+	private CorpusGenerator() {}
+
+	/**
+	 * Get the internal name of a generated class.
+	 */
+	static String className(int index) {
+		return PACKAGE + "/C" + index;
+	}
+
+	/**
+	 * Generate one class of the corpus.
+	 * @param index the index of the class, used in its name and in the static arguments of its sites
+	 * @param sites the number of surrogate sites in the class
+	 * @return the class bytecode, not yet post-processed
+	 */
+	static byte[] generate(int index, int sites) {
+		String className = className(index);
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object", null);
+		for (int i = 0; i < sites; i++) {
+			if (i % KINDS != 1 || i == 1) surrogate(cw, index, i);
+		}
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()I", null, null);
+		mv.visitCode();
+		mv.visitInsn(Opcodes.ICONST_0);
+		for (int i = 0; i < sites; i++) {
+			call(mv, className, i);
+			mv.visitInsn(Opcodes.IADD);
+		}
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	// declare the surrogate for a site, with a body that is never run
+	private static void surrogate(ClassWriter cw, int index, int site) {
+		String bootstrap;
+		String descriptor;
+		boolean condy = false;
+		switch (site % KINDS) {
+		case 0:
+			bootstrap = B_FORMAT + " {\"c" + index + " s" + site + " %d\"}";
+			descriptor = "(I)" + D_STRING;
+			break;
+		case 1:
+			bootstrap = B_DUCKTYPE_CALL;
+			descriptor = "(" + D_OBJECT + ")I";
+			break;
+		case 2:
+			bootstrap = B_STRING_SWITCH + " {\"a" + site + "\", \"b" + site + "\", \"c" + index + "\"}";
+			descriptor = "(" + D_STRING + ")I";
+			break;
+		case 3:
+			bootstrap = B_MEMOIZE + " {handle invokestatic java/lang/Integer.bitCount:(I)I}";
+			descriptor = "(I)I";
+			break;
+		case 4:
+			bootstrap = B_CONDY_BIGINTEGER + " {\"" + index + "000" + site + "\"}";
+			descriptor = "()Ljava/math/BigInteger;";
+			condy = true;
+			break;
+		default:
+			bootstrap = B_CONDY_PATTERN + " {\"c" + index + "s" + site + "[a-z]+\"}";
+			descriptor = "()Ljava/util/regex/Pattern;";
+			condy = true;
+			break;
+		}
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, name(site), descriptor, null, null);
+		AnnotationVisitor av = mv.visitAnnotation(condy ? CONDY : INDY, false);
+		av.visit("value", bootstrap);
+		av.visitEnd();
+		mv.visitCode();
+		mv.visitInsn(Opcodes.ACONST_NULL);
+		mv.visitInsn(Opcodes.ATHROW);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	// call the surrogate for a site, leaving an int derived from its result on the stack
+	private static void call(MethodVisitor mv, String className, int site) {
+		switch (site % KINDS) {
+		case 0:
+			mv.visitLdcInsn(site);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "(I)" + D_STRING, false);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+			break;
+		case 1:
+			mv.visitLdcInsn("length");
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "(" + D_OBJECT + ")I", false);
+			break;
+		case 2:
+			mv.visitLdcInsn("b" + site);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "(" + D_STRING + ")I", false);
+			break;
+		case 3:
+			mv.visitLdcInsn(site);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "(I)I", false);
+			break;
+		case 4:
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "()Ljava/math/BigInteger;", false);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/math/BigInteger", "intValue", "()I", false);
+			break;
+		default:
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, name(site), "()Ljava/util/regex/Pattern;", false);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/util/regex/Pattern", "flags", "()I", false);
+			break;
+		}
+	}
+
+	private static String name(int site) {
+		return site % KINDS == 1 ? "length" : "site" + site;
+	}
+}
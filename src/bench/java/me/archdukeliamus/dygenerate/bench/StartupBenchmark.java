@@ -0,0 +1,221 @@
+package me.archdukeliamus.dygenerate.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import me.archdukeliamus.dygenerate.Dygenerate;
+
+/**
+ * A benchmark of startup linkage, which steady-state benchmarks do not see. It generates a synthetic corpus with {@link CorpusGenerator},
+ * post-processes it with Dygenerate, then launches fresh JVMs running {@link StartupProbe} over the corpus and takes the median of each
+ * measurement:
+ * <ul>
+ * 	<li><code>transform_ms</code>, the time to post-process the corpus in this JVM
+ * 	<li><code>time_to_first_call_ms</code>, from launching the JVM to the first class of the corpus returning
+ * 	<li><code>first_pass_ms</code>, the time to load and run every other class once
+ * 	<li><code>linkage_ms</code>, the first pass less a second pass over the same, already linked, sites
+ * 	<li><code>metaspace_kb</code>, the growth of metaspace over the first pass
+ * </ul>
+ * If a baseline file is given, each median is compared with it, and the benchmark fails if any is more than the threshold above its
+ * baseline. With <code>--save-baseline</code> the baseline file is written from this run instead; without it, a missing baseline file is an
+ * error rather than being taken from this run, so that a lost baseline cannot pass a regression.
+ * <br><br>
+ * Usage: <code>StartupBenchmark [--classes=</code><i>n</i><code>] [--sites=</code><i>n</i><code>] [--runs=</code><i>n</i><code>]
+ * [--baseline=</code><i>file</i><code>] [--threshold=</code><i>percent</i><code>] [--save-baseline] [--jvm-arg=</code><i>arg</i><code>]...</code>
+ */
+public final class StartupBenchmark {
+	private static final String[] METRICS = {"transform_ms", "time_to_first_call_ms", "first_pass_ms", "linkage_ms", "metaspace_kb"};
+
+	private StartupBenchmark() {}
+
+	public static void main(String[] args) throws Exception {
+		int classes = 2000;
+		int sites = 12;
+		int runs = 5;
+		double threshold = 10;
+		Path baseline = null;
+		boolean saveBaseline = false;
+		List<String> jvmArgs = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--classes=")) {
+				classes = Integer.parseInt(arg.substring("--classes=".length()));
+			} else if (arg.startsWith("--sites=")) {
+				sites = Integer.parseInt(arg.substring("--sites=".length()));
+			} else if (arg.startsWith("--runs=")) {
+				runs = Integer.parseInt(arg.substring("--runs=".length()));
+			} else if (arg.startsWith("--threshold=")) {
+				threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+			} else if (arg.startsWith("--baseline=")) {
+				baseline = Paths.get(arg.substring("--baseline=".length()));
+			} else if (arg.equals("--save-baseline")) {
+				saveBaseline = true;
+			} else if (arg.startsWith("--jvm-arg=")) {
+				jvmArgs.add(arg.substring("--jvm-arg=".length()));
+			} else {
+				System.out.println(arg + ": unknown option");
+				System.exit(2);
+			}
+		}
+		if (classes < 1 || sites < 1 || runs < 1) {
+			System.out.println("classes, sites and runs must be at least 1");
+			System.exit(2);
+		}
+		if (baseline != null && !saveBaseline && !Files.exists(baseline)) {
+			System.out.println(baseline + ": baseline does not exist, run with --save-baseline to create it");
+			System.exit(2);
+		}
+
+		Path corpus = Files.createTempDirectory("dygenerate-corpus");
+		Map<String,Double> medians;
+		try {
+			System.out.println("generating " + classes + " classes of " + sites + " sites in " + corpus);
+			double transform = writeCorpus(corpus, classes, sites);
+			List<Map<String,Double>> samples = new ArrayList<>();
+			for (int i = 0; i < runs; i++) {
+				Map<String,Double> sample = probe(corpus, classes, jvmArgs);
+				sample.put("transform_ms", transform);
+				System.out.println("run " + (i + 1) + ": " + sample);
+				samples.add(sample);
+			}
+			medians = medians(samples);
+		} finally {
+			delete(corpus);
+		}
+		for (String metric : METRICS) {
+			System.out.println(String.format(Locale.ROOT, "%-22s %12.3f", metric, medians.get(metric)));
+		}
+
+		if (baseline == null) return;
+		if (saveBaseline) {
+			writeBaseline(baseline, medians, classes, sites);
+			System.out.println("wrote baseline " + baseline);
+			return;
+		}
+		if (!compare(baseline, medians, threshold, classes, sites)) {
+			System.out.println("startup regression over " + threshold + "% against " + baseline);
+			System.exit(1);
+		}
+	}
+
+	// generate and post-process the corpus, returning the time spent post-processing
+	private static double writeCorpus(Path corpus, int classes, int sites) throws IOException {
+		long nanos = 0;
+		for (int i = 0; i < classes; i++) {
+			byte[] bytecode = CorpusGenerator.generate(i, sites);
+			long start = System.nanoTime();
+			bytecode = Dygenerate.transformBytecodes(bytecode);
+			nanos += System.nanoTime() - start;
+			Path path = corpus.resolve(CorpusGenerator.className(i) + ".class");
+			Files.createDirectories(path.getParent());
+			Files.write(path, bytecode);
+		}
+		return nanos / 1e6;
+	}
+
+	// run the probe in a fresh JVM, on the corpus and the classpath of this JVM
+	private static Map<String,Double> probe(Path corpus, int classes, List<String> jvmArgs) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(corpus + File.pathSeparator + System.getProperty("java.class.path"));
+		command.add(StartupProbe.class.getName());
+		command.add(Integer.toString(classes));
+		ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+
+		Map<String,Double> sample = new LinkedHashMap<>();
+		long start = System.nanoTime();
+		Process process = builder.start();
+		List<String> output = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				output.add(line);
+				if (line.startsWith("first-call ")) {
+					sample.put("time_to_first_call_ms", (System.nanoTime() - start) / 1e6);
+				} else if (line.contains("=")) {
+					String[] parts = line.split("=", 2);
+					if (Arrays.asList(METRICS).contains(parts[0])) sample.put(parts[0], Double.parseDouble(parts[1]));
+				}
+			}
+		}
+		int exit = process.waitFor();
+		for (String metric : METRICS) {
+			if (exit != 0 || (!metric.equals("transform_ms") && !sample.containsKey(metric))) {
+				output.forEach(System.out::println);
+				throw new IllegalStateException("probe failed with exit code " + exit);
+			}
+		}
+		return sample;
+	}
+
+	private static Map<String,Double> medians(List<Map<String,Double>> samples) {
+		Map<String,Double> medians = new LinkedHashMap<>();
+		for (String metric : METRICS) {
+			double[] values = samples.stream().mapToDouble(sample -> sample.get(metric)).sorted().toArray();
+			int mid = values.length / 2;
+			medians.put(metric, values.length % 2 == 1 ? values[mid] : (values[mid - 1] + values[mid]) / 2);
+		}
+		return medians;
+	}
+
+	private static void writeBaseline(Path file, Map<String,Double> medians, int classes, int sites) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("classes", Integer.toString(classes));
+		properties.setProperty("sites", Integer.toString(sites));
+		for (Map.Entry<String,Double> entry : medians.entrySet()) {
+			properties.setProperty(entry.getKey(), String.format(Locale.ROOT, "%.3f", entry.getValue()));
+		}
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			properties.store(writer, "Dygenerate startup benchmark baseline");
+		}
+	}
+
+	// compare with the baseline, printing each metric, and return whether all are within the threshold
+	private static boolean compare(Path file, Map<String,Double> medians, double threshold, int classes, int sites) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		if (!Integer.toString(classes).equals(properties.getProperty("classes")) || !Integer.toString(sites).equals(properties.getProperty("sites"))) {
+			throw new IllegalArgumentException("baseline " + file + " is for a different corpus size, use --save-baseline to replace it");
+		}
+		boolean passed = true;
+		for (String metric : METRICS) {
+			String value = properties.getProperty(metric);
+			if (value == null) continue; // not measured when the baseline was taken
+			double base = Double.parseDouble(value);
+			double change = base == 0 ? 0 : (medians.get(metric) - base) / base * 100;
+			boolean regressed = change > threshold;
+			System.out.println(String.format(Locale.ROOT, "%-22s %12.3f -> %12.3f (%+.1f%%)%s", metric, base, medians.get(metric), change,
+					regressed ? " REGRESSED" : ""));
+			passed = passed && !regressed;
+		}
+		return passed;
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package me.archdukeliamus.dygenerate.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+
+/**
+ * The program run in each fresh JVM by {@link StartupBenchmark}. It runs the first class of the corpus and prints a line straight away, so
+ * that the benchmark can take the time to first call, then runs every class twice, timing both passes and measuring metaspace around the
+ * first. The results are printed as <code>name=value</code> lines.
+ * <br><br>
+ * Usage: <code>StartupProbe</code> <i>classes</i>
+ */
+public final class StartupProbe {
+	private StartupProbe() {}
+
+	public static void main(String[] args) throws Throwable {
+		int classes = Integer.parseInt(args[0]);
+		MethodHandle[] runs = new MethodHandle[classes];
+		runs[0] = run(0);
+		int hash = (int) runs[0].invokeExact();
+		System.out.println("first-call " + hash);
+		System.out.flush();
+
+		MemoryPoolMXBean metaspace = metaspace();
+		long metaspaceBefore = metaspace == null ? 0 : metaspace.getUsage().getUsed();
+		long start = System.nanoTime();
+		for (int i = 1; i < classes; i++) {
+			runs[i] = run(i);
+			hash += (int) runs[i].invokeExact();
+		}
+		long firstPass = System.nanoTime() - start;
+		long metaspaceAfter = metaspace == null ? 0 : metaspace.getUsage().getUsed();
+		start = System.nanoTime();
+		for (int i = 1; i < classes; i++) {
+			hash += (int) runs[i].invokeExact();
+		}
+		long secondPass = System.nanoTime() - start;
+
+		// linking dominates the first pass, and the second pass runs the same code with every site already linked
+		System.out.println("first_pass_ms=" + firstPass / 1e6);
+		System.out.println("linkage_ms=" + Math.max(0, firstPass - secondPass) / 1e6);
+		System.out.println("metaspace_kb=" + (metaspaceAfter - metaspaceBefore) / 1024);
+		System.out.println("hash=" + hash); // keeps the results alive
+	}
+
+	private static MethodHandle run(int index) throws ReflectiveOperationException {
+		Class<?> c = Class.forName(CorpusGenerator.className(index).replace('/', '.'));
+		return MethodHandles.publicLookup().findStatic(c, "run", MethodType.methodType(int.class));
+	}
+
+	private static MemoryPoolMXBean metaspace() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getName().equals("Metaspace")) return pool;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,191 @@
+package me.archdukeliamus.dygenerate.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import me.archdukeliamus.dygenerate.rtutils.Bootstraps;
+
+/**
+ * A steady-state comparison of the <code>stringSwitch</code> and <code>enumSwitch</code> bootstraps with the code <code>javac</code> emits
+ * for the same switches: a <code>hashCode</code> lookup switch followed by <code>equals</code> for strings, and a
+ * <code>tableswitch</code> through a synthetic ordinal map for enums. The call sites are held in <code>static final</code> method handles,
+ * which the JIT treats as constants just as it does a linked <code>invokedynamic</code>.
+ * <br><br>
+ * Each case runs over the same array of inputs, a tenth of which match no label, for a number of warm-up rounds and then timed rounds,
+ * and the median time per switch is printed in nanoseconds.
+ * <br><br>
+ * Usage: <code>SwitchBenchmark [--inputs=</code><i>n</i><code>] [--rounds=</code><i>n</i><code>]</code>
+ */
+public final class SwitchBenchmark {
+	private static final String[] LABELS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliett",
+			"kilo", "lima"};
+	private static final MethodHandle STRING_SWITCH;
+	private static final MethodHandle ENUM_SWITCH;
+	static {
+		MethodHandles.Lookup lk = MethodHandles.lookup();
+		STRING_SWITCH = Bootstraps.stringSwitch(lk, "switch", MethodType.methodType(int.class, String.class), LABELS).dynamicInvoker();
+		String[] names = new String[Letter.values().length];
+		for (Letter letter : Letter.values()) {
+			names[names.length - 1 - letter.ordinal()] = letter.name(); // cases in another order than the constants, as is usual
+		}
+		ENUM_SWITCH = Bootstraps.enumSwitch(lk, "switch", MethodType.methodType(int.class, Letter.class), names).dynamicInvoker();
+	}
+
+	private enum Letter {
+		ALPHA, BRAVO, CHARLIE, DELTA, ECHO, FOXTROT, GOLF, HOTEL, INDIA, JULIETT, KILO, LIMA
+	}
+
+	private SwitchBenchmark() {}
+
+	public static void main(String[] args) throws Throwable {
+		int inputs = 10_000;
+		int rounds = 30;
+		for (String arg : args) {
+			if (arg.startsWith("--inputs=")) {
+				inputs = Integer.parseInt(arg.substring("--inputs=".length()));
+			} else if (arg.startsWith("--rounds=")) {
+				rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+			} else {
+				System.out.println(arg + ": unknown option");
+				System.exit(2);
+			}
+		}
+		Random random = new Random(42);
+		String[] strings = new String[inputs];
+		Letter[] letters = new Letter[inputs];
+		for (int i = 0; i < inputs; i++) {
+			// new strings, so that equals has to compare them rather than find the same instance
+			strings[i] = random.nextInt(10) == 0 ? "zulu" + i : new String(LABELS[random.nextInt(LABELS.length)].toCharArray());
+			letters[i] = Letter.values()[random.nextInt(Letter.values().length)];
+		}
+		check(strings, letters);
+		report("string switch, javac", measure(rounds, inputs, () -> javacStringSwitch(strings)));
+		report("string switch, stringSwitch", measure(rounds, inputs, () -> indyStringSwitch(strings)));
+		report("enum switch, javac", measure(rounds, inputs, () -> javacEnumSwitch(letters)));
+		report("enum switch, enumSwitch", measure(rounds, inputs, () -> indyEnumSwitch(letters)));
+	}
+
+	private interface Round {
+		int run() throws Throwable;
+	}
+
+	// both ways must agree before their times mean anything
+	private static void check(String[] strings, Letter[] letters) throws Throwable {
+		if (javacStringSwitch(strings) != indyStringSwitch(strings) || javacEnumSwitch(letters) != indyEnumSwitch(letters)) {
+			throw new AssertionError("the switches disagree");
+		}
+	}
+
+	private static double measure(int rounds, int inputs, Round round) throws Throwable {
+		int sink = 0;
+		for (int i = 0; i < rounds; i++) {
+			sink += round.run(); // warm up
+		}
+		double[] times = new double[rounds];
+		for (int i = 0; i < rounds; i++) {
+			long start = System.nanoTime();
+			sink += round.run();
+			times[i] = (System.nanoTime() - start) / (double) inputs;
+		}
+		if (sink == 42) System.out.print(""); // keep the results alive
+		Arrays.sort(times);
+		return times[rounds / 2];
+	}
+
+	private static void report(String name, double nanos) {
+		System.out.println(String.format(Locale.ROOT, "%-30s %6.2f ns/switch", name, nanos));
+	}
+
+	// each case does something different, as real cases do, so the branches on the result are part of the cost
+	private static int javacStringSwitch(String[] strings) {
+		int sum = 0;
+		for (String s : strings) {
+			switch (s) {
+				case "alpha": sum += 7; break;
+				case "bravo": sum += 3; break;
+				case "charlie": sum += 11; break;
+				case "delta": sum += 5; break;
+				case "echo": sum += 13; break;
+				case "foxtrot": sum += 2; break;
+				case "golf": sum += 17; break;
+				case "hotel": sum += 19; break;
+				case "india": sum += 23; break;
+				case "juliett": sum += 29; break;
+				case "kilo": sum += 31; break;
+				case "lima": sum += 37; break;
+				default: sum += 1; break;
+			}
+		}
+		return sum;
+	}
+
+	private static int indyStringSwitch(String[] strings) throws Throwable {
+		int sum = 0;
+		for (String s : strings) {
+			switch ((int) STRING_SWITCH.invokeExact(s)) {
+				case 0: sum += 7; break;
+				case 1: sum += 3; break;
+				case 2: sum += 11; break;
+				case 3: sum += 5; break;
+				case 4: sum += 13; break;
+				case 5: sum += 2; break;
+				case 6: sum += 17; break;
+				case 7: sum += 19; break;
+				case 8: sum += 23; break;
+				case 9: sum += 29; break;
+				case 10: sum += 31; break;
+				case 11: sum += 37; break;
+				default: sum += 1; break;
+			}
+		}
+		return sum;
+	}
+
+	private static int javacEnumSwitch(Letter[] letters) {
+		int sum = 0;
+		for (Letter letter : letters) {
+			switch (letter) {
+				case LIMA: sum += 7; break;
+				case KILO: sum += 3; break;
+				case JULIETT: sum += 11; break;
+				case INDIA: sum += 5; break;
+				case HOTEL: sum += 13; break;
+				case GOLF: sum += 2; break;
+				case FOXTROT: sum += 17; break;
+				case ECHO: sum += 19; break;
+				case DELTA: sum += 23; break;
+				case CHARLIE: sum += 29; break;
+				case BRAVO: sum += 31; break;
+				case ALPHA: sum += 37; break;
+				default: sum += 1; break;
+			}
+		}
+		return sum;
+	}
+
+	private static int indyEnumSwitch(Letter[] letters) throws Throwable {
+		int sum = 0;
+		for (Letter letter : letters) {
+			switch ((int) ENUM_SWITCH.invokeExact(letter)) {
+				case 0: sum += 7; break;
+				case 1: sum += 3; break;
+				case 2: sum += 11; break;
+				case 3: sum += 5; break;
+				case 4: sum += 13; break;
+				case 5: sum += 2; break;
+				case 6: sum += 17; break;
+				case 7: sum += 19; break;
+				case 8: sum += 23; break;
+				case 9: sum += 29; break;
+				case 10: sum += 31; break;
+				case 11: sum += 37; break;
+				default: sum += 1; break;
+			}
+		}
+		return sum;
+	}
+}
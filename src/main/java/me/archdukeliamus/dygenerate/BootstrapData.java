@@ -2,7 +2,9 @@ package me.archdukeliamus.dygenerate;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.Handle;
 
@@ -11,6 +13,10 @@ import org.objectweb.asm.Handle;
  *
  */
 public final class BootstrapData {
+	private static final int MAX_PARSED = 4096;
+	// strings parsed before, as a long-running transformer sees the same few bootstrap strings in class after class
+	private static final Map<String,BootstrapData> PARSED = new ConcurrentHashMap<>();
+
 	private final BootstrapType type;
 	private final Handle bootstrapHandle;
 	private final Object[] bootstrapArgs;
@@ -37,12 +43,17 @@ public final class BootstrapData {
 	public static BootstrapData fromString(BootstrapType type, String value) {
 		Objects.requireNonNull(type, "type");
 		Objects.requireNonNull(value, "value");
+		String key = type.name() + " " + value;
+		BootstrapData parsed = PARSED.get(key);
+		if (parsed != null) return parsed;
 		try {
 			Tokeniser tokeniser = new Tokeniser(value);
 			tokeniser.tokenise(); // throws
 			List<Token> tokens = tokeniser.getOutput();
 			Parser parser = new Parser(tokens);
 			BootstrapData bootstrapData = parser.parseBootstrapData(type); // throws
+			if (PARSED.size() >= MAX_PARSED) PARSED.clear(); // rather than grow without bound
+			PARSED.put(key, bootstrapData);
 			return bootstrapData;
 		} catch (TokeniserError | ParserError ex) {
 			throw new InvalidBootstrapDataException(ex.getMessage());
@@ -1,6 +1,7 @@
 package me.archdukeliamus.dygenerate;
 
 import me.archdukeliamus.dygenerate.rtutils.Bootstraps;
+import me.archdukeliamus.dygenerate.rtutils.Constants;
 
 /**
  * A class containing useful constant strings for use in bootstrap data construction.
@@ -97,6 +98,10 @@ public final class BootstrapDataStrings {
 	 * The class FQCN for Bootstraps.
 	 */
 	public static final String C_BOOTSTRAPS = P_RTUTILS + "/Bootstraps";
+	/**
+	 * The class FQCN for Constants.
+	 */
+	public static final String C_CONSTANTS = P_RTUTILS + "/Constants";
 	
 	// Argument sequences
 	
@@ -167,6 +172,124 @@ public final class BootstrapDataStrings {
 	 * The bootstrap method for {@link Bootstraps#lookupAndInvokeExact(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle)}.
 	 */
 	public static final String B_LOOKUP_AND_INVOKEEXACT = "invokestatic " + C_BOOTSTRAPS + ".lookupAndInvokeExact:" + M_INDY_MHANDLE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#valueProfileCall(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle, int)}.
+	 */
+	public static final String B_VALUE_PROFILE_CALL = "invokestatic " + C_BOOTSTRAPS + ".valueProfileCall:(" + A_INDY + D_MHANDLE + "I)" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#valueProfileCall(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle, int, int, int)}.
+	 */
+	public static final String B_VALUE_PROFILE_CALL_SIZED = "invokestatic " + C_BOOTSTRAPS + ".valueProfileCall:(" + A_INDY + D_MHANDLE + "III)" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#memoize(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle)}.
+	 */
+	public static final String B_MEMOIZE = "invokestatic " + C_BOOTSTRAPS + ".memoize:" + M_INDY_MHANDLE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#memoize(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle, int, String)}.
+	 */
+	public static final String B_MEMOIZE_SIZED = "invokestatic " + C_BOOTSTRAPS + ".memoize:(" + A_INDY + D_MHANDLE + "I" + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#featureFlag(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType)}.
+	 */
+	public static final String B_FEATURE_FLAG = "invokestatic " + C_BOOTSTRAPS + ".featureFlag:" + M_INDY_NOARG;
+	/**
+	 * The bootstrap method for {@link Bootstraps#featureFlag(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String)}.
+	 */
+	public static final String B_FEATURE_FLAG_NAMED = "invokestatic " + C_BOOTSTRAPS + ".featureFlag:(" + A_INDY + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#log(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String, String)}.
+	 */
+	public static final String B_LOG = "invokestatic " + C_BOOTSTRAPS + ".log:(" + A_INDY + D_STRING + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#format(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String)}.
+	 */
+	public static final String B_FORMAT = "invokestatic " + C_BOOTSTRAPS + ".format:(" + A_INDY + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#typeSwitch(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, Class...)}.
+	 * Case classes are passed as <code>class</code> static arguments.
+	 */
+	public static final String B_TYPE_SWITCH = "invokestatic " + C_BOOTSTRAPS + ".typeSwitch:(" + A_INDY + "[" + D_CLASS + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#stringSwitch(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String...)}.
+	 * Case labels are passed as string static arguments.
+	 */
+	public static final String B_STRING_SWITCH = "invokestatic " + C_BOOTSTRAPS + ".stringSwitch:(" + A_INDY + "[" + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#enumSwitch(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String...)}.
+	 * Constant names are passed as string static arguments.
+	 */
+	public static final String B_ENUM_SWITCH = "invokestatic " + C_BOOTSTRAPS + ".enumSwitch:(" + A_INDY + "[" + D_STRING + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#objectMethod(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, Class, String, java.lang.invoke.MethodHandle...)}.
+	 * A counterpart to {@link #B_OBJMTH_BOOTSTRAP} that works for ordinary classes and before Java 16.
+	 */
+	public static final String B_OBJECT_METHOD = "invokestatic " + C_BOOTSTRAPS + ".objectMethod:(" + A_INDY + D_CLASS + D_STRING + "[" + D_MHANDLE + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#profiled(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, java.lang.invoke.MethodHandle, Object...)}.
+	 * The original bootstrap method is passed as the first static argument, followed by its own static arguments.
+	 */
+	public static final String B_PROFILED = "invokestatic " + C_BOOTSTRAPS + ".profiled:(" + A_INDY + D_MHANDLE + "[" + D_OBJECT + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Bootstraps#profiledWithLatency(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, int, java.lang.invoke.MethodHandle, Object...)}.
+	 * The sample rate is passed as the first static argument, the original bootstrap method as the second, followed by its own static arguments.
+	 */
+	public static final String B_PROFILED_WITH_LATENCY = "invokestatic " + C_BOOTSTRAPS + ".profiledWithLatency:(" + A_INDY + "I" + D_MHANDLE + "[" + D_OBJECT + ")" + D_CALLSITE;
+	/**
+	 * The bootstrap method for {@link Constants#pattern(java.lang.invoke.MethodHandles.Lookup, String, Class, String)}.
+	 */
+	public static final String B_CONDY_PATTERN = "invokestatic " + C_CONSTANTS + ".pattern:(" + A_CONDY + D_STRING + ")Ljava/util/regex/Pattern;";
+	/**
+	 * The bootstrap method for {@link Constants#pattern(java.lang.invoke.MethodHandles.Lookup, String, Class, String, int)}.
+	 */
+	public static final String B_CONDY_PATTERN_FLAGS = "invokestatic " + C_CONSTANTS + ".pattern:(" + A_CONDY + D_STRING + "I)Ljava/util/regex/Pattern;";
+	/**
+	 * The bootstrap method for {@link Constants#bigDecimal(java.lang.invoke.MethodHandles.Lookup, String, Class, String)}.
+	 */
+	public static final String B_CONDY_BIGDECIMAL = "invokestatic " + C_CONSTANTS + ".bigDecimal:(" + A_CONDY + D_STRING + ")Ljava/math/BigDecimal;";
+	/**
+	 * The bootstrap method for {@link Constants#bigInteger(java.lang.invoke.MethodHandles.Lookup, String, Class, String)}.
+	 */
+	public static final String B_CONDY_BIGINTEGER = "invokestatic " + C_CONSTANTS + ".bigInteger:(" + A_CONDY + D_STRING + ")Ljava/math/BigInteger;";
+	/**
+	 * The bootstrap method for {@link Constants#list(java.lang.invoke.MethodHandles.Lookup, String, Class, Object...)}.
+	 */
+	public static final String B_CONDY_LIST = "invokestatic " + C_CONSTANTS + ".list:(" + A_CONDY + "[" + D_OBJECT + ")Ljava/util/List;";
+	/**
+	 * The bootstrap method for {@link Constants#set(java.lang.invoke.MethodHandles.Lookup, String, Class, Object...)}.
+	 */
+	public static final String B_CONDY_SET = "invokestatic " + C_CONSTANTS + ".set:(" + A_CONDY + "[" + D_OBJECT + ")Ljava/util/Set;";
+	/**
+	 * The bootstrap method for {@link Constants#map(java.lang.invoke.MethodHandles.Lookup, String, Class, Object...)}.
+	 */
+	public static final String B_CONDY_MAP = "invokestatic " + C_CONSTANTS + ".map:(" + A_CONDY + "[" + D_OBJECT + ")Ljava/util/Map;";
+	/**
+	 * The bootstrap method for {@link Constants#base64Array(java.lang.invoke.MethodHandles.Lookup, String, Class, String)}.
+	 */
+	public static final String B_CONDY_BASE64_ARRAY = "invokestatic " + C_CONSTANTS + ".base64Array:(" + A_CONDY + D_STRING + ")" + D_OBJECT;
+	/**
+	 * The bootstrap method for {@link Constants#virtualHandle(java.lang.invoke.MethodHandles.Lookup, String, Class, Class, java.lang.invoke.MethodType)}.
+	 */
+	public static final String B_CONDY_VIRTUAL_HANDLE = "invokestatic " + C_CONSTANTS + ".virtualHandle:(" + A_CONDY + D_CLASS + D_MTYPE + ")" + D_MHANDLE;
+	/**
+	 * The bootstrap method for {@link Constants#staticHandle(java.lang.invoke.MethodHandles.Lookup, String, Class, Class, java.lang.invoke.MethodType)}.
+	 */
+	public static final String B_CONDY_STATIC_HANDLE = "invokestatic " + C_CONSTANTS + ".staticHandle:(" + A_CONDY + D_CLASS + D_MTYPE + ")" + D_MHANDLE;
+	/**
+	 * The bootstrap method for {@link Constants#varHandle(java.lang.invoke.MethodHandles.Lookup, String, Class, Class, Class)}.
+	 */
+	public static final String B_CONDY_VARHANDLE = "invokestatic " + C_CONSTANTS + ".varHandle:(" + A_CONDY + D_CLASS + D_CLASS + ")Ljava/lang/invoke/VarHandle;";
+	/**
+	 * The bootstrap method for {@link Constants#staticVarHandle(java.lang.invoke.MethodHandles.Lookup, String, Class, Class, Class)}.
+	 */
+	public static final String B_CONDY_STATIC_VARHANDLE = "invokestatic " + C_CONSTANTS + ".staticVarHandle:(" + A_CONDY + D_CLASS + D_CLASS + ")Ljava/lang/invoke/VarHandle;";
+	/**
+	 * The bootstrap method for {@link Constants#systemProperty(java.lang.invoke.MethodHandles.Lookup, String, Class, String, String)}.
+	 */
+	public static final String B_CONDY_SYSTEM_PROPERTY = "invokestatic " + C_CONSTANTS + ".systemProperty:(" + A_CONDY + D_STRING + D_STRING + ")" + D_OBJECT;
+	/**
+	 * The bootstrap method for {@link Constants#env(java.lang.invoke.MethodHandles.Lookup, String, Class, String, String)}.
+	 */
+	public static final String B_CONDY_ENV = "invokestatic " + C_CONSTANTS + ".env:(" + A_CONDY + D_STRING + D_STRING + ")" + D_OBJECT;
 	
 	// Method handles
 }
@@ -0,0 +1,521 @@
+package me.archdukeliamus.dygenerate;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One command line run, transforming the class files and directories given in the arguments. Output goes to a stream rather than straight
+ * to standard output, and relative paths are resolved against a given directory, so that runs can also be served by {@link TransformDaemon}
+ * on behalf of a client, several at a time.
+ */
+final class CommandLine {
+	private static final long DEBOUNCE_MILLIS = 200; // quiet time that ends a burst of compiler writes
+	private static final long WATCH_CACHE_BYTES = 64L * 1024 * 1024;
+
+	private final PrintStream out;
+	private final Path workingDirectory;
+	private final ResultCache cache; // may be null
+	private final TransformOptions options = new TransformOptions();
+	private final TransformReport report = new TransformReport(); // shared, to collect the inventory of every class
+	private final RunMetrics metrics = new RunMetrics();
+	private boolean quiet;
+	private boolean useCache; // false when the full report is needed
+
+	/**
+	 * Create a run.
+	 * @param out where to print messages
+	 * @param workingDirectory the directory relative paths are resolved against
+	 * @param cache results of earlier runs to reuse, or null for none
+	 */
+	CommandLine(PrintStream out, Path workingDirectory, ResultCache cache) {
+		this.out = out;
+		this.workingDirectory = workingDirectory;
+		this.cache = cache;
+	}
+
+	/**
+	 * Run with the given arguments.
+	 * @return the exit code
+	 */
+	int run(String... args) {
+		boolean errors = false;
+		String warmUpClass = null;
+		boolean parallelWarmUp = false;
+		String inventoryFile = null;
+		String metricsFile = null;
+		boolean watch = false;
+		for (String arg : args) {
+			if (arg.startsWith("--")) {
+				if (arg.equals("--fold-constants")) {
+					options.setFoldConstants(true);
+				} else if (arg.equals("--handle-fields")) {
+					options.setHandleFields(true);
+				} else if (arg.equals("--reflection-constants")) {
+					options.setReflectionConstants(true);
+				} else if (arg.startsWith("--warm-up=")) {
+					warmUpClass = arg.substring("--warm-up=".length());
+					options.setPrelinkHooks(true);
+				} else if (arg.equals("--parallel-warm-up")) {
+					parallelWarmUp = true;
+				} else if (arg.startsWith("--inventory=")) {
+					inventoryFile = arg.substring("--inventory=".length());
+				} else if (arg.startsWith("--metrics=")) {
+					metricsFile = arg.substring("--metrics=".length());
+				} else if (arg.equals("--quiet")) {
+					quiet = true;
+				} else if (arg.equals("--watch")) {
+					watch = true;
+				} else {
+					out.println(arg + ": unknown option");
+					usage(out);
+					return 1;
+				}
+			}
+		}
+		// cached results skip the passes, so they cannot add to the inventory or the prelinked classes
+		useCache = cache != null && warmUpClass == null && inventoryFile == null;
+		report.setInventory(inventoryFile != null);
+		Path outputDirectory = null; // where the warm-up class goes
+		List<Path> directories = new ArrayList<>();
+		long start = System.nanoTime();
+		for (String arg : args) {
+			if (arg.startsWith("--")) continue;
+			Path path;
+			try {
+				path = workingDirectory.resolve(arg);
+			} catch (InvalidPathException ex) {
+				out.println(arg + ": invalid path");
+				continue;
+			}
+
+			if (Files.isDirectory(path)) {
+				if (outputDirectory == null) outputDirectory = path;
+				directories.add(path);
+				errors = errors | transformDirectory(path);
+			} else {
+				errors = errors | transformFile(path);
+			}
+		}
+		out.println(String.format(Locale.ROOT, "%d classes: %d patched, %d unchanged, %d failed in %.1f s", metrics.classesScanned,
+				metrics.classesPatched, metrics.classesSkipped, metrics.classesFailed, (System.nanoTime() - start) / 1e9));
+		if (metricsFile != null) {
+			errors = errors | writeMetrics(metricsFile);
+		}
+		if (inventoryFile != null) {
+			errors = errors | writeInventory(inventoryFile);
+		}
+		if (warmUpClass != null) {
+			errors = errors | writeWarmUpClass(warmUpClass, outputDirectory, parallelWarmUp);
+		}
+		if (errors) {
+			out.println("Processing finished with errors");
+		}
+		if (watch) {
+			return watch(directories);
+		}
+		return errors ? 1 : 0;
+	}
+
+	// transform classes in the directories as they change, until the process is stopped
+	private int watch(List<Path> directories) {
+		if (directories.isEmpty()) {
+			out.println("--watch: a directory is needed to watch");
+			return 1;
+		}
+		ResultCache results = cache != null ? cache : new ResultCache(WATCH_CACHE_BYTES);
+		Map<Path,String> written = new ConcurrentHashMap<>(); // the keys of the classes last written, to ignore our own writes
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "dygenerate-watch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (WatchService watcher = directories.get(0).getFileSystem().newWatchService()) {
+			for (Path directory : directories) {
+				register(watcher, directory, null);
+			}
+			out.println("watching " + directories.size() + " directories for changed classes");
+			while (true) {
+				WatchKey key = watcher.take();
+				Set<Path> changed = new LinkedHashSet<>();
+				boolean overflow = false;
+				// compilers write many classes at once, so wait for them all before transforming
+				while (key != null) {
+					overflow = overflow | collect(watcher, key, changed);
+					key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				if (overflow) {
+					// events were lost, so look at every class
+					for (Path directory : directories) {
+						addClasses(directory, changed);
+					}
+				}
+				transformChanged(changed, results, written, pool);
+			}
+		} catch (IOException ex) {
+			out.println("cannot watch for changes: " + ex.getMessage());
+			return 1;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	// register a directory and those below it, adding any classes found to a set unless it is null
+	private void register(WatchService watcher, Path directory, Set<Path> changed) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				if (Files.isDirectory(path)) {
+					path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				} else if (changed != null && path.getFileName().toString().endsWith(".class")) {
+					changed.add(path);
+				}
+			}
+		}
+	}
+
+	// add the changed classes of a key to a set, returning true if events were lost
+	private boolean collect(WatchService watcher, WatchKey key, Set<Path> changed) throws IOException {
+		boolean overflow = false;
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				// classes may have been written to it before it was registered
+				register(watcher, path, changed);
+			} else if (path.getFileName().toString().endsWith(".class")) {
+				changed.add(path);
+			}
+		}
+		key.reset();
+		return overflow;
+	}
+
+	private void addClasses(Path directory, Set<Path> changed) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.filter(path -> path.getFileName().toString().endsWith(".class")).forEach(changed::add);
+		}
+	}
+
+	// transform the changed classes in parallel, printing the results in order
+	private void transformChanged(Set<Path> changed, ResultCache results, Map<Path,String> written, ExecutorService pool)
+			throws InterruptedException {
+		long start = System.nanoTime();
+		List<Future<Change>> futures = new ArrayList<>();
+		for (Path path : changed) {
+			futures.add(pool.submit(new Change(path, results, written)));
+		}
+		int patched = 0;
+		int unchanged = 0;
+		int failed = 0;
+		for (Future<Change> future : futures) {
+			Change change;
+			try {
+				change = future.get();
+			} catch (ExecutionException ex) {
+				throw new Error(ex); // Should not happen
+			}
+			if (change.message != null && (change.outcome == Outcome.FAILED || !quiet)) out.print(change.message);
+			switch (change.outcome) {
+				case PATCHED: patched++; break;
+				case UNCHANGED: unchanged++; break;
+				case FAILED: failed++; break;
+				default: break;
+			}
+		}
+		if (patched + unchanged + failed > 0) {
+			out.println(String.format(Locale.ROOT, "%d classes: %d patched, %d unchanged, %d failed in %.1f s", patched + unchanged + failed,
+					patched, unchanged, failed, (System.nanoTime() - start) / 1e9));
+		}
+	}
+
+	private boolean transformFile(Path path) {
+		long fileStart = System.nanoTime();
+		boolean errors = transformFile(path, fileStart);
+		if (errors) metrics.classesFailed++;
+		metrics.addFile(path, System.nanoTime() - fileStart);
+		return errors;
+	}
+
+	private boolean transformFile(Path path, long time) {
+		if (!Files.isReadable(path)) {
+			out.println(path + ": not readable");
+			return true;
+		}
+		byte[] bytecode;
+		try {
+			bytecode = Files.readAllBytes(path);
+		} catch (IOException ex) {
+			out.println(path + ": I/O problem on read");
+			return true;
+		}
+		time = lap(RunMetrics.Phase.READ, time);
+		metrics.classesScanned++;
+		metrics.bytesIn += bytecode.length;
+		String key = useCache ? cache.key(bytecode, options) : null;
+		ResultCache.Result cached = useCache ? cache.get(key) : null;
+		if (cached != null) {
+			metrics.indySites += cached.indySites;
+			metrics.condySites += cached.condySites;
+			if (cached.bytecode == null) {
+				metrics.classesSkipped++;
+				return false;
+			}
+			return write(path, cached.bytecode, time, -1);
+		}
+		int reported = report.getEntries().size();
+		int changed = report.getChangedClasses().size();
+		int indy = report.getEmittedInvokeDynamicCount();
+		int condy = report.getEmittedConstantDynamicCount();
+		try {
+			Map<Surrogate,BootstrapData> surrogateMap = new HashMap<>();
+			long parse = metrics.getPhaseNanos(RunMetrics.Phase.PARSE);
+			Dygenerate.findSurrogateMethods(bytecode, surrogateMap, metrics);
+			// bootstrap parsing is timed on its own, so take it out of the scan
+			time = lap(RunMetrics.Phase.SCAN, time + metrics.getPhaseNanos(RunMetrics.Phase.PARSE) - parse);
+			bytecode = Dygenerate.patchSurrogateReferences(bytecode, surrogateMap, options, report);
+			time = lap(RunMetrics.Phase.PATCH, time);
+		} catch (ClassTransformException | InvalidBootstrapDataException ex) {
+			out.println(path + ": problem transforming bytecode: " + ex.getMessage());
+			ex.printStackTrace(out);
+			return true;
+		}
+		indy = report.getEmittedInvokeDynamicCount() - indy;
+		condy = report.getEmittedConstantDynamicCount() - condy;
+		metrics.indySites += indy;
+		metrics.condySites += condy;
+		boolean unchanged = report.getChangedClasses().size() == changed;
+		if (useCache) cache.put(key, new ResultCache.Result(unchanged ? null : bytecode, indy, condy));
+		if (unchanged) {
+			// nothing to do, so leave the file alone
+			metrics.classesSkipped++;
+			return false;
+		}
+		return write(path, bytecode, time, reported);
+	}
+
+	// write a transformed class, printing the report entries from the given index, or none if it is -1
+	private boolean write(Path path, byte[] bytecode, long time, int reported) {
+		try {
+			Files.write(path, bytecode);
+		} catch (IOException ex) {
+			out.println(path + ": I/O problem on write");
+			return true;
+		}
+		lap(RunMetrics.Phase.WRITE, time);
+		metrics.classesPatched++;
+		metrics.bytesOut += bytecode.length;
+		if (!quiet) {
+			if (reported < 0) {
+				out.println("transformed " + path + " (cached)");
+			} else {
+				out.println("transformed " + path);
+				for (TransformReport.Entry entry : report.getEntries().subList(reported, report.getEntries().size())) {
+					out.println("  " + entry);
+				}
+			}
+		}
+		return false;
+	}
+
+	// add the time since the last lap to a phase and start the next one
+	private long lap(RunMetrics.Phase phase, long since) {
+		long now = System.nanoTime();
+		metrics.addPhase(phase, now - since);
+		return now;
+	}
+
+	private boolean writeMetrics(String file) {
+		try {
+			metrics.write(workingDirectory.resolve(file));
+		} catch (IOException | InvalidPathException ex) {
+			out.println(file + ": cannot write metrics");
+			return true;
+		}
+		out.println("wrote metrics to " + file);
+		return false;
+	}
+
+	private boolean writeInventory(String file) {
+		List<String> lines = new ArrayList<>();
+		for (TransformReport.Site site : report.getSites()) {
+			lines.add(site.toString());
+		}
+		try {
+			Files.write(workingDirectory.resolve(file), lines);
+		} catch (IOException | InvalidPathException ex) {
+			out.println(file + ": cannot write inventory");
+			return true;
+		}
+		out.println("wrote inventory of " + lines.size() + " sites to " + file);
+		return false;
+	}
+
+	private boolean writeWarmUpClass(String className, Path outputDirectory, boolean parallel) {
+		if (outputDirectory == null) {
+			out.println(className + ": a directory is needed to write the warm-up class to");
+			return true;
+		}
+		Path path;
+		try {
+			path = outputDirectory.resolve(className + ".class");
+			if (path.getParent() != null) Files.createDirectories(path.getParent());
+			Files.write(path, Dygenerate.generateWarmUpClass(className, report.getPrelinkedClasses(), parallel));
+		} catch (IOException | InvalidPathException ex) {
+			out.println(className + ": cannot write warm-up class");
+			return true;
+		}
+		out.println("wrote warm-up class " + path + " for " + report.getPrelinkedClasses().size() + " classes");
+		return false;
+	}
+
+	private boolean transformDirectory(Path path) {
+		boolean errors = false;
+		DirectoryStream<Path> dstream;
+		try {
+			 dstream = Files.newDirectoryStream(path);
+		} catch (IOException ex) {
+			out.println(path + ": cannot open directory");
+			return true;
+		}
+		for (Path subpath : dstream) {
+			if (Files.isDirectory(subpath)) {
+				errors = errors | transformDirectory(subpath);
+			} else if (subpath.getFileName().toString().endsWith(".class")) {
+				errors = errors | transformFile(subpath);
+			}
+		}
+		try {
+			dstream.close();
+		} catch (IOException ex) {
+			out.println(path + ": cannot close directory?");
+			return true;
+		}
+		if (!quiet) out.println("transformed directory " + path);
+		return errors;
+	}
+
+	static void usage(PrintStream out) {
+		out.println("Usage: [options] <classfiles/dirs> ...");
+		out.println("Options:");
+		out.println("  --fold-constants        evaluate pure dynamic constants of primitive or String type at transform time");
+		out.println("  --handle-fields         replace MethodHandle fields only used to invokeExact with invokedynamic call sites");
+		out.println("  --inventory=<file>      write every invokedynamic and dynamic constant site to a file");
+		out.println("  --metrics=<file>        write phase timings, counts and the slowest files as JSON, or CSV for a .csv file");
+		out.println("  --parallel-warm-up      call the hooks in parallel; may deadlock if class initializers depend on each other");
+		out.println("  --quiet                 only print errors and the summary");
+		out.println("  --reflection-constants  look up classes, methods and fields named by constants only once");
+		out.println("  --warm-up=<class>       add prelink hooks, and write a warm-up class calling them to the first directory");
+		out.println("  --watch                 after transforming, keep transforming classes in the directories as they change");
+		out.println("Daemon:");
+		out.println("  --daemon                serve runs from DaemonClient until idle, instead of transforming");
+		out.println("  --idle-timeout=<min>    minutes the daemon waits for a request before exiting, 10 by default");
+	}
+
+	private enum Outcome {
+		IGNORED, PATCHED, UNCHANGED, FAILED
+	}
+
+	/**
+	 * The transform of one changed class in watch mode, run on a pool thread.
+	 */
+	private final class Change implements Callable<Change> {
+		private final Path path;
+		private final ResultCache results;
+		private final Map<Path,String> written;
+		Outcome outcome = Outcome.IGNORED;
+		String message; // what to print, may be null
+
+		Change(Path path, ResultCache results, Map<Path,String> written) {
+			this.path = path;
+			this.results = results;
+			this.written = written;
+		}
+
+		@Override
+		public Change call() {
+			byte[] bytecode;
+			try {
+				bytecode = Files.readAllBytes(path);
+			} catch (NoSuchFileException ex) {
+				return this; // deleted since
+			} catch (IOException ex) {
+				return fail(path + ": I/O problem on read");
+			}
+			String key = results.key(bytecode, options);
+			if (key.equals(written.get(path))) return this; // our own write
+			ResultCache.Result result = results.get(key);
+			TransformReport fileReport = null;
+			if (result == null) {
+				fileReport = new TransformReport();
+				try {
+					byte[] transformed = Dygenerate.transformBytecodes(bytecode, options, fileReport);
+					result = new ResultCache.Result(fileReport.getChangedClasses().isEmpty() ? null : transformed,
+							fileReport.getEmittedInvokeDynamicCount(), fileReport.getEmittedConstantDynamicCount());
+				} catch (ClassTransformException ex) {
+					// the compiler may still be writing it, in which case another event follows
+					return fail(path + ": problem transforming bytecode: " + ex.getMessage());
+				}
+				results.put(key, result);
+			}
+			if (result.bytecode == null) {
+				outcome = Outcome.UNCHANGED;
+				return this;
+			}
+			written.put(path, results.key(result.bytecode, options)); // before the event for the write can arrive
+			try {
+				Files.write(path, result.bytecode);
+			} catch (IOException ex) {
+				written.remove(path);
+				return fail(path + ": I/O problem on write");
+			}
+			outcome = Outcome.PATCHED;
+			StringBuilder sb = new StringBuilder("transformed ").append(path);
+			if (fileReport == null) {
+				sb.append(" (cached)").append(System.lineSeparator());
+			} else {
+				sb.append(System.lineSeparator());
+				for (TransformReport.Entry entry : fileReport.getEntries()) {
+					sb.append("  ").append(entry).append(System.lineSeparator());
+				}
+			}
+			message = sb.toString();
+			return this;
+		}
+
+		private Change fail(String error) {
+			outcome = Outcome.FAILED;
+			message = error + System.lineSeparator();
+			return this;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package me.archdukeliamus.dygenerate;
+
+import java.lang.invoke.ConstantBootstraps;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Evaluates dynamic constants at transform time when their bootstrap is known to be pure. Only <code>ConstantBootstraps.invoke</code> and
+ * <code>ConstantBootstraps.getStaticFinal</code> are evaluated, and only over public members of an allowlist of JDK classes. Classes are
+ * resolved through a sandbox class loader that can see nothing but the allowlisted classes, so no code from the classes being
+ * transformed, or from the rest of the class path, can ever run.
+ * <br><br>
+ * Results are cached per constant, as the same constant is usually loaded from many sites.
+ */
+final class ConstantFolder {
+	private static final String CONSTANT_BOOTSTRAPS = "java/lang/invoke/ConstantBootstraps";
+	// allowlisted classes, each with the static members that are not pure and so may not be evaluated
+	private static final Map<String,Set<String>> ALLOWED = Map.ofEntries(
+			Map.entry("java.lang.Math", Set.of("random")),
+			Map.entry("java.lang.StrictMath", Set.of("random")),
+			Map.entry("java.lang.Boolean", Set.of("getBoolean")),
+			Map.entry("java.lang.Byte", Set.of()),
+			Map.entry("java.lang.Character", Set.of()),
+			Map.entry("java.lang.Short", Set.of()),
+			Map.entry("java.lang.Integer", Set.of("getInteger")),
+			Map.entry("java.lang.Long", Set.of("getLong")),
+			Map.entry("java.lang.Float", Set.of()),
+			Map.entry("java.lang.Double", Set.of()),
+			// formatting and case mapping depend on the default locale
+			Map.entry("java.lang.String", Set.of("format", "formatted", "toLowerCase", "toUpperCase")));
+	// types that may appear in descriptors without their members being callable
+	private static final Set<String> VISIBLE = Set.of("java.lang.Object", "java.lang.CharSequence", "java.lang.Number", "java.lang.Comparable");
+
+	private final ClassLoader sandbox = new SandboxClassLoader();
+	private final Map<ConstantDynamic,Object> cache = new HashMap<>(); // folded values, or the NotFoldable explaining why not
+
+	/**
+	 * Whether a constant is bootstrapped by one of the evaluated bootstraps, and so is worth reporting on.
+	 */
+	static boolean isCandidate(ConstantDynamic constant) {
+		return constant.getBootstrapMethod().getOwner().equals(CONSTANT_BOOTSTRAPS);
+	}
+
+	/**
+	 * Evaluate a constant, converting it to a value that can be loaded with a plain <code>ldc</code>.
+	 * @param constant the constant
+	 * @return an Integer, Long, Float, Double or String
+	 * @throws NotFoldable if the constant cannot be evaluated at transform time
+	 */
+	Object fold(ConstantDynamic constant) throws NotFoldable {
+		Object result = cache.get(constant);
+		if (result == null) {
+			try {
+				result = toLdcValue(constant.getDescriptor(), evaluate(constant));
+			} catch (NotFoldable ex) {
+				result = ex;
+			}
+			cache.put(constant, result);
+		}
+		if (result instanceof NotFoldable) throw (NotFoldable) result;
+		return result;
+	}
+
+	private Object evaluate(ConstantDynamic constant) throws NotFoldable {
+		Handle bootstrap = constant.getBootstrapMethod();
+		if (!isCandidate(constant)) throw new NotFoldable("bootstrap " + bootstrap.getOwner() + "." + bootstrap.getName() + " is not evaluated");
+		Class<?> type = toClass(Type.getType(constant.getDescriptor()));
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		Object[] args = new Object[constant.getBootstrapMethodArgumentCount()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = toValue(constant.getBootstrapMethodArgument(i));
+		}
+		try {
+			switch (bootstrap.getName()) {
+				case "invoke":
+					if (args.length == 0 || !(args[0] instanceof MethodHandle)) throw new NotFoldable("invoke needs a method handle");
+					Object[] invokeArgs = new Object[args.length - 1];
+					System.arraycopy(args, 1, invokeArgs, 0, invokeArgs.length);
+					return ConstantBootstraps.invoke(lookup, constant.getName(), type, (MethodHandle) args[0], invokeArgs);
+				case "getStaticFinal":
+					Class<?> declaring;
+					if (args.length == 0) {
+						// as in getStaticFinal, primitive constants default to the box declaring them
+						declaring = type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+					} else if (args[0] instanceof Class) {
+						declaring = (Class<?>) args[0];
+					} else {
+						throw new NotFoldable("getStaticFinal needs a class");
+					}
+					checkMember(declaring.getName(), constant.getName());
+					return ConstantBootstraps.getStaticFinal(lookup, constant.getName(), type, declaring);
+				default:
+					throw new NotFoldable("bootstrap ConstantBootstraps." + bootstrap.getName() + " is not evaluated");
+			}
+		} catch (NotFoldable ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			// leave it to fail at run time, as it would have without folding
+			throw new NotFoldable("evaluation failed: " + ex);
+		}
+	}
+
+	/**
+	 * Convert a static argument from its ASM form.
+	 */
+	private Object toValue(Object arg) throws NotFoldable {
+		if (arg instanceof Type) {
+			Type type = (Type) arg;
+			if (type.getSort() == Type.METHOD) {
+				try {
+					return MethodType.fromMethodDescriptorString(type.getDescriptor(), sandbox);
+				} catch (TypeNotPresentException ex) {
+					throw new NotFoldable("method type " + type.getDescriptor() + " uses a class that is not allowlisted");
+				}
+			}
+			return toClass(type);
+		} else if (arg instanceof Handle) {
+			return toMethodHandle((Handle) arg);
+		} else if (arg instanceof ConstantDynamic) {
+			return evaluate((ConstantDynamic) arg);
+		}
+		return arg; // Integer, Long, Float, Double, String
+	}
+
+	private Class<?> toClass(Type type) throws NotFoldable {
+		switch (type.getSort()) {
+			case Type.BOOLEAN: return boolean.class;
+			case Type.CHAR: return char.class;
+			case Type.BYTE: return byte.class;
+			case Type.SHORT: return short.class;
+			case Type.INT: return int.class;
+			case Type.FLOAT: return float.class;
+			case Type.LONG: return long.class;
+			case Type.DOUBLE: return double.class;
+			case Type.VOID: return void.class;
+			default:
+				try {
+					return Class.forName(type.getSort() == Type.ARRAY ? type.getDescriptor().replace('/', '.') : type.getClassName(), false, sandbox);
+				} catch (ClassNotFoundException ex) {
+					throw new NotFoldable("class " + type.getClassName() + " is not allowlisted");
+				}
+		}
+	}
+
+	private MethodHandle toMethodHandle(Handle handle) throws NotFoldable {
+		String owner = Type.getObjectType(handle.getOwner()).getClassName();
+		checkMember(owner, handle.getName());
+		Class<?> ownerClass = toClass(Type.getObjectType(handle.getOwner()));
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		try {
+			switch (handle.getTag()) {
+				case Opcodes.H_INVOKESTATIC:
+					return lookup.findStatic(ownerClass, handle.getName(), (MethodType) toValue(Type.getMethodType(handle.getDesc())));
+				case Opcodes.H_INVOKEVIRTUAL:
+					return lookup.findVirtual(ownerClass, handle.getName(), (MethodType) toValue(Type.getMethodType(handle.getDesc())));
+				case Opcodes.H_GETSTATIC:
+					return lookup.findStaticGetter(ownerClass, handle.getName(), toClass(Type.getType(handle.getDesc())));
+				default:
+					throw new NotFoldable("method handle kind " + handle.getTag() + " is not evaluated");
+			}
+		} catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException ex) {
+			throw new NotFoldable("cannot resolve " + owner + "." + handle.getName() + ": " + ex.getMessage());
+		}
+	}
+
+	private static void checkMember(String owner, String member) throws NotFoldable {
+		Set<String> excluded = ALLOWED.get(owner);
+		if (excluded == null) throw new NotFoldable("class " + owner + " is not allowlisted");
+		if (excluded.contains(member)) throw new NotFoldable(owner + "." + member + " is not pure");
+	}
+
+	/**
+	 * Convert an evaluated constant into the value an ldc of the constant's type takes.
+	 */
+	private static Object toLdcValue(String descriptor, Object value) throws NotFoldable {
+		switch (descriptor) {
+			case "Z": return ((Boolean) value) ? 1 : 0;
+			case "C": return (int) (Character) value;
+			case "B": return ((Byte) value).intValue();
+			case "S": return ((Short) value).intValue();
+			case "I":
+			case "J":
+			case "F":
+			case "D":
+				return value; // already the right box
+			case "Ljava/lang/String;":
+				if (value == null) throw new NotFoldable("value is null");
+				if (utfLength((String) value) > 65535) throw new NotFoldable("string is too long for the constant pool");
+				return value;
+			default:
+				throw new NotFoldable("type " + descriptor + " is not a primitive or String");
+		}
+	}
+
+	// length of a string in the modified UTF-8 of the constant pool
+	private static int utfLength(String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+		}
+		return length;
+	}
+
+	/**
+	 * Thrown when a constant cannot be folded, with the reason as the message.
+	 */
+	static final class NotFoldable extends Exception {
+		private static final long serialVersionUID = 4087513346295866314L;
+
+		NotFoldable(String reason) {
+			super(reason, null, false, false);
+		}
+	}
+
+	/**
+	 * Loads allowlisted classes from the bootstrap class loader and refuses everything else.
+	 */
+	private static final class SandboxClassLoader extends ClassLoader {
+		SandboxClassLoader() {
+			super(null);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!ALLOWED.containsKey(name) && !VISIBLE.contains(name)) throw new ClassNotFoundException(name);
+			return super.loadClass(name, resolve);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package me.archdukeliamus.dygenerate;
+
+import java.nio.charset.StandardCharsets;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * A quick check of whether a class could be changed by {@link Dygenerate#transformBytecodes(byte[], TransformOptions, TransformReport)},
+ * reading only its constant pool. Every pass needs a name in the constant pool to have anything to do: the surrogate and lazy constant
+ * annotation descriptors, the name <code>invokeExact</code> for method handle fields, or the name of a reflective lookup. Names are only
+ * looked for when the options enable their pass. A class with none of them is left unchanged by the transform, so it need not be parsed
+ * at all. A class with one of them may still be left unchanged. The lazy constant descriptor can also be looked for on its own, so that
+ * the lazy constant pass, which reads the whole class into a tree, only runs on classes that may have lazy constants.
+ */
+final class ConstantPoolCheck {
+	private static final int CONSTANT_UTF8 = 1;
+	private static final byte[][] MARKERS = markers("Lme/archdukeliamus/dygenerate/InvokeDynamic;", "Lme/archdukeliamus/dygenerate/ConstantDynamic;",
+			"Lme/archdukeliamus/dygenerate/LazyConstant;");
+	private static final byte[][] HANDLE_FIELD_MARKERS = markers("invokeExact");
+	private static final byte[][] REFLECTION_MARKERS = markers("forName", "getMethod", "getDeclaredMethod", "getField", "getDeclaredField");
+	private static final byte[][] LAZY_CONSTANT_MARKERS = markers("Lme/archdukeliamus/dygenerate/LazyConstant;");
+
+	private ConstantPoolCheck() {}
+
+	/**
+	 * Check whether a class could be changed by the transform.
+	 * @param classBytecode the class bytecode
+	 * @param options the optional passes to run
+	 * @return false if the transform would certainly leave the class unchanged
+	 */
+	static boolean mayTransform(byte[] classBytecode, TransformOptions options) {
+		ClassReader reader = new ClassReader(classBytecode); // only indexes the constant pool
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i); // just past the tag, or 0 for the second slot of a long or double
+			if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) continue;
+			int length = reader.readUnsignedShort(offset);
+			if (matchesAny(classBytecode, offset, length, MARKERS)) return true;
+			if (options.isHandleFields() && matchesAny(classBytecode, offset, length, HANDLE_FIELD_MARKERS)) return true;
+			if (options.isReflectionConstants() && matchesAny(classBytecode, offset, length, REFLECTION_MARKERS)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether a class could have fields marked {@link LazyConstant}.
+	 * @param classBytecode the class bytecode
+	 * @return false if the class certainly has no lazy constants
+	 */
+	static boolean mayHaveLazyConstants(byte[] classBytecode) {
+		ClassReader reader = new ClassReader(classBytecode);
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) continue;
+			if (matchesAny(classBytecode, offset, reader.readUnsignedShort(offset), LAZY_CONSTANT_MARKERS)) return true;
+		}
+		return false;
+	}
+
+	private static boolean matchesAny(byte[] bytecode, int offset, int length, byte[][] markers) {
+		for (byte[] marker : markers) {
+			if (length == marker.length && matches(bytecode, offset + 2, marker)) return true;
+		}
+		return false;
+	}
+
+	// the markers are ASCII, so their modified UTF-8 is the same as their bytes
+	private static boolean matches(byte[] bytecode, int offset, byte[] marker) {
+		for (int i = 0; i < marker.length; i++) {
+			if (bytecode[offset + i] != marker[i]) return false;
+		}
+		return true;
+	}
+
+	private static byte[][] markers(String... names) {
+		byte[][] markers = new byte[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			markers[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		return markers;
+	}
+}
@@ -0,0 +1,127 @@
+package me.archdukeliamus.dygenerate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thin client for the transform daemon. It takes the same arguments as the command line, has the daemon run them and prints the daemon's
+ * output, exiting with its exit code, so it can stand in for <code>java -jar</code> in builds. If no daemon of the same build as the client
+ * is running, one is started in the background with the class path of the client, logging to <code>.dygenerate/daemon.log</code> under the
+ * user's home directory, and runs until it has been idle for ten minutes; a daemon of another build is left to exit when idle. The client
+ * itself only uses the JDK, so that it starts quickly.
+ */
+public final class DaemonClient {
+	private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+	private static final int START_TIMEOUT_MILLIS = 20_000;
+
+	private DaemonClient() {}
+
+	/**
+	 * Command-line invocation.
+	 * @param args Command-line arguments, as for {@link Dygenerate#main(String[])}.
+	 */
+	public static void main(String[] args) {
+		try {
+			System.exit(run(args));
+		} catch (IOException ex) {
+			System.out.println("cannot reach the Dygenerate daemon: " + ex.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static int run(String[] args) throws IOException {
+		String build = TransformDaemon.build();
+		String[] daemon = readPortFile(build);
+		Socket socket = connect(daemon);
+		if (socket == null) {
+			startDaemon();
+			long deadline = System.nanoTime() + START_TIMEOUT_MILLIS * 1_000_000L;
+			while (socket == null && System.nanoTime() < deadline) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while starting the daemon");
+				}
+				daemon = readPortFile(build);
+				socket = connect(daemon);
+			}
+			if (socket == null) throw new IOException("the daemon did not start, see " + portFile().resolveSibling("daemon.log"));
+		}
+		try (Socket s = socket) {
+			Writer request = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8);
+			request.write(TransformDaemon.PROTOCOL + " " + build + " " + daemon[1] + "\n");
+			request.write(Paths.get("").toAbsolutePath() + "\n");
+			for (String arg : args) {
+				request.write(arg + "\n");
+			}
+			request.write("\n");
+			request.flush();
+			BufferedReader response = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			for (String line = response.readLine(); line != null; line = response.readLine()) {
+				if (line.startsWith("\0")) return Integer.parseInt(line.substring(1));
+				System.out.println(line);
+			}
+			throw new IOException("the daemon closed the connection");
+		}
+	}
+
+	/**
+	 * Get the file a running daemon writes its port, token and build to.
+	 */
+	static Path portFile() {
+		return Paths.get(System.getProperty("user.home"), ".dygenerate", "daemon");
+	}
+
+	// the port and the token, or null if there is no daemon of this build
+	private static String[] readPortFile(String build) {
+		try {
+			String[] parts = new String(Files.readAllBytes(portFile()), StandardCharsets.UTF_8).trim().split(" ");
+			return parts.length == 3 && parts[2].equals(build) ? parts : null;
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	private static Socket connect(String[] daemon) {
+		if (daemon == null) return null;
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(daemon[0])), CONNECT_TIMEOUT_MILLIS);
+			return socket;
+		} catch (IOException | NumberFormatException ex) {
+			try {
+				socket.close();
+			} catch (IOException ex2) {
+				// nothing more to do
+			}
+			return null; // a daemon that has exited
+		}
+	}
+
+	private static void startDaemon() throws IOException {
+		Path log = portFile().resolveSibling("daemon.log");
+		Files.createDirectories(log.getParent());
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-Duser.home=" + System.getProperty("user.home")); // so that it writes the port file where this client looks
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("me.archdukeliamus.dygenerate.Dygenerate");
+		command.add("--daemon");
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+		process.getOutputStream().close(); // the daemon reads nothing from its input
+	}
+}
@@ -0,0 +1,107 @@
+package me.archdukeliamus.dygenerate;
+
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.Objects;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A class visitor that transforms the class visited and defines it, for classes generated at runtime with ASM. Generate the class into this
+ * visitor instead of a <code>ClassWriter</code>; when <code>visitEnd</code> is called the class is transformed as by
+ * {@link Dygenerate#transformBytecodes(byte[], TransformOptions, TransformReport)} and defined with the lookup, and is then available from
+ * {@link #getDefinedClass()}. The class is collected into a tree as it is visited and the passes read the tree directly, so it is written
+ * out once, for the definition, and never parsed.
+ * <br><br>
+ * As with a <code>ClassWriter</code> created without flags, the class must be visited with its stack map frames and maximum stack and
+ * local sizes, which the transform keeps up to date.
+ * <br><br>
+ * A visitor defines a single class and is not safe for use by multiple threads.
+ */
+public final class DefiningClassVisitor extends ClassVisitor {
+	private final Lookup lookup;
+	private final TransformOptions options;
+	private final TransformReport report; // may be null
+	private boolean hidden;
+	private boolean initialize;
+	private Lookup.ClassOption[] classOptions;
+	private Class<?> definedClass;
+	private Lookup hiddenClassLookup;
+
+	/**
+	 * Create a visitor defining a class with the default options.
+	 * @param lookup the lookup to define the class with, which must have package access to the package of the class
+	 */
+	public DefiningClassVisitor(Lookup lookup) {
+		this(lookup, new TransformOptions(), null);
+	}
+
+	/**
+	 * Create a visitor defining a class.
+	 * @param lookup the lookup to define the class with, which must have package access to the package of the class
+	 * @param options the optional passes to run
+	 * @param report the report to add to, or null for none
+	 */
+	public DefiningClassVisitor(Lookup lookup, TransformOptions options, TransformReport report) {
+		super(Opcodes.ASM9, new ClassNode(Opcodes.ASM9));
+		this.lookup = Objects.requireNonNull(lookup, "lookup");
+		this.options = Objects.requireNonNull(options, "options");
+		this.report = report;
+	}
+
+	/**
+	 * Define the class as a hidden class instead, as by <code>Lookup.defineHiddenClass</code>. The lookup must then have full privilege
+	 * access. Must be called before the class is visited.
+	 * @param initialize whether to initialize the class
+	 * @param classOptions the options for defining the hidden class
+	 */
+	public void setHidden(boolean initialize, Lookup.ClassOption... classOptions) {
+		this.hidden = true;
+		this.initialize = initialize;
+		this.classOptions = classOptions.clone();
+	}
+
+	/**
+	 * Transform the class and define it.
+	 * @throws ClassTransformException if there is a problem transforming the class, or if the lookup cannot define it
+	 */
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		byte[] classBytecode;
+		try {
+			classBytecode = Dygenerate.transformTree((ClassNode) cv, options, report);
+		} catch (ClassTransformException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new ClassTransformException(ex.getMessage(),ex);
+		}
+		try {
+			if (hidden) {
+				hiddenClassLookup = lookup.defineHiddenClass(classBytecode, initialize, classOptions);
+				definedClass = hiddenClassLookup.lookupClass();
+			} else {
+				definedClass = lookup.defineClass(classBytecode);
+			}
+		} catch (IllegalAccessException ex) {
+			throw new ClassTransformException("cannot define " + ((ClassNode) cv).name + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Get the class defined.
+	 * @return the class, or null if the class has not been visited to its end yet
+	 */
+	public Class<?> getDefinedClass() {
+		return definedClass;
+	}
+
+	/**
+	 * Get a lookup on the hidden class defined, which is the only way to access its private members.
+	 * @return the lookup with full privilege access, or null if the class is not hidden or has not been visited to its end yet
+	 */
+	public Lookup getHiddenClassLookup() {
+		return hiddenClassLookup;
+	}
+}
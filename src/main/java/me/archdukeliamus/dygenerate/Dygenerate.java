@@ -1,23 +1,23 @@
 package me.archdukeliamus.dygenerate;
 
-import java.io.IOException;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 /**
  * Main entry point into Dygenerate and its API. The easiest API method to use is {@link #transformBytecodes(byte[])}. If more advanced
@@ -35,109 +35,41 @@ public class Dygenerate {
 	/**
 	 * Command-line invocation.
 	 * @param args Command-line aeguments.
-	 */
+	 */
 	public static void main(String[] args) {
 		System.out.println("Dygenerate v0.1.0");
 		if (args.length == 0) {
-			usage();
+			CommandLine.usage(System.out);
+		} else if (Arrays.asList(args).contains("--daemon")) {
+			System.exit(TransformDaemon.run(args));
 		} else {
-			commandLineTransform(args);
-		}
-	}
-	
-	private static void commandLineTransform(String... args) {
-		boolean errors = false;
-		for (String arg : args) {
-			Path path;
-			try {
-				path = Paths.get(arg);
-			} catch (InvalidPathException ex) {
-				System.out.println(arg + ": invalid path");
-				continue;
-			}
-			
-			if (Files.isDirectory(path)) {
-				errors = errors | transformDirectory(path);
-			} else {
-				errors = errors | transformFile(path);
-			}
-		}
-		if (errors) {
-			System.out.println("Processing finished with errors");
-			System.exit(1);
-		} else {
-			System.exit(0);
-		}
-	}
-	
-	private static boolean transformFile(Path path) {
-		if (!Files.isReadable(path)) {
-			System.out.println(path + ": not readable");
-			return true;
-		}
-		byte[] bytecode;
-		try {
-			bytecode = Files.readAllBytes(path);
-		} catch (IOException ex) {
-			System.out.println(path + ": I/O problem on read");
-			return true;
-		}
-		try {
-			bytecode = transformBytecodes(bytecode);
-		} catch (ClassTransformException ex) {
-			System.out.println(path + ": problem transforming bytecode: " + ex.getMessage());
-			ex.printStackTrace();
-			return true;
-		}
-		try {
-			Files.write(path, bytecode);
-		} catch (IOException ex) {
-			System.out.println(path + ": I/O problem on write");
-			return true;
-		}
-		System.out.println("transformed " + path);
-		return false;
-	}
-	
-	private static boolean transformDirectory(Path path) {
-		boolean errors = false;
-		DirectoryStream<Path> dstream;
-		try {
-			 dstream = Files.newDirectoryStream(path);
-		} catch (IOException ex) {
-			System.out.println(path + ": cannot open directory");
-			return true;
+			System.exit(new CommandLine(System.out, Paths.get(""), null).run(args));
 		}
-		for (Path subpath : dstream) {
-			if (Files.isDirectory(subpath)) {
-				errors = errors | transformDirectory(subpath);
-			} else if (subpath.getFileName().toString().endsWith(".class")) {
-				errors = errors | transformFile(subpath);
-			}
-		}
-		try {
-			dstream.close();
-		} catch (IOException ex) {
-			System.out.println(path + ": cannot close directory?");
-			return true;
-		}
-		System.out.println("transformed directory " + path);
-		return errors;
-	}
-	
-	private static void usage() {
-		System.out.println("Usage: <classfiles/dirs> ...");
 	}
 	
 	/**
 	 * Transform the provided bytecode, replacing invokedynamic surrogate methods with invokedynamic instructions, removing the
-	 * surrogates and their annotations.
+	 * surrogates and their annotations. Fields marked {@link LazyConstant} are turned into dynamic constants.
 	 * @param classBytecode the bytecode to transform
 	 * @throws ClassTransformException if there is a problem transforming the class
 	 * @return the transformed bytecode
 	 */
 	public static byte[] transformBytecodes(byte[] classBytecode) {
+		return transformBytecodes(classBytecode, new TransformOptions(), null);
+	}
+	
+	/**
+	 * Transform the provided bytecode as in {@link #transformBytecodes(byte[])}, also running the optional passes enabled in the options and
+	 * recording the sites that were converted or skipped in a report.
+	 * @param classBytecode the bytecode to transform
+	 * @param options the optional passes to run
+	 * @param report the report to add to, or null for none
+	 * @throws ClassTransformException if there is a problem transforming the class
+	 * @return the transformed bytecode
+	 */
+	public static byte[] transformBytecodes(byte[] classBytecode, TransformOptions options, TransformReport report) {
 		Objects.requireNonNull(classBytecode, "bytecode");
+		Objects.requireNonNull(options, "options");
 		try {
 			Map<Surrogate,BootstrapData> surrogateMap = new HashMap<>();
 			// PARSE PHASE - find all methods marked indy and get their bootstrap data
@@ -149,9 +81,8 @@ public class Dygenerate {
 			// PATCH PHASE - find all calls to indy surrogates and patch them with indy itself
 			ClassWriter cw = new ClassWriter(0);
 			{
-				DynamicTransformClassVisitor dtcv = new DynamicTransformClassVisitor(Opcodes.ASM9, cw, surrogateMap);
 				ClassReader reader = new ClassReader(classBytecode);
-				reader.accept(dtcv,0);
+				reader.accept(patchPasses(cw, surrogateMap, options, report, ConstantPoolCheck.mayHaveLazyConstants(classBytecode)),0);
 			}
 			return cw.toByteArray();
 		} catch (ClassTransformException ex) {
@@ -171,10 +102,15 @@ public class Dygenerate {
 	 * @throws ClassTransformException if a condy surrogate method has an invalid signature
 	 */
 	public static void findSurrogateMethods(byte[] classBytecode, Map<Surrogate,BootstrapData> surrogateMap) {
+		findSurrogateMethods(classBytecode, surrogateMap, null);
+	}
+	
+	// as above, timing bootstrap data parsing if metrics are given
+	static void findSurrogateMethods(byte[] classBytecode, Map<Surrogate,BootstrapData> surrogateMap, RunMetrics metrics) {
 		Objects.requireNonNull(classBytecode, "bytecode");
 		Objects.requireNonNull(surrogateMap, "surrogate map");
 		try {
-			SurrogateMethodClassVisitor smcv = new SurrogateMethodClassVisitor(Opcodes.ASM9, surrogateMap);
+			SurrogateMethodClassVisitor smcv = new SurrogateMethodClassVisitor(Opcodes.ASM9, surrogateMap, metrics);
 			ClassReader reader = new ClassReader(classBytecode);
 			reader.accept(smcv, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
 		} catch (ClassTransformException ex) {
@@ -189,25 +125,169 @@ public class Dygenerate {
 	/**
 	 * Patch references to surrogate methods in the provided class using the provided surrogate map, removing any surrogate
 	 * methods present and substituting in invokedynamic and ldc instructions in the place of surrogate method invocations.
-	 * The surrogate map is not modified.
+	 * Fields marked {@link LazyConstant} are also transformed as in
+	 * {@link #transformBytecodes(byte[])}. The surrogate map is not modified.
 	 * @param classBytecode the class to patch
 	 * @param surrogateMap the surrogate map containing data about surrogate methods to replace
 	 * @return the transformed bytecode
 	 * @throws ClassTransformException if there is a problem transforming the class
 	 */
 	public static byte[] patchSurrogateReferences(byte[] classBytecode, Map<Surrogate,BootstrapData> surrogateMap) {
+		return patchSurrogateReferences(classBytecode, surrogateMap, new TransformOptions(), null);
+	}
+	
+	/**
+	 * Patch references to surrogate methods as in {@link #patchSurrogateReferences(byte[], Map)}, also running the optional passes enabled
+	 * in the options and recording the sites that were converted or skipped in a report.
+	 * @param classBytecode the class to patch
+	 * @param surrogateMap the surrogate map containing data about surrogate methods to replace
+	 * @param options the optional passes to run
+	 * @param report the report to add to, or null for none
+	 * @return the transformed bytecode
+	 * @throws ClassTransformException if there is a problem transforming the class
+	 */
+	public static byte[] patchSurrogateReferences(byte[] classBytecode, Map<Surrogate,BootstrapData> surrogateMap, TransformOptions options, TransformReport report) {
 		Objects.requireNonNull(classBytecode, "bytecode");
 		Objects.requireNonNull(surrogateMap, "surrogate map");
+		Objects.requireNonNull(options, "options");
 		try {
 			ClassWriter cw = new ClassWriter(0);
-			DynamicTransformClassVisitor dtcv = new DynamicTransformClassVisitor(Opcodes.ASM9, cw, surrogateMap);
 			ClassReader reader = new ClassReader(classBytecode);
-			reader.accept(dtcv,0);
+			reader.accept(patchPasses(cw, surrogateMap, options, report, ConstantPoolCheck.mayHaveLazyConstants(classBytecode)),0);
 			return cw.toByteArray();
 		} catch (ClassTransformException ex) {
 			throw ex;
 		} catch (Exception ex) {
 			throw new ClassTransformException(ex.getMessage(),ex);
 		}
-	}
-}
+	}
+	
+	/**
+	 * Transform a class and define it with a lookup, as if by <code>lookup.defineClass(transformBytecodes(classBytecode, options, null))</code>.
+	 * The class is parsed only once, and a class that the transform would leave unchanged, as seen from its constant pool, is defined as it
+	 * is without being parsed at all. To transform a class generated with ASM without writing it out first, use
+	 * {@link DefiningClassVisitor}.
+	 * @param lookup the lookup to define the class with, which must have package access to the package of the class
+	 * @param classBytecode the bytecode to transform
+	 * @param options the optional passes to run
+	 * @return the defined class
+	 * @throws ClassTransformException if there is a problem transforming the class
+	 * @throws IllegalAccessException if the lookup cannot define the class
+	 * @see java.lang.invoke.MethodHandles.Lookup#defineClass(byte[])
+	 */
+	public static Class<?> defineClass(MethodHandles.Lookup lookup, byte[] classBytecode, TransformOptions options) throws IllegalAccessException {
+		Objects.requireNonNull(lookup, "lookup");
+		return lookup.defineClass(transformForDefinition(classBytecode, options));
+	}
+	
+	/**
+	 * Transform a class and define it as a hidden class, as in {@link #defineClass(MethodHandles.Lookup, byte[], TransformOptions)}.
+	 * @param lookup the lookup to define the class with, which must have full privilege access
+	 * @param classBytecode the bytecode to transform
+	 * @param initialize whether to initialize the class
+	 * @param options the optional passes to run
+	 * @param classOptions the options for defining the hidden class
+	 * @return a lookup on the hidden class with full privilege access
+	 * @throws ClassTransformException if there is a problem transforming the class
+	 * @throws IllegalAccessException if the lookup cannot define the class
+	 * @see java.lang.invoke.MethodHandles.Lookup#defineHiddenClass(byte[], boolean, MethodHandles.Lookup.ClassOption...)
+	 */
+	public static MethodHandles.Lookup defineHiddenClass(MethodHandles.Lookup lookup, byte[] classBytecode, boolean initialize,
+			TransformOptions options, MethodHandles.Lookup.ClassOption... classOptions) throws IllegalAccessException {
+		Objects.requireNonNull(lookup, "lookup");
+		return lookup.defineHiddenClass(transformForDefinition(classBytecode, options), initialize, classOptions);
+	}
+	
+	private static byte[] transformForDefinition(byte[] classBytecode, TransformOptions options) {
+		Objects.requireNonNull(classBytecode, "bytecode");
+		Objects.requireNonNull(options, "options");
+		// prelink hooks go into any class with a dynamic site, which the check does not look for
+		if (!options.isPrelinkHooks() && !ConstantPoolCheck.mayTransform(classBytecode, options)) return classBytecode;
+		try {
+			ClassNode node = new ClassNode(Opcodes.ASM9);
+			new ClassReader(classBytecode).accept(node, 0);
+			return transformTree(node, options, null);
+		} catch (ClassTransformException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new ClassTransformException(ex.getMessage(),ex);
+		}
+	}
+	
+	/**
+	 * Transform a class already read into a tree, as in {@link #transformBytecodes(byte[], TransformOptions, TransformReport)}. The
+	 * surrogates are found by walking the method annotations of the tree, and the patching passes read the tree directly, so the class is
+	 * never parsed from bytes.
+	 */
+	static byte[] transformTree(ClassNode node, TransformOptions options, TransformReport report) {
+		Map<Surrogate,BootstrapData> surrogateMap = new HashMap<>();
+		SurrogateMethodClassVisitor smcv = new SurrogateMethodClassVisitor(Opcodes.ASM9, surrogateMap);
+		smcv.visit(node.version, node.access, node.name, node.signature, node.superName, node.interfaces.toArray(new String[0]));
+		for (MethodNode method : node.methods) {
+			MethodVisitor mv = smcv.visitMethod(method.access, method.name, method.desc, method.signature, null);
+			if (method.invisibleAnnotations != null) {
+				for (AnnotationNode annotation : method.invisibleAnnotations) {
+					annotation.accept(mv.visitAnnotation(annotation.desc, false));
+				}
+			}
+			if (method.visibleAnnotations != null) {
+				for (AnnotationNode annotation : method.visibleAnnotations) {
+					annotation.accept(mv.visitAnnotation(annotation.desc, true));
+				}
+			}
+		}
+		ClassWriter cw = new ClassWriter(0);
+		node.accept(patchPasses(cw, surrogateMap, options, report, LazyConstantClassVisitor.hasLazyConstants(node)));
+		return cw.toByteArray();
+	}
+	
+	// The patching passes in order, ending in the given visitor. The lazy constant pass buffers the class, so it is left out unless needed.
+	private static ClassVisitor patchPasses(ClassVisitor next, Map<Surrogate,BootstrapData> surrogateMap, TransformOptions options, TransformReport report,
+			boolean lazyConstants) {
+		ConstantFolder folder = options.isFoldConstants() ? new ConstantFolder() : null;
+		DynamicTransformClassVisitor dtcv = new DynamicTransformClassVisitor(Opcodes.ASM9, prelink(next, options, report), surrogateMap, folder, report);
+		ClassVisitor reflection = options.isReflectionConstants() ? new ReflectionClassVisitor(Opcodes.ASM9, dtcv, report) : dtcv;
+		ClassVisitor lazy = lazyConstants ? new LazyConstantClassVisitor(Opcodes.ASM9, reflection, report) : reflection;
+		if (!options.isHandleFields()) return lazy;
+		return new HandleFieldClassVisitor(Opcodes.ASM9, lazy, report);
+	}
+	
+	// The inventory and prelink hooks are collected from the finished class, so this pass comes last. It buffers the class, so it is
+	// left out unless one of them is asked for.
+	private static ClassVisitor prelink(ClassVisitor next, TransformOptions options, TransformReport report) {
+		if (!options.isPrelinkHooks() && (report == null || !report.isInventory())) return next;
+		return new PrelinkClassVisitor(Opcodes.ASM9, next, report, options.isPrelinkHooks());
+	}
+	
+	/**
+	 * Generate a warm-up class that calls the prelink hooks of the given classes one after another, so that their call sites are linked
+	 * before they are first executed. The generated class has a single method, <code>public static void warmUp()</code>, which returns once
+	 * every hook has run; calling it initializes the classes. It must be loaded by a class loader that can see the classes, and only depends
+	 * on the JDK. The classes must have been transformed with {@link TransformOptions#setPrelinkHooks(boolean)} enabled; they are listed
+	 * in {@link TransformReport#getPrelinkedClasses()}.
+	 * @param className the internal name of the warm-up class, for example <code>com/example/WarmUp</code>
+	 * @param classes the internal names of the classes with prelink hooks
+	 * @return the bytecode of the warm-up class
+	 */
+	public static byte[] generateWarmUpClass(String className, List<String> classes) {
+		return generateWarmUpClass(className, classes, false);
+	}
+
+	/**
+	 * Generate a warm-up class as in {@link #generateWarmUpClass(String, List)}, optionally calling the hooks in parallel in the common
+	 * fork-join pool.
+	 * <br><br>
+	 * <b>Calling hooks in parallel initializes the classes in parallel.</b> If the static initializers of some of the classes depend on each
+	 * other in a cycle, two threads may each start initializing one of them and then wait forever for the other, deadlocking
+	 * <code>warmUp()</code> and any thread that touches those classes. Only enable parallelism when no such cycles exist.
+	 * @param className the internal name of the warm-up class, for example <code>com/example/WarmUp</code>
+	 * @param classes the internal names of the classes with prelink hooks
+	 * @param parallel true to call the hooks in parallel, false to call them in order on the calling thread
+	 * @return the bytecode of the warm-up class
+	 */
+	public static byte[] generateWarmUpClass(String className, List<String> classes, boolean parallel) {
+		Objects.requireNonNull(className, "class name");
+		Objects.requireNonNull(classes, "classes");
+		return WarmUpClassGenerator.generate(className, classes, parallel);
+	}
+}
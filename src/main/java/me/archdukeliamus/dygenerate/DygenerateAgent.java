@@ -0,0 +1,91 @@
+package me.archdukeliamus.dygenerate;
+
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+
+/**
+ * A Java agent that post-processes classes as they are loaded, for classes that never pass through a build running Dygenerate, such as
+ * plugins. It is given as <code>-javaagent:dygenerate.jar</code>, optionally followed by <code>=</code> and a comma separated list of options:
+ * <ul>
+ * 	<li><code>cache=</code><i>directory</i> keeps transformed classes in this directory, instead of <code>.dygenerate/cache</code> under the
+ * 		user's home directory
+ * 	<li><code>cache=none</code> keeps no cache
+ * 	<li><code>fold-constants</code> enables {@link TransformOptions#setFoldConstants(boolean)}
+ * 	<li><code>handle-fields</code> enables {@link TransformOptions#setHandleFields(boolean)}
+ * 	<li><code>reflection-constants</code> enables {@link TransformOptions#setReflectionConstants(boolean)}
+ * 	<li><code>verbose</code> prints each class transformed to standard error
+ * </ul>
+ * Classes are transformed as by {@link Dygenerate#transformBytecodes(byte[], TransformOptions, TransformReport)}. The cache is shared by
+ * every JVM using the same directory, so repeated startups load transformed classes straight from it. Entries are keyed by the content of
+ * each class together with the agent jar and the options, so a changed class, a new version of Dygenerate or different options never see
+ * stale entries. Old entries are never removed; the directory may be deleted at any time when no JVM is using it.
+ * <br><br>
+ * The agent may also be loaded into a running JVM, in which case only classes loaded afterwards are transformed.
+ */
+public final class DygenerateAgent {
+	private DygenerateAgent() {}
+
+	/**
+	 * Entry point when started with <code>-javaagent</code>.
+	 * @param agentArgs the options, or null for none
+	 * @param inst the instrumentation instance
+	 */
+	public static void premain(String agentArgs, Instrumentation inst) {
+		install(agentArgs, inst);
+	}
+
+	/**
+	 * Entry point when loaded into a running JVM.
+	 * @param agentArgs the options, or null for none
+	 * @param inst the instrumentation instance
+	 */
+	public static void agentmain(String agentArgs, Instrumentation inst) {
+		install(agentArgs, inst);
+	}
+
+	private static void install(String agentArgs, Instrumentation inst) {
+		TransformOptions options = new TransformOptions();
+		Path cacheDirectory = Paths.get(System.getProperty("user.home"), ".dygenerate", "cache");
+		boolean verbose = false;
+		if (agentArgs != null && !agentArgs.isEmpty()) {
+			for (String arg : agentArgs.split(",")) {
+				if (arg.equals("fold-constants")) {
+					options.setFoldConstants(true);
+				} else if (arg.equals("handle-fields")) {
+					options.setHandleFields(true);
+				} else if (arg.equals("reflection-constants")) {
+					options.setReflectionConstants(true);
+				} else if (arg.equals("verbose")) {
+					verbose = true;
+				} else if (arg.equals("cache=none")) {
+					cacheDirectory = null;
+				} else if (arg.startsWith("cache=")) {
+					try {
+						cacheDirectory = Paths.get(arg.substring("cache=".length()));
+					} catch (InvalidPathException ex) {
+						throw new IllegalArgumentException("invalid cache directory: " + arg, ex);
+					}
+				} else {
+					throw new IllegalArgumentException("unknown Dygenerate agent option: " + arg);
+				}
+			}
+		}
+		TransformCache cache = cacheDirectory == null ? null : new TransformCache(cacheDirectory, salt(options));
+		inst.addTransformer(new LoadTimeTransformer(options, cache, verbose));
+	}
+
+	// identifies this build of the agent and its options, so that entries made by any other miss the cache
+	private static byte[] salt(TransformOptions options) {
+		StringBuilder sb = new StringBuilder("dygenerate-agent 1");
+		sb.append(" fold=").append(options.isFoldConstants());
+		sb.append(" handle-fields=").append(options.isHandleFields());
+		sb.append(" reflection-constants=").append(options.isReflectionConstants());
+		sb.append(' ').append(TransformCache.buildIdentity());
+		MessageDigest digest = TransformCache.sha256();
+		return digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
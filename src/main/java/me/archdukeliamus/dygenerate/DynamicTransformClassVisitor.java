@@ -3,6 +3,7 @@ package me.archdukeliamus.dygenerate;
 import java.util.Map;
 
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -10,16 +11,26 @@ import org.objectweb.asm.ConstantDynamic;
 
 final class DynamicTransformClassVisitor extends ClassVisitor {
 	private final Map<Surrogate,BootstrapData> replacements;
+	private final ConstantFolder folder; // null if constants are not folded
+	private final TransformReport report; // may be null
 	private String classFQCN; // needed to lookup and remove surrogate methods in this class
 	
 	DynamicTransformClassVisitor(int api, Map<Surrogate,BootstrapData> replacements) {
 		super(api);
 		this.replacements = replacements;
+		this.folder = null;
+		this.report = null;
 	}
 
 	DynamicTransformClassVisitor(int api, ClassVisitor classVisitor, Map<Surrogate,BootstrapData> replacements) {
+		this(api, classVisitor, replacements, null, null);
+	}
+
+	DynamicTransformClassVisitor(int api, ClassVisitor classVisitor, Map<Surrogate,BootstrapData> replacements, ConstantFolder folder, TransformReport report) {
 		super(api, classVisitor);
 		this.replacements = replacements;
+		this.folder = folder;
+		this.report = report;
 	}
 	
 	/**
@@ -37,6 +48,22 @@ final class DynamicTransformClassVisitor extends ClassVisitor {
 	Map<Surrogate, BootstrapData> getReplacements() {
 		return replacements;
 	}
+	
+	/**
+	 * Get the constant folder
+	 * @return the folder, or null if constants are not folded
+	 */
+	ConstantFolder getFolder() {
+		return folder;
+	}
+	
+	/**
+	 * Get the report
+	 * @return the report, or null if there is none
+	 */
+	TransformReport getReport() {
+		return report;
+	}
 
 	/**
 	 * Visit class, get the FQCN used.
@@ -62,25 +89,50 @@ final class DynamicTransformClassVisitor extends ClassVisitor {
 			if (cv != null) {
 				delegate = cv.visitMethod(access, name, descriptor, signature, exceptions);
 			}
-			return new DynamicTransformMethodVisitor(api, delegate, this);
+			return new DynamicTransformMethodVisitor(api, delegate, this, name + descriptor);
 		}
 		// otherwise method is a surrogate and should promptly stop existing
+		markChanged();
 		return null;
 	}
+	
+	/**
+	 * Record in the report, if there is one, that this class was changed.
+	 */
+	void markChanged() {
+		if (report != null) report.addChangedClass(classFQCN);
+	}
+	
+	/**
+	 * Count an emitted invokedynamic or dynamic constant in the report, if there is one.
+	 */
+	void countEmitted(BootstrapType type) {
+		if (report != null) report.addEmitted(type);
+	}
 }
 
 final class DynamicTransformMethodVisitor extends MethodVisitor {
 	// class data accessor
 	private final DynamicTransformClassVisitor parent;
+	private final String method; // name and descriptor, for the report
+	private int line = -1; // current source line, for the report
 
-	DynamicTransformMethodVisitor(int api, DynamicTransformClassVisitor parent) {
+	DynamicTransformMethodVisitor(int api, DynamicTransformClassVisitor parent, String method) {
 		super(api);
 		this.parent = parent;
+		this.method = method;
 	}
 	
-	DynamicTransformMethodVisitor(int api, MethodVisitor mv, DynamicTransformClassVisitor parent) {
+	DynamicTransformMethodVisitor(int api, MethodVisitor mv, DynamicTransformClassVisitor parent, String method) {
 		super(api, mv);
 		this.parent = parent;
+		this.method = method;
+	}
+	
+	@Override
+	public void visitLineNumber(int line, Label start) {
+		this.line = line;
+		if (mv != null) mv.visitLineNumber(line, start);
 	}
 	
 	@Override
@@ -89,6 +141,7 @@ final class DynamicTransformMethodVisitor extends MethodVisitor {
 		BootstrapData bootstrapData = parent.getReplacements().get(new Surrogate(owner,name,descriptor));
 		if (bootstrapData != null) {
 			// referred method is a surrogate, substitute appropriately
+			parent.markChanged();
 			if (bootstrapData.getType() == BootstrapType.INVOKEDYNAMIC) {
 				// Replace with invokedynamic opcode
 				// Does this method invoke with `this`?
@@ -97,6 +150,7 @@ final class DynamicTransformMethodVisitor extends MethodVisitor {
 				// invokestatic does not 
 				// If it does invoke with this, the invoking type descriptor must be modified to include this as argument 0
 				boolean invokesWithThis = opcode == Opcodes.INVOKESPECIAL || opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE;
+				parent.countEmitted(BootstrapType.INVOKEDYNAMIC);
 				if (!invokesWithThis) {
 					// Static. No adapting is needed.
 					if (mv != null) mv.visitInvokeDynamicInsn(name, descriptor, bootstrapData.getBootstrapHandle(), bootstrapData.getBootstrapArgs());
@@ -118,11 +172,32 @@ final class DynamicTransformMethodVisitor extends MethodVisitor {
 				// Replace with the appropriate ldc
 				// Fix the method descriptor return type into a field
 				String fixedDescriptor = Type.getMethodType(descriptor).getReturnType().getDescriptor();
-				if (mv != null) mv.visitLdcInsn(new ConstantDynamic(name, fixedDescriptor, bootstrapData.getBootstrapHandle(), bootstrapData.getBootstrapArgs()));
+				ConstantDynamic constant = new ConstantDynamic(name, fixedDescriptor, bootstrapData.getBootstrapHandle(), bootstrapData.getBootstrapArgs());
+				Object folded = fold(constant);
+				if (folded == constant) parent.countEmitted(BootstrapType.CONSTANTDYNAMIC);
+				if (mv != null) mv.visitLdcInsn(folded);
 			}
 		} else {
 			// target method instruction does not reference a surrogate, don't change
 			if (mv != null) mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
 		}
 	}
+	
+	/**
+	 * Fold a constant into a plain ldc value if folding is enabled and possible, otherwise return it unchanged.
+	 */
+	private Object fold(ConstantDynamic constant) {
+		ConstantFolder folder = parent.getFolder();
+		if (folder == null || !ConstantFolder.isCandidate(constant)) return constant;
+		String site = "condy " + constant.getName() + ":" + constant.getDescriptor();
+		TransformReport report = parent.getReport();
+		try {
+			Object value = folder.fold(constant);
+			if (report != null) report.add(new TransformReport.Entry(parent.getClassFQCN(), method, line, site + " = " + value, null));
+			return value;
+		} catch (ConstantFolder.NotFoldable ex) {
+			if (report != null) report.add(new TransformReport.Entry(parent.getClassFQCN(), method, line, site, ex.getMessage()));
+			return constant;
+		}
+	}
 }
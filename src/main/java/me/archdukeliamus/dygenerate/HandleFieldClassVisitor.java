@@ -0,0 +1,208 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+/**
+ * Replaces <code>private static final MethodHandle</code> fields that are initialized from a <code>MethodHandles.lookup().findX(...)</code>
+ * call with constant arguments, and only ever used to <code>invokeExact</code>, with <code>invokedynamic</code> call sites. Each
+ * <code>getstatic</code> and <code>invokeExact</code> pair becomes an <code>invokedynamic</code> bootstrapped by a synthetic method that
+ * performs the original lookup and returns a <code>ConstantCallSite</code>; the field and its initializer are removed.
+ * <br><br>
+ * Fields that do not match exactly are left alone, as are all fields of a nested class or a class with nested classes, since its
+ * nestmates may read a private field directly and would fail once it is removed. The class is read into a tree, transformed on
+ * <code>visitEnd</code> and then replayed into the next visitor.
+ */
+final class HandleFieldClassVisitor extends ClassNode {
+	private static final String METHOD_HANDLE_DESC = "Ljava/lang/invoke/MethodHandle;";
+	private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+	private static final String METHOD_HANDLES = "java/lang/invoke/MethodHandles";
+	private static final String LOOKUP = "java/lang/invoke/MethodHandles$Lookup";
+	private static final String METHOD_TYPE = "java/lang/invoke/MethodType";
+	private static final String CONSTANT_CALL_SITE = "java/lang/invoke/ConstantCallSite";
+	private static final String BOOTSTRAP_PREFIX = "handle$";
+	private static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;";
+
+	private final ClassVisitor next;
+	private final TransformReport report; // may be null
+
+	HandleFieldClassVisitor(int api, ClassVisitor next, TransformReport report) {
+		super(api);
+		this.next = next;
+		this.report = report;
+	}
+
+	/**
+	 * Transform the class, then pass it on.
+	 */
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		transform();
+		if (next != null) accept(next);
+	}
+
+	private void transform() {
+		MethodNode clinit = findMethod("<clinit>", "()V");
+		if (clinit == null) return;
+		// nestmates may read the private field directly, and would fail once it is removed
+		if (nestHostClass != null || (nestMembers != null && !nestMembers.isEmpty())) return;
+		for (FieldNode field : new ArrayList<>(fields)) {
+			int required = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL;
+			if ((field.access & required) != required || !field.desc.equals(METHOD_HANDLE_DESC)) continue;
+			InitializerSlice initializer;
+			try {
+				initializer = InitializerSlice.find(name, clinit, field, true);
+			} catch (ClassTransformException ex) {
+				continue;
+			}
+			if (!isConstantLookup(initializer.instructions())) continue;
+			// every load must feed an invokeExact directly, otherwise the handle escapes and the field has to stay
+			List<FieldInsnNode> loads = new ArrayList<>();
+			List<MethodInsnNode> invocations = new ArrayList<>();
+			if (!findInvocations(field, loads, invocations)) continue;
+
+			MethodNode bootstrap = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+					BOOTSTRAP_PREFIX + field.name, BOOTSTRAP_DESC, null, null);
+			bootstrap.instructions.add(new TypeInsnNode(Opcodes.NEW, CONSTANT_CALL_SITE));
+			bootstrap.instructions.add(new InsnNode(Opcodes.DUP));
+			initializer.moveTo(bootstrap.instructions);
+			bootstrap.instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, CONSTANT_CALL_SITE, "<init>", "(" + METHOD_HANDLE_DESC + ")V", false));
+			bootstrap.instructions.add(new InsnNode(Opcodes.ARETURN));
+			bootstrap.maxStack = clinit.maxStack + 2;
+			bootstrap.maxLocals = 3;
+			methods.add(bootstrap);
+
+			Handle handle = new Handle(Opcodes.H_INVOKESTATIC, name, bootstrap.name, bootstrap.desc, (access & Opcodes.ACC_INTERFACE) != 0);
+			for (MethodNode method : methods) {
+				for (int i = 0; i < loads.size(); i++) {
+					if (!method.instructions.contains(loads.get(i))) continue;
+					MethodInsnNode invocation = invocations.get(i);
+					method.instructions.remove(loads.get(i));
+					method.instructions.set(invocation, new InvokeDynamicInsnNode(field.name, invocation.desc, handle));
+					if (report != null) report.addEmitted(BootstrapType.INVOKEDYNAMIC);
+				}
+			}
+			fields.remove(field);
+			if (report != null) report.addChangedClass(name);
+		}
+	}
+
+	private MethodNode findMethod(String methodName, String descriptor) {
+		for (MethodNode method : methods) {
+			if (method.name.equals(methodName) && method.desc.equals(descriptor)) return method;
+		}
+		return null;
+	}
+
+	/**
+	 * Check that an initializer is a lookup with constant arguments and no other effects: <code>MethodHandles.lookup().findX(...)</code>
+	 * where the arguments are class literals, strings and <code>MethodType.methodType(...)</code> calls on class literals.
+	 */
+	private static boolean isConstantLookup(List<AbstractInsnNode> insns) {
+		if (insns.isEmpty()) return false;
+		AbstractInsnNode last = insns.get(insns.size() - 1);
+		if (last.getOpcode() != Opcodes.INVOKEVIRTUAL || !((MethodInsnNode) last).owner.equals(LOOKUP)
+				|| !((MethodInsnNode) last).name.startsWith("find") || !Type.getReturnType(((MethodInsnNode) last).desc).getDescriptor().equals(METHOD_HANDLE_DESC)) {
+			return false;
+		}
+		for (AbstractInsnNode insn : insns) {
+			if (insn == last) break;
+			switch (insn.getOpcode()) {
+				case Opcodes.ICONST_0:
+				case Opcodes.ICONST_1:
+				case Opcodes.ICONST_2:
+				case Opcodes.ICONST_3:
+				case Opcodes.ICONST_4:
+				case Opcodes.ICONST_5:
+				case Opcodes.BIPUSH:
+				case Opcodes.SIPUSH:
+				case Opcodes.DUP:
+				case Opcodes.AASTORE:
+					break;
+				case Opcodes.LDC:
+					Object cst = ((LdcInsnNode) insn).cst;
+					if (!(cst instanceof String) && !(cst instanceof Type)) return false;
+					break;
+				case Opcodes.ANEWARRAY:
+					if (!((TypeInsnNode) insn).desc.equals("java/lang/Class")) return false;
+					break;
+				case Opcodes.GETSTATIC:
+					// primitive class literals, such as int.class, are Integer.TYPE
+					FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+					if (!fieldInsn.owner.startsWith("java/lang/") || !fieldInsn.name.equals("TYPE")) return false;
+					break;
+				case Opcodes.INVOKESTATIC:
+					MethodInsnNode methodInsn = (MethodInsnNode) insn;
+					boolean lookup = methodInsn.owner.equals(METHOD_HANDLES) && methodInsn.name.equals("lookup");
+					boolean methodType = methodInsn.owner.equals(METHOD_TYPE) && methodInsn.name.equals("methodType");
+					if (!lookup && !methodType) return false;
+					break;
+				default:
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the invokeExact consuming each load of a field. Returns false if any load is used in another way.
+	 */
+	private boolean findInvocations(FieldNode field, List<FieldInsnNode> loads, List<MethodInsnNode> invocations) {
+		for (MethodNode method : methods) {
+			for (AbstractInsnNode insn : method.instructions) {
+				if (insn.getOpcode() != Opcodes.GETSTATIC) continue;
+				FieldInsnNode load = (FieldInsnNode) insn;
+				if (!load.owner.equals(name) || !load.name.equals(field.name) || !load.desc.equals(field.desc)) continue;
+				MethodInsnNode invocation = findInvocation(load);
+				if (invocation == null) return false;
+				loads.add(load);
+				invocations.add(invocation);
+			}
+		}
+		return true;
+	}
+
+	// Follow the stack forward from the load to the instruction consuming the handle, through straight-line code only.
+	private static MethodInsnNode findInvocation(FieldInsnNode load) {
+		int depth = 0; // slots pushed on top of the handle
+		for (AbstractInsnNode insn = load.getNext(); insn != null; insn = insn.getNext()) {
+			switch (insn.getType()) {
+				case AbstractInsnNode.LABEL:
+				case AbstractInsnNode.LINE:
+					continue;
+				case AbstractInsnNode.FRAME:
+				case AbstractInsnNode.JUMP_INSN:
+				case AbstractInsnNode.TABLESWITCH_INSN:
+				case AbstractInsnNode.LOOKUPSWITCH_INSN:
+					return null;
+				default:
+					break;
+			}
+			int pops = StackEffects.pops(insn);
+			if (pops > depth) {
+				if (insn.getOpcode() != Opcodes.INVOKEVIRTUAL || pops != depth + 1) return null;
+				MethodInsnNode invocation = (MethodInsnNode) insn;
+				return invocation.owner.equals(METHOD_HANDLE) && invocation.name.equals("invokeExact") ? invocation : null;
+			}
+			if (insn.getOpcode() == Opcodes.ATHROW || (insn.getOpcode() >= Opcodes.IRETURN && insn.getOpcode() <= Opcodes.RETURN)) return null;
+			depth += StackEffects.pushes(insn) - pops;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,194 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+/**
+ * The instructions in <code>&lt;clinit&gt;</code> that compute the value of a static field, up to and including the <code>putstatic</code>
+ * storing it. Only straight-line expressions that start from an empty operand stack and use no local variables are recognized, so the
+ * expression can be moved into another method unchanged.
+ */
+final class InitializerSlice {
+	private final MethodNode clinit;
+	private final AbstractInsnNode start; // first instruction of the expression
+	private final FieldInsnNode store;
+
+	private InitializerSlice(MethodNode clinit, AbstractInsnNode start, FieldInsnNode store) {
+		this.clinit = clinit;
+		this.start = start;
+		this.store = store;
+	}
+
+	/**
+	 * Find the initializer of a field.
+	 * @param owner internal name of the class declaring the field
+	 * @param clinit the static initializer of the class, may be null
+	 * @param field the field
+	 * @param allowTry whether the initializer may be covered by exception handlers, which will no longer apply once it is moved
+	 * @return the initializer
+	 * @throws ClassTransformException if the field has no single initializer that can be moved
+	 */
+	static InitializerSlice find(String owner, MethodNode clinit, FieldNode field, boolean allowTry) {
+		String where = owner + "." + field.name + ": ";
+		FieldInsnNode store = null;
+		if (clinit != null) {
+			for (AbstractInsnNode insn : clinit.instructions) {
+				if (insn.getOpcode() == Opcodes.PUTSTATIC) {
+					FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+					if (fieldInsn.owner.equals(owner) && fieldInsn.name.equals(field.name) && fieldInsn.desc.equals(field.desc)) {
+						if (store != null) throw new ClassTransformException(where + "field is assigned more than once");
+						store = fieldInsn;
+					}
+				}
+			}
+		}
+		if (store == null) throw new ClassTransformException(where + "field has no initializer");
+		// walk back from the store until the value it consumes has been built up from an empty stack
+		int depth = StackEffects.pops(store);
+		AbstractInsnNode start = store;
+		while (depth > 0) {
+			start = start.getPrevious();
+			if (start == null) throw new ClassTransformException(where + "cannot find start of initializer");
+			checkMovable(start, where);
+			depth -= StackEffects.pushes(start);
+			if (depth < 0) throw new ClassTransformException(where + "initializer shares values with surrounding code");
+			depth += StackEffects.pops(start);
+		}
+		checkNotReferenced(clinit, start, store, allowTry, where);
+		return new InitializerSlice(clinit, start, store);
+	}
+
+	/**
+	 * Get the instructions of the expression, in order, without labels and line numbers. The store is not included.
+	 * @return the instructions
+	 */
+	List<AbstractInsnNode> instructions() {
+		List<AbstractInsnNode> insns = new ArrayList<>();
+		for (AbstractInsnNode insn = start; insn != store; insn = insn.getNext()) {
+			if (insn.getOpcode() >= 0) insns.add(insn);
+		}
+		return insns;
+	}
+
+	/**
+	 * Move the expression to the end of another instruction list and remove the store from <code>&lt;clinit&gt;</code>. Labels stay behind
+	 * for any references outside the expression; line numbers are copied. Exception handlers left covering no code are removed.
+	 * @param body the list to move the expression to
+	 */
+	void moveTo(InsnList body) {
+		// javac puts the line number just ahead of the expression, so carry it over as well
+		AbstractInsnNode insn = start;
+		for (AbstractInsnNode previous = start.getPrevious(); previous != null && previous.getOpcode() < 0; previous = previous.getPrevious()) {
+			if (previous instanceof LineNumberNode) {
+				insn = previous;
+				break;
+			}
+		}
+		while (insn != store) {
+			AbstractInsnNode following = insn.getNext();
+			if (insn instanceof LineNumberNode) {
+				LabelNode line = new LabelNode();
+				body.add(line);
+				body.add(new LineNumberNode(((LineNumberNode) insn).line, line));
+			} else if (insn.getOpcode() >= 0) {
+				clinit.instructions.remove(insn);
+				body.add(insn);
+			}
+			insn = following;
+		}
+		clinit.instructions.remove(store);
+		// an empty exception table range is not allowed
+		Iterator<TryCatchBlockNode> it = clinit.tryCatchBlocks.iterator();
+		while (it.hasNext()) {
+			TryCatchBlockNode tryCatch = it.next();
+			boolean empty = true;
+			for (AbstractInsnNode covered = tryCatch.start; covered != tryCatch.end && covered != null; covered = covered.getNext()) {
+				if (covered.getOpcode() >= 0) {
+					empty = false;
+					break;
+				}
+			}
+			if (empty) it.remove();
+		}
+	}
+
+	private static void checkMovable(AbstractInsnNode insn, String where) {
+		switch (insn.getType()) {
+			case AbstractInsnNode.JUMP_INSN:
+			case AbstractInsnNode.TABLESWITCH_INSN:
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+			case AbstractInsnNode.FRAME:
+				throw new ClassTransformException(where + "initializer is not a straight-line expression");
+			case AbstractInsnNode.VAR_INSN:
+			case AbstractInsnNode.IINC_INSN:
+				throw new ClassTransformException(where + "initializer uses local variables");
+			default:
+				break;
+		}
+		switch (insn.getOpcode()) {
+			case Opcodes.PUTSTATIC:
+			case Opcodes.PUTFIELD:
+				throw new ClassTransformException(where + "initializer assigns to other fields");
+			case Opcodes.ATHROW:
+			case Opcodes.MONITORENTER:
+			case Opcodes.MONITOREXIT:
+			case Opcodes.IRETURN:
+			case Opcodes.LRETURN:
+			case Opcodes.FRETURN:
+			case Opcodes.DRETURN:
+			case Opcodes.ARETURN:
+			case Opcodes.RETURN:
+				throw new ClassTransformException(where + "initializer is not a straight-line expression");
+			default:
+				break;
+		}
+	}
+
+	// exception handlers would no longer apply once moved, and jumps into the slice would lose their target
+	private static void checkNotReferenced(MethodNode clinit, AbstractInsnNode start, AbstractInsnNode store, boolean allowTry, String where) {
+		InsnList insns = clinit.instructions;
+		int first = insns.indexOf(start);
+		int last = insns.indexOf(store);
+		if (!allowTry) {
+			for (TryCatchBlockNode tryCatch : clinit.tryCatchBlocks) {
+				int tryStart = insns.indexOf(tryCatch.start);
+				int tryEnd = insns.indexOf(tryCatch.end);
+				if (tryStart < last && tryEnd > first) throw new ClassTransformException(where + "initializer is inside a try block");
+			}
+		}
+		for (AbstractInsnNode insn : insns) {
+			for (LabelNode target : targets(insn)) {
+				int index = insns.indexOf(target);
+				if (index > first && index < last) throw new ClassTransformException(where + "initializer is a jump target");
+			}
+		}
+	}
+
+	private static List<LabelNode> targets(AbstractInsnNode insn) {
+		List<LabelNode> targets = new ArrayList<>();
+		if (insn instanceof JumpInsnNode) {
+			targets.add(((JumpInsnNode) insn).label);
+		} else if (insn instanceof TableSwitchInsnNode) {
+			targets.add(((TableSwitchInsnNode) insn).dflt);
+			targets.addAll(((TableSwitchInsnNode) insn).labels);
+		} else if (insn instanceof LookupSwitchInsnNode) {
+			targets.add(((LookupSwitchInsnNode) insn).dflt);
+			targets.addAll(((LookupSwitchInsnNode) insn).labels);
+		}
+		return targets;
+	}
+}
@@ -0,0 +1,32 @@
+package me.archdukeliamus.dygenerate;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks <code>private static final</code> fields whose initializers are to be evaluated lazily. On post-processing, the initializer is
+ * moved out of the static initializer into a synthetic bootstrap method, every read of the field is replaced with an <code>ldc</code>
+ * of a dynamic constant produced by that bootstrap method, and the field is removed. The initializer then runs at most once, the first
+ * time the field is read, instead of during class initialization.
+ * <br><br>
+ * An example lazy constant looks like:
+ * <br>
+ * <pre>
+ * {@literal @}LazyConstant
+ * private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+ * </pre>
+ * The initializer must be a single straight-line expression: it may not contain conditionals, loops, <code>try</code> blocks or local
+ * variables, nor assign to other fields. More complex initializers should be moved into a static method and called from the
+ * initializer. Fields holding compile-time constants are already inlined by the compiler and may not be marked.
+ * <br><br>
+ * As the field is removed, it must only be read from within its declaring class, and never through reflection. Since nested classes
+ * may read private fields of their enclosing class directly, lazy constants cannot be used in a nested class or in a class with nested
+ * classes. Requires class files of version 55 (Java 11) or above.
+ */
+@Retention(CLASS)
+@Target(FIELD)
+public @interface LazyConstant {
+}
@@ -0,0 +1,153 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Moves the initializers of fields marked {@link LazyConstant} out of <code>&lt;clinit&gt;</code> into synthetic condy bootstrap methods,
+ * replacing reads of the fields with <code>ldc</code> of the dynamic constant. The class is read into a tree, transformed on
+ * <code>visitEnd</code> and then replayed into the next visitor. Classes without lazy constants are replayed unchanged, though callers
+ * should leave this pass out for them, as found by {@link ConstantPoolCheck#mayHaveLazyConstants(byte[])} or
+ * {@link #hasLazyConstants(ClassNode)}, so that they are streamed rather than buffered.
+ */
+final class LazyConstantClassVisitor extends ClassNode {
+	private static final String LAZY_CONSTANT_DESC = Type.getDescriptor(LazyConstant.class);
+	private static final String BOOTSTRAP_PREFIX = "lazy$";
+	private static final String BOOTSTRAP_ARGS = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)";
+
+	private final ClassVisitor next;
+	private final TransformReport report; // may be null
+
+	LazyConstantClassVisitor(int api, ClassVisitor next, TransformReport report) {
+		super(api);
+		this.next = next;
+		this.report = report;
+	}
+
+	/**
+	 * Transform the class, then pass it on.
+	 */
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		transform();
+		if (next != null) accept(next);
+	}
+
+	private void transform() {
+		List<FieldNode> lazyFields = new ArrayList<>();
+		for (FieldNode field : fields) {
+			if (isLazy(field)) lazyFields.add(field);
+		}
+		if (lazyFields.isEmpty()) return;
+		if ((version & 0xFFFF) < Opcodes.V11) {
+			throw new ClassTransformException(name + ": lazy constants require class file version 55 (Java 11) or above");
+		}
+		// nestmates may read the private field directly, and would fail once it is removed
+		if (nestHostClass != null || (nestMembers != null && !nestMembers.isEmpty())) {
+			throw new ClassTransformException(name + ": lazy constants cannot be used in a nested class or a class with nested classes");
+		}
+		MethodNode clinit = findMethod("<clinit>", "()V");
+		// condy for each field, keyed by field name
+		Map<String,ConstantDynamic> constants = new HashMap<>();
+		for (FieldNode field : lazyFields) {
+			checkField(field);
+			MethodNode bootstrap = extractInitializer(clinit, field);
+			methods.add(bootstrap);
+			Handle handle = new Handle(Opcodes.H_INVOKESTATIC, name, bootstrap.name, bootstrap.desc, (access & Opcodes.ACC_INTERFACE) != 0);
+			constants.put(field.name, new ConstantDynamic(field.name, field.desc, handle));
+			fields.remove(field);
+			if (report != null) report.addChangedClass(name);
+		}
+		// replace every read, including those in other initializers that were just moved
+		for (MethodNode method : methods) {
+			ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+			while (it.hasNext()) {
+				AbstractInsnNode insn = it.next();
+				if (insn.getOpcode() != Opcodes.GETSTATIC && insn.getOpcode() != Opcodes.PUTSTATIC) continue;
+				FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+				ConstantDynamic constant = constants.get(fieldInsn.name);
+				if (constant == null || !fieldInsn.owner.equals(name) || !fieldInsn.desc.equals(constant.getDescriptor())) continue;
+				if (insn.getOpcode() == Opcodes.PUTSTATIC) {
+					throw new ClassTransformException(name + "." + fieldInsn.name + ": lazy constant is assigned in " + method.name + method.desc);
+				}
+				it.set(new LdcInsnNode(constant));
+				if (report != null) report.addEmitted(BootstrapType.CONSTANTDYNAMIC);
+			}
+		}
+	}
+
+	/**
+	 * Check whether a class read into a tree has fields marked {@link LazyConstant}.
+	 */
+	static boolean hasLazyConstants(ClassNode node) {
+		for (FieldNode field : node.fields) {
+			if (field.invisibleAnnotations == null) continue;
+			for (AnnotationNode annotation : field.invisibleAnnotations) {
+				if (annotation.desc.equals(LAZY_CONSTANT_DESC)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLazy(FieldNode field) {
+		if (field.invisibleAnnotations == null) return false;
+		Iterator<AnnotationNode> it = field.invisibleAnnotations.iterator();
+		while (it.hasNext()) {
+			if (it.next().desc.equals(LAZY_CONSTANT_DESC)) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void checkField(FieldNode field) {
+		int required = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL;
+		if ((field.access & required) != required) {
+			throw new ClassTransformException(name + "." + field.name + ": lazy constant must be private static final");
+		}
+		if (field.value != null) {
+			throw new ClassTransformException(name + "." + field.name + ": lazy constant is a compile-time constant");
+		}
+	}
+
+	private MethodNode findMethod(String methodName, String descriptor) {
+		for (MethodNode method : methods) {
+			if (method.name.equals(methodName) && method.desc.equals(descriptor)) return method;
+		}
+		return null;
+	}
+
+	/**
+	 * Move the expression assigned to a field in the static initializer into a new bootstrap method returning its value.
+	 */
+	private MethodNode extractInitializer(MethodNode clinit, FieldNode field) {
+		InitializerSlice initializer = InitializerSlice.find(name, clinit, field, false);
+		MethodNode bootstrap = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+				BOOTSTRAP_PREFIX + field.name, BOOTSTRAP_ARGS + field.desc, null, null);
+		initializer.moveTo(bootstrap.instructions);
+		bootstrap.instructions.add(new InsnNode(Type.getType(field.desc).getOpcode(Opcodes.IRETURN)));
+		bootstrap.maxStack = clinit.maxStack;
+		bootstrap.maxLocals = 3;
+		return bootstrap;
+	}
+}
@@ -0,0 +1,73 @@
+package me.archdukeliamus.dygenerate;
+
+import java.lang.System.Logger.Level;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+/**
+ * Transforms classes as they are loaded, for {@link DygenerateAgent}. Classes of the JDK and of the bootstrap class loader are never
+ * transformed, nor are classes being redefined, since the transform removes methods. Other classes are first checked with
+ * {@link ConstantPoolCheck}, so that the many classes with nothing to transform are returned unchanged without being parsed, and then looked
+ * up in the cache, if there is one, before being transformed. No inventory of call sites is taken, as nothing would read it, so the
+ * prelink pass, which holds each class in memory until it ends, only runs if prelink hooks are enabled.
+ * <br><br>
+ * Classes loaded by the transform itself, such as those of ASM, are not transformed, as the JVM does not expect a transformer to be
+ * reentered on the same thread. A class that fails to transform is loaded as it is, and its surrogates will throw when called.
+ */
+final class LoadTimeTransformer implements ClassFileTransformer {
+	private static final String[] SKIPPED_PACKAGES = {"java/", "javax/", "jdk/", "sun/", "com/sun/"};
+	private final TransformOptions options;
+	private final TransformCache cache; // may be null
+	private final boolean verbose;
+	private final ThreadLocal<Boolean> busy = new ThreadLocal<>(); // set while this thread is transforming
+
+	LoadTimeTransformer(TransformOptions options, TransformCache cache, boolean verbose) {
+		this.options = options;
+		this.cache = cache;
+		this.verbose = verbose;
+	}
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+			byte[] classfileBuffer) {
+		if (loader == null || className == null || classBeingRedefined != null || isSkipped(className)) return null;
+		if (busy.get() != null) return null;
+		busy.set(Boolean.TRUE);
+		try {
+			return transform(className, classfileBuffer);
+		} catch (RuntimeException ex) {
+			System.getLogger(LoadTimeTransformer.class.getName()).log(Level.WARNING, "cannot transform " + className, ex);
+			return null;
+		} finally {
+			busy.remove();
+		}
+	}
+
+	// null means the class is loaded unchanged
+	private byte[] transform(String className, byte[] classBytecode) {
+		if (!ConstantPoolCheck.mayTransform(classBytecode, options)) return null;
+		String key = null;
+		if (cache != null) {
+			key = cache.key(classBytecode);
+			byte[] cached = cache.get(key);
+			if (cached != null) {
+				if (verbose && cached.length != 0) System.err.println("dygenerate: transformed " + className + " (cached)");
+				return cached.length == 0 ? null : cached;
+			}
+		}
+		// only to tell whether the class changed
+		TransformReport report = new TransformReport();
+		byte[] transformed = Dygenerate.transformBytecodes(classBytecode, options, report);
+		boolean changed = !report.getChangedClasses().isEmpty();
+		if (cache != null) cache.put(key, changed ? transformed : new byte[0]);
+		if (verbose && changed) System.err.println("dygenerate: transformed " + className);
+		return changed ? transformed : null;
+	}
+
+	private static boolean isSkipped(String className) {
+		for (String prefix : SKIPPED_PACKAGES) {
+			if (className.startsWith(prefix)) return true;
+		}
+		return false;
+	}
+}
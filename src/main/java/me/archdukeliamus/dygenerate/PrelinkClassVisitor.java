@@ -0,0 +1,336 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Records every <code>invokedynamic</code> instruction and dynamic constant in the finished class in the report, if it takes an inventory,
+ * and optionally adds a prelink hook so that they can be linked ahead of their first use.
+ * <br><br>
+ * The JVM links each <code>invokedynamic</code> instruction separately, so a site can only be linked in advance by producing its call site
+ * somewhere else and handing it over when the instruction is first executed. With hooks enabled, every <code>invokedynamic</code> is given
+ * the synthetic bootstrap <code>prelink$site</code> with the index of the site as its only argument. The hook
+ * <code>prelink$hook</code> runs the original bootstrap of every site through <code>prelink$link</code> and parks the call sites in the
+ * <code>prelink$sites</code> array, where <code>prelink$site</code> takes them from; a site executed before the hook ran, or whose call site
+ * was already taken, runs its original bootstrap as usual. Dynamic constants are resolved per constant pool entry, so the hook simply loads
+ * each of them once. Failures in the hook are ignored and left to be thrown again by the sites themselves.
+ * <br><br>
+ * Every site is recorded and prelinked, not only those Dygenerate emitted: the sites javac emits for lambdas, string concatenation and
+ * pattern switches are bootstrapped by <code>LambdaMetafactory</code>, <code>StringConcatFactory</code> and <code>SwitchBootstraps</code>,
+ * which are side-effect free and usually the bulk of the linkage cost at startup, so linking them ahead of time is intended.
+ * <br><br>
+ * Interfaces are not given hooks, and neither are classes that already have one from an earlier run, whose sites already use
+ * <code>prelink$site</code>; such classes are still listed as prelinked, so that a warm-up class calls their hooks. The class is read into a
+ * tree, transformed on <code>visitEnd</code> and then replayed into the next visitor.
+ */
+final class PrelinkClassVisitor extends ClassNode {
+	static final String HOOK_NAME = "prelink$hook";
+	private static final String SITES_NAME = "prelink$sites";
+	private static final String SITE_NAME = "prelink$site";
+	private static final String LINK_NAME = "prelink$link";
+	private static final String SITES_DESC = "Ljava/util/concurrent/atomic/AtomicReferenceArray;";
+	private static final String SITES_TYPE = "java/util/concurrent/atomic/AtomicReferenceArray";
+	private static final String CALL_SITE = "java/lang/invoke/CallSite";
+	private static final String LINK_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;I)Ljava/lang/invoke/CallSite;";
+
+	private final ClassVisitor next;
+	private final TransformReport report; // may be null
+	private final boolean hooks;
+
+	PrelinkClassVisitor(int api, ClassVisitor next, TransformReport report, boolean hooks) {
+		super(api);
+		this.next = next;
+		this.report = report;
+		this.hooks = hooks;
+	}
+
+	/**
+	 * Record the sites and add the hook, then pass the class on.
+	 */
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		List<InvokeDynamicInsnNode> indys = new ArrayList<>();
+		Set<ConstantDynamic> constants = new LinkedHashSet<>();
+		for (MethodNode method : methods) {
+			for (AbstractInsnNode insn : method.instructions) {
+				if (insn.getOpcode() == Opcodes.INVOKEDYNAMIC) {
+					InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+					if (!isRedirected(indy)) indys.add(indy);
+					record(method, indy.name, indy.desc, new BootstrapData(BootstrapType.INVOKEDYNAMIC, indy.bsm, indy.bsmArgs));
+				} else if (insn.getOpcode() == Opcodes.LDC && ((LdcInsnNode) insn).cst instanceof ConstantDynamic) {
+					ConstantDynamic constant = (ConstantDynamic) ((LdcInsnNode) insn).cst;
+					constants.add(constant);
+					record(method, constant.getName(), constant.getDescriptor(), new BootstrapData(BootstrapType.CONSTANTDYNAMIC,
+							constant.getBootstrapMethod(), bootstrapArgs(constant)));
+				}
+			}
+		}
+		if (hooks && hasHook()) {
+			if (report != null) report.addPrelinkedClass(name);
+		} else if (hooks && (access & Opcodes.ACC_INTERFACE) == 0 && (!indys.isEmpty() || !constants.isEmpty())) {
+			addHook(indys, constants);
+			if (report != null) {
+				report.addPrelinkedClass(name);
+				report.addChangedClass(name);
+			}
+		}
+		if (next != null) accept(next);
+	}
+
+	// whether an earlier run gave the class a hook, which would clash with a new one
+	private boolean hasHook() {
+		for (MethodNode method : methods) {
+			if (method.name.equals(HOOK_NAME) || method.name.equals(SITE_NAME) || method.name.equals(LINK_NAME)) return true;
+		}
+		for (FieldNode field : fields) {
+			if (field.name.equals(SITES_NAME)) return true;
+		}
+		return false;
+	}
+
+	// whether the site already takes its call site from a hook
+	private boolean isRedirected(InvokeDynamicInsnNode indy) {
+		return indy.bsm.getOwner().equals(name) && indy.bsm.getName().equals(SITE_NAME);
+	}
+
+	private void record(MethodNode method, String siteName, String descriptor, BootstrapData bootstrapData) {
+		if (report != null && report.isInventory()) report.addSite(new TransformReport.Site(name, method.name + method.desc, siteName, descriptor, bootstrapData));
+	}
+
+	private static Object[] bootstrapArgs(ConstantDynamic constant) {
+		Object[] args = new Object[constant.getBootstrapMethodArgumentCount()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = constant.getBootstrapMethodArgument(i);
+		}
+		return args;
+	}
+
+	private void addHook(List<InvokeDynamicInsnNode> indys, Set<ConstantDynamic> constants) {
+		MethodNode hook = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, HOOK_NAME, "()V", null, null);
+		if (!indys.isEmpty()) {
+			// the link method needs the original bootstraps, so build it before redirecting the sites
+			methods.add(linkMethod(indys));
+			methods.add(siteMethod());
+			fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, SITES_NAME, SITES_DESC, null, null));
+			initializeSites(indys.size());
+			Handle site = new Handle(Opcodes.H_INVOKESTATIC, name, SITE_NAME, LINK_DESC, false);
+			for (int i = 0; i < indys.size(); i++) {
+				InvokeDynamicInsnNode indy = indys.get(i);
+				InsnList body = new InsnList();
+				body.add(new FieldInsnNode(Opcodes.GETSTATIC, name, SITES_NAME, SITES_DESC));
+				body.add(new LdcInsnNode(i));
+				body.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", false));
+				body.add(new LdcInsnNode(indy.name));
+				body.add(new LdcInsnNode(Type.getMethodType(indy.desc)));
+				body.add(new LdcInsnNode(i));
+				body.add(new MethodInsnNode(Opcodes.INVOKESTATIC, name, LINK_NAME, LINK_DESC, false));
+				body.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, SITES_TYPE, "set", "(ILjava/lang/Object;)V", false));
+				guard(hook, body);
+				indy.bsm = site;
+				indy.bsmArgs = new Object[] {i};
+			}
+		}
+		for (ConstantDynamic constant : constants) {
+			InsnList body = new InsnList();
+			body.add(new LdcInsnNode(constant));
+			body.add(new InsnNode(constant.getSize() == 2 ? Opcodes.POP2 : Opcodes.POP));
+			guard(hook, body);
+		}
+		hook.instructions.add(new InsnNode(Opcodes.RETURN));
+		hook.maxStack = 6;
+		hook.maxLocals = 0;
+		methods.add(hook);
+	}
+
+	// Append code to the hook inside a try block that discards any Throwable.
+	private static void guard(MethodNode hook, InsnList body) {
+		LabelNode start = new LabelNode();
+		LabelNode end = new LabelNode();
+		LabelNode handler = new LabelNode();
+		LabelNode after = new LabelNode();
+		hook.instructions.add(start);
+		hook.instructions.add(body);
+		hook.instructions.add(end);
+		hook.instructions.add(new JumpInsnNode(Opcodes.GOTO, after));
+		hook.instructions.add(handler);
+		hook.instructions.add(new FrameNode(Opcodes.F_SAME1, 0, null, 1, new Object[] {"java/lang/Throwable"}));
+		hook.instructions.add(new InsnNode(Opcodes.POP));
+		hook.instructions.add(after);
+		hook.instructions.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
+		hook.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, "java/lang/Throwable"));
+	}
+
+	/**
+	 * Build <code>prelink$link</code>, which runs the original bootstrap of the site with the given index.
+	 */
+	private MethodNode linkMethod(List<InvokeDynamicInsnNode> indys) {
+		MethodNode link = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, LINK_NAME, LINK_DESC, null,
+				new String[] {"java/lang/Throwable"});
+		LabelNode fail = new LabelNode();
+		LabelNode[] cases = new LabelNode[indys.size()];
+		for (int i = 0; i < cases.length; i++) {
+			cases[i] = new LabelNode();
+		}
+		link.instructions.add(new VarInsnNode(Opcodes.ILOAD, 3));
+		link.instructions.add(new TableSwitchInsnNode(0, cases.length - 1, fail, cases));
+		for (int i = 0; i < cases.length; i++) {
+			InvokeDynamicInsnNode indy = indys.get(i);
+			link.instructions.add(cases[i]);
+			link.instructions.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
+			link.instructions.add(new LdcInsnNode(indy.bsm));
+			link.instructions.add(new LdcInsnNode(indy.bsmArgs.length + 3));
+			link.instructions.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"));
+			for (int j = 0; j < indy.bsmArgs.length + 3; j++) {
+				link.instructions.add(new InsnNode(Opcodes.DUP));
+				link.instructions.add(new LdcInsnNode(j));
+				if (j < 3) {
+					link.instructions.add(new VarInsnNode(Opcodes.ALOAD, j));
+				} else {
+					loadBoxed(link.instructions, indy.bsmArgs[j - 3]);
+				}
+				link.instructions.add(new InsnNode(Opcodes.AASTORE));
+			}
+			link.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments",
+					"([Ljava/lang/Object;)Ljava/lang/Object;", false));
+			link.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, CALL_SITE));
+			link.instructions.add(new InsnNode(Opcodes.ARETURN));
+		}
+		link.instructions.add(fail);
+		link.instructions.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
+		link.instructions.add(new TypeInsnNode(Opcodes.NEW, "java/lang/IllegalArgumentException"));
+		link.instructions.add(new InsnNode(Opcodes.DUP));
+		link.instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V", false));
+		link.instructions.add(new InsnNode(Opcodes.ATHROW));
+		link.maxStack = 6;
+		link.maxLocals = 4;
+		return link;
+	}
+
+	// Load a static argument as an Object, as the JVM would pass it to the bootstrap.
+	private static void loadBoxed(InsnList insns, Object arg) {
+		insns.add(new LdcInsnNode(arg));
+		Type type;
+		if (arg instanceof Integer) {
+			type = Type.INT_TYPE;
+		} else if (arg instanceof Long) {
+			type = Type.LONG_TYPE;
+		} else if (arg instanceof Float) {
+			type = Type.FLOAT_TYPE;
+		} else if (arg instanceof Double) {
+			type = Type.DOUBLE_TYPE;
+		} else if (arg instanceof ConstantDynamic) {
+			type = Type.getType(((ConstantDynamic) arg).getDescriptor()); // a dynamic constant may be of any type
+		} else {
+			return;
+		}
+		String box;
+		switch (type.getSort()) {
+			case Type.BOOLEAN:
+				box = "java/lang/Boolean";
+				break;
+			case Type.CHAR:
+				box = "java/lang/Character";
+				break;
+			case Type.BYTE:
+				box = "java/lang/Byte";
+				break;
+			case Type.SHORT:
+				box = "java/lang/Short";
+				break;
+			case Type.INT:
+				box = "java/lang/Integer";
+				break;
+			case Type.FLOAT:
+				box = "java/lang/Float";
+				break;
+			case Type.LONG:
+				box = "java/lang/Long";
+				break;
+			case Type.DOUBLE:
+				box = "java/lang/Double";
+				break;
+			default:
+				return; // already a reference
+		}
+		insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, box, "valueOf", "(" + type.getDescriptor() + ")L" + box + ";", false));
+	}
+
+	/**
+	 * Build <code>prelink$site</code>, the bootstrap of every site, which takes the call site parked by the hook or links it now.
+	 */
+	private MethodNode siteMethod() {
+		MethodNode site = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, SITE_NAME, LINK_DESC, null,
+				new String[] {"java/lang/Throwable"});
+		LabelNode absent = new LabelNode();
+		site.instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, name, SITES_NAME, SITES_DESC));
+		site.instructions.add(new VarInsnNode(Opcodes.ILOAD, 3));
+		site.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+		site.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, SITES_TYPE, "getAndSet", "(ILjava/lang/Object;)Ljava/lang/Object;", false));
+		site.instructions.add(new InsnNode(Opcodes.DUP));
+		site.instructions.add(new JumpInsnNode(Opcodes.IFNULL, absent));
+		site.instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, CALL_SITE));
+		site.instructions.add(new InsnNode(Opcodes.ARETURN));
+		site.instructions.add(absent);
+		site.instructions.add(new FrameNode(Opcodes.F_SAME1, 0, null, 1, new Object[] {"java/lang/Object"}));
+		site.instructions.add(new InsnNode(Opcodes.POP));
+		for (int i = 0; i < 3; i++) {
+			site.instructions.add(new VarInsnNode(Opcodes.ALOAD, i));
+		}
+		site.instructions.add(new VarInsnNode(Opcodes.ILOAD, 3));
+		site.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, name, LINK_NAME, LINK_DESC, false));
+		site.instructions.add(new InsnNode(Opcodes.ARETURN));
+		site.maxStack = 4;
+		site.maxLocals = 4;
+		return site;
+	}
+
+	/**
+	 * Create the array of parked call sites at the very start of the static initializer, before any site can run.
+	 */
+	private void initializeSites(int count) {
+		MethodNode clinit = null;
+		for (MethodNode method : methods) {
+			if (method.name.equals("<clinit>") && method.desc.equals("()V")) clinit = method;
+		}
+		if (clinit == null) {
+			clinit = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+			clinit.instructions.add(new InsnNode(Opcodes.RETURN));
+			methods.add(clinit);
+		}
+		InsnList init = new InsnList();
+		init.add(new TypeInsnNode(Opcodes.NEW, SITES_TYPE));
+		init.add(new InsnNode(Opcodes.DUP));
+		init.add(count <= Short.MAX_VALUE ? new IntInsnNode(Opcodes.SIPUSH, count) : new LdcInsnNode(count));
+		init.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, SITES_TYPE, "<init>", "(I)V", false));
+		init.add(new FieldInsnNode(Opcodes.PUTSTATIC, name, SITES_NAME, SITES_DESC));
+		clinit.instructions.insert(init);
+		clinit.maxStack = Math.max(clinit.maxStack, 3);
+	}
+}
@@ -0,0 +1,470 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Replaces <code>Class.forName</code> calls with a constant name, such as <code>Class.forName("a.B")</code>, with <code>ldc</code> of a
+ * dynamic constant. The lookup is moved into a synthetic bootstrap method in the same class, so it runs once, with the same class loader,
+ * the first time the site is executed, and every later execution reuses the resulting <code>Class</code>.
+ * <br><br>
+ * A lookup that fails leaves the constant null, and the site then falls back to calling <code>Class.forName</code> itself through a
+ * synthetic helper, so that the original <code>ClassNotFoundException</code> reaches the same handlers, in this method or its callers, as
+ * before. Lookups inside a <code>try</code> block catching one of the exceptions the lookup may throw, or any of their supertypes, are
+ * skipped all the same.
+ * <br><br>
+ * Members looked up on a class literal with constant arguments, such as <code>A.class.getMethod("run", int.class)</code> or
+ * <code>A.class.getDeclaredField("value")</code>, are made constant when the result is only passed straight to <code>Method.invoke</code>,
+ * <code>Field.get</code> or <code>Field.set</code>. The lookup becomes <code>ldc</code> of a method handle from
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#methodInvoker Constants.methodInvoker},
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#fieldGetter fieldGetter} or
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#fieldSetter fieldSetter}, which behaves as the reflective call, and the call
+ * becomes <code>invokeExact</code> of the handle, so no <code>Method</code> or <code>Field</code> is ever shared between callers. A member
+ * that is not found is looked up again at the call, so the receiver and arguments must be loaded without side effects, and the lookup and
+ * the call must be in the same <code>try</code> blocks, for its exception to reach the same handlers as before.
+ * <br><br>
+ * The synthetic methods of an earlier run are left alone and new ones are named apart from every existing method, so running the pass
+ * again changes nothing. Every lookup seen is recorded in the report, if there is one. The class is read into a tree, transformed on
+ * <code>visitEnd</code> and then replayed into the next visitor.
+ */
+final class ReflectionClassVisitor extends ClassNode {
+	private static final String CLASS = "java/lang/Class";
+	private static final String FOR_NAME_DESC = "(Ljava/lang/String;)Ljava/lang/Class;";
+	private static final String BOOTSTRAP_PREFIX = "reflect$";
+	private static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Class;";
+	private static final String FALLBACK_DESC = "(Ljava/lang/Class;Ljava/lang/String;)Ljava/lang/Class;";
+	private static final String NOT_FOUND = "java/lang/ClassNotFoundException";
+	// exceptions thrown by Class.forName and their supertypes; catching one of these means failure is expected
+	private static final Set<String> LOOKUP_EXCEPTIONS = Set.of(NOT_FOUND, "java/lang/ReflectiveOperationException", "java/lang/Exception",
+			"java/lang/LinkageError", "java/lang/ExceptionInInitializerError", "java/lang/Error", "java/lang/Throwable");
+	private static final String GET_METHOD_DESC = "(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;";
+	private static final String GET_FIELD_DESC = "(Ljava/lang/String;)Ljava/lang/reflect/Field;";
+	private static final String INVOKE_DESC = "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+	private static final String GET_DESC = "(Ljava/lang/Object;)Ljava/lang/Object;";
+	private static final String SET_DESC = "(Ljava/lang/Object;Ljava/lang/Object;)V";
+	private static final String CONSTANTS = "me/archdukeliamus/dygenerate/rtutils/Constants";
+	private static final String INVOKER_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Class;I[Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;";
+	private static final String ACCESSOR_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Class;I)Ljava/lang/invoke/MethodHandle;";
+	private static final Handle PRIMITIVE_CLASS = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/ConstantBootstraps", "primitiveClass",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Class;", false);
+	// primitive class literals, such as int.class, are read from the TYPE field of their box
+	private static final Map<String,Type> PRIMITIVES = Map.of("java/lang/Boolean", Type.BOOLEAN_TYPE, "java/lang/Byte", Type.BYTE_TYPE,
+			"java/lang/Character", Type.CHAR_TYPE, "java/lang/Short", Type.SHORT_TYPE, "java/lang/Integer", Type.INT_TYPE,
+			"java/lang/Long", Type.LONG_TYPE, "java/lang/Float", Type.FLOAT_TYPE, "java/lang/Double", Type.DOUBLE_TYPE, "java/lang/Void", Type.VOID_TYPE);
+
+	private final ClassVisitor next;
+	private final TransformReport report;
+	private int bootstrapCount;
+	private MethodNode fallback;
+
+	ReflectionClassVisitor(int api, ClassVisitor next, TransformReport report) {
+		super(api);
+		this.next = next;
+		this.report = report;
+	}
+
+	/**
+	 * Transform the class, then pass it on.
+	 */
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		for (MethodNode method : new ArrayList<>(methods)) {
+			if (isGenerated(method)) continue;
+			transform(method);
+		}
+		if (next != null) accept(next);
+	}
+
+	private void transform(MethodNode method) {
+		List<TransformReport.Entry> entries = new ArrayList<>();
+		boolean changed = false;
+		for (AbstractInsnNode insn : method.instructions.toArray()) {
+			if (isMemberLookup(insn)) {
+				changed |= transformMember(method, (MethodInsnNode) insn, entries);
+				continue;
+			}
+			if (!isLookup(insn)) continue;
+			MethodInsnNode lookup = (MethodInsnNode) insn;
+			String where = method.name + method.desc;
+			int line = lineOf(lookup);
+			AbstractInsnNode start = previousInsn(lookup);
+			if (!(start instanceof LdcInsnNode) || !(((LdcInsnNode) start).cst instanceof String)) {
+				entries.add(entry(where, line, "Class.forName", "class name is not a constant"));
+				continue;
+			}
+			String className = (String) ((LdcInsnNode) start).cst;
+			String site = "Class.forName(\"" + className + "\")";
+			if ((version & 0xFFFF) < Opcodes.V11) {
+				entries.add(entry(where, line, site, "class file version is below 55 (Java 11)"));
+				continue;
+			}
+			String handled = findHandler(method, start, lookup);
+			if (handled != null) {
+				entries.add(entry(where, line, site, "failure is caught as " + Type.getObjectType(handled).getClassName()));
+				continue;
+			}
+			MethodNode bootstrap = bootstrap(className, line);
+			methods.add(bootstrap);
+			Handle handle = new Handle(Opcodes.H_INVOKESTATIC, name, bootstrap.name, bootstrap.desc, isInterface());
+			// the name stays on the stack for the fallback, which takes the place of the lookup
+			method.instructions.insertBefore(start, new LdcInsnNode(new ConstantDynamic("forName", "Ljava/lang/Class;", handle)));
+			method.instructions.set(lookup, new MethodInsnNode(Opcodes.INVOKESTATIC, name, fallback().name, FALLBACK_DESC, isInterface()));
+			changed = true;
+			entries.add(entry(where, line, site, null));
+			if (report != null) {
+				report.addChangedClass(name);
+				report.addEmitted(BootstrapType.CONSTANTDYNAMIC);
+			}
+		}
+		if (changed) method.maxStack++; // the constant sits below the name; member constants take less stack than their lookup
+		if (report != null) {
+			for (TransformReport.Entry entry : entries) {
+				report.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Replace a member lookup and the reflective call using its result with a method handle constant and a call of the handle.
+	 */
+	private boolean transformMember(MethodNode method, MethodInsnNode lookup, List<TransformReport.Entry> entries) {
+		String where = method.name + method.desc;
+		int line = lineOf(lookup);
+		List<AbstractInsnNode> expression = new ArrayList<>(); // pushes the class, the name and any parameter types
+		List<Object> parameterTypes = new ArrayList<>();
+		String memberName = parseLookup(lookup, expression, parameterTypes);
+		if (memberName == null) {
+			entries.add(entry(where, line, "Class." + lookup.name, "class, name or parameter types are not constants"));
+			return false;
+		}
+		Type owner = (Type) ((LdcInsnNode) expression.get(0)).cst;
+		String site = owner.getClassName() + "." + lookup.name + "(\"" + memberName + "\")";
+		if ((version & 0xFFFF) < Opcodes.V11) {
+			entries.add(entry(where, line, site, "class file version is below 55 (Java 11)"));
+			return false;
+		}
+		MethodInsnNode call = findCall(lookup);
+		if (call == null) {
+			entries.add(entry(where, line, site, "result is not passed straight to a reflective call with arguments free of side effects"));
+			return false;
+		}
+		if (!sameHandlers(method, lookup, call)) {
+			entries.add(entry(where, line, site, "lookup and call are in different try blocks"));
+			return false;
+		}
+		Integer declared = lookup.name.startsWith("getDeclared") ? 1 : 0;
+		ConstantDynamic constant;
+		if (lookup.desc.equals(GET_METHOD_DESC)) {
+			List<Object> arguments = new ArrayList<>();
+			arguments.add(owner);
+			arguments.add(declared);
+			arguments.addAll(parameterTypes);
+			constant = new ConstantDynamic(memberName, "Ljava/lang/invoke/MethodHandle;",
+					new Handle(Opcodes.H_INVOKESTATIC, CONSTANTS, "methodInvoker", INVOKER_DESC, false), arguments.toArray());
+		} else {
+			String bootstrap = call.name.equals("get") ? "fieldGetter" : "fieldSetter";
+			constant = new ConstantDynamic(memberName, "Ljava/lang/invoke/MethodHandle;",
+					new Handle(Opcodes.H_INVOKESTATIC, CONSTANTS, bootstrap, ACCESSOR_DESC, false), owner, declared);
+		}
+		for (AbstractInsnNode insn : expression) {
+			method.instructions.remove(insn);
+		}
+		method.instructions.set(lookup, new LdcInsnNode(constant));
+		// the reflective call and the handle take the same arguments
+		method.instructions.set(call, new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", call.desc, false));
+		entries.add(entry(where, line, site, null));
+		if (report != null) {
+			report.addChangedClass(name);
+			report.addEmitted(BootstrapType.CONSTANTDYNAMIC);
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the class, name and parameter types of a member lookup backwards from the lookup, adding their instructions to the
+	 * expression. Returns the member name, or null if any of them is not a constant.
+	 */
+	private static String parseLookup(MethodInsnNode lookup, List<AbstractInsnNode> expression, List<Object> parameterTypes) {
+		AbstractInsnNode insn = previousInsn(lookup);
+		if (lookup.desc.equals(GET_METHOD_DESC)) insn = parseClassArray(insn, expression, parameterTypes);
+		if (!(insn instanceof LdcInsnNode) || !(((LdcInsnNode) insn).cst instanceof String)) return null;
+		String memberName = (String) ((LdcInsnNode) insn).cst;
+		expression.add(0, insn);
+		insn = previousInsn(insn);
+		if (!(insn instanceof LdcInsnNode) || !(((LdcInsnNode) insn).cst instanceof Type)) return null;
+		int sort = ((Type) ((LdcInsnNode) insn).cst).getSort();
+		if (sort != Type.OBJECT && sort != Type.ARRAY) return null;
+		expression.add(0, insn);
+		return memberName;
+	}
+
+	/**
+	 * Parse an array of class constants backwards from its last instruction, as javac builds it for varargs, adding its instructions to the
+	 * expression and its elements to the types. Returns the instruction before the array, or null if it is not such an array.
+	 */
+	private static AbstractInsnNode parseClassArray(AbstractInsnNode last, List<AbstractInsnNode> expression, List<Object> types) {
+		if (last == null) return null;
+		if (last.getOpcode() == Opcodes.ACONST_NULL) { // no parameters
+			expression.add(0, last);
+			return previousInsn(last);
+		}
+		List<AbstractInsnNode> insns = new ArrayList<>();
+		List<Object> elements = new ArrayList<>();
+		AbstractInsnNode insn = last;
+		// each element is stored as dup, index, value, aastore; walking back, the last element comes first
+		while (insn != null && insn.getOpcode() == Opcodes.AASTORE) {
+			AbstractInsnNode value = previousInsn(insn);
+			AbstractInsnNode index = value == null ? null : previousInsn(value);
+			AbstractInsnNode dup = index == null ? null : previousInsn(index);
+			Object type = classConstant(value);
+			if (type == null || dup == null || dup.getOpcode() != Opcodes.DUP) return null;
+			insns.addAll(0, List.of(dup, index, value, insn));
+			elements.add(0, type);
+			insn = previousInsn(dup);
+		}
+		if (insn == null || insn.getOpcode() != Opcodes.ANEWARRAY || !((TypeInsnNode) insn).desc.equals(CLASS)) return null;
+		AbstractInsnNode length = previousInsn(insn);
+		if (intConstant(length) != elements.size()) return null;
+		for (int i = 0; i < elements.size(); i++) {
+			if (intConstant(insns.get(i * 4 + 1)) != i) return null;
+		}
+		insns.add(0, insn);
+		insns.add(0, length);
+		expression.addAll(0, insns);
+		types.addAll(elements);
+		return previousInsn(length);
+	}
+
+	// a class literal as a bootstrap argument, or null if the instruction does not load one
+	private static Object classConstant(AbstractInsnNode insn) {
+		if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Type) {
+			int sort = ((Type) ((LdcInsnNode) insn).cst).getSort();
+			return sort == Type.OBJECT || sort == Type.ARRAY ? ((LdcInsnNode) insn).cst : null;
+		}
+		if (insn == null || insn.getOpcode() != Opcodes.GETSTATIC) return null;
+		FieldInsnNode field = (FieldInsnNode) insn;
+		Type primitive = PRIMITIVES.get(field.owner);
+		if (primitive == null || !field.name.equals("TYPE") || !field.desc.equals("Ljava/lang/Class;")) return null;
+		return new ConstantDynamic(primitive.getDescriptor(), "Ljava/lang/Class;", PRIMITIVE_CLASS);
+	}
+
+	// the value of an int constant, or -1 if the instruction does not push one
+	private static int intConstant(AbstractInsnNode insn) {
+		if (insn == null) return -1;
+		int opcode = insn.getOpcode();
+		if (opcode >= Opcodes.ICONST_0 && opcode <= Opcodes.ICONST_5) return opcode - Opcodes.ICONST_0;
+		if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) return ((IntInsnNode) insn).operand;
+		if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Integer) return (Integer) ((LdcInsnNode) insn).cst;
+		return -1;
+	}
+
+	/**
+	 * Follow the stack forward from a member lookup to the reflective call taking the member, through straight-line code without side
+	 * effects only. Returns null if the member is used in any other way.
+	 */
+	private static MethodInsnNode findCall(MethodInsnNode lookup) {
+		boolean isMethod = lookup.desc.equals(GET_METHOD_DESC);
+		int depth = 0; // slots pushed on top of the member
+		for (AbstractInsnNode insn = lookup.getNext(); insn != null; insn = insn.getNext()) {
+			if (insn.getType() == AbstractInsnNode.LABEL || insn.getType() == AbstractInsnNode.LINE) continue;
+			int pops = StackEffects.pops(insn);
+			if (pops > depth) {
+				if (pops != depth + 1 || insn.getOpcode() != Opcodes.INVOKEVIRTUAL) return null;
+				MethodInsnNode call = (MethodInsnNode) insn;
+				if (isMethod) return call.owner.equals("java/lang/reflect/Method") && call.name.equals("invoke") && call.desc.equals(INVOKE_DESC) ? call : null;
+				if (!call.owner.equals("java/lang/reflect/Field")) return null;
+				boolean get = call.name.equals("get") && call.desc.equals(GET_DESC);
+				boolean set = call.name.equals("set") && call.desc.equals(SET_DESC);
+				return get || set ? call : null;
+			}
+			if (!isPure(insn)) return null;
+			depth += StackEffects.pushes(insn) - pops;
+		}
+		return null;
+	}
+
+	// loads, constants, arrays of them and boxing, whose order against the lookup does not matter
+	private static boolean isPure(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		if (opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.SIPUSH) return true;
+		if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD) return true;
+		switch (opcode) {
+			case Opcodes.DUP:
+			case Opcodes.AASTORE:
+				return true;
+			case Opcodes.ANEWARRAY:
+				return intConstant(previousInsn(insn)) >= 0;
+			case Opcodes.LDC:
+				Object cst = ((LdcInsnNode) insn).cst;
+				return cst instanceof String || cst instanceof Number;
+			case Opcodes.INVOKESTATIC:
+				MethodInsnNode call = (MethodInsnNode) insn;
+				return PRIMITIVES.containsKey(call.owner) && call.name.equals("valueOf") && call.desc.equals("(" + PRIMITIVES.get(call.owner).getDescriptor() + ")L" + call.owner + ";");
+			default:
+				return false;
+		}
+	}
+
+	// whether the same exception handlers cover both instructions
+	private static boolean sameHandlers(MethodNode method, AbstractInsnNode first, AbstractInsnNode second) {
+		int a = method.instructions.indexOf(first);
+		int b = method.instructions.indexOf(second);
+		for (TryCatchBlockNode tryCatch : method.tryCatchBlocks) {
+			int tryStart = method.instructions.indexOf(tryCatch.start);
+			int tryEnd = method.instructions.indexOf(tryCatch.end);
+			if ((tryStart <= a && a < tryEnd) != (tryStart <= b && b < tryEnd)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Create the bootstrap method of a constant, which looks up the class or returns null if it is not found.
+	 */
+	private MethodNode bootstrap(String className, int line) {
+		String bootstrapName;
+		do {
+			bootstrapName = BOOTSTRAP_PREFIX + bootstrapCount++;
+		} while (hasMethod(bootstrapName));
+		MethodNode bootstrap = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, bootstrapName, BOOTSTRAP_DESC,
+				null, null);
+		LabelNode tryStart = new LabelNode();
+		LabelNode tryEnd = new LabelNode();
+		LabelNode handler = new LabelNode();
+		bootstrap.instructions.add(tryStart);
+		if (line >= 0) bootstrap.instructions.add(new LineNumberNode(line, tryStart));
+		bootstrap.instructions.add(new LdcInsnNode(className));
+		bootstrap.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, CLASS, "forName", FOR_NAME_DESC, false));
+		bootstrap.instructions.add(tryEnd);
+		bootstrap.instructions.add(new InsnNode(Opcodes.ARETURN));
+		bootstrap.instructions.add(handler);
+		bootstrap.instructions.add(new FrameNode(Opcodes.F_SAME1, 0, null, 1, new Object[] {NOT_FOUND}));
+		bootstrap.instructions.add(new InsnNode(Opcodes.POP));
+		bootstrap.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+		bootstrap.instructions.add(new InsnNode(Opcodes.ARETURN));
+		bootstrap.tryCatchBlocks.add(new TryCatchBlockNode(tryStart, tryEnd, handler, NOT_FOUND));
+		bootstrap.maxStack = 1;
+		bootstrap.maxLocals = 3;
+		return bootstrap;
+	}
+
+	/**
+	 * Get the helper shared by every site, which returns the constant, or looks the class up again if the constant is null.
+	 */
+	private MethodNode fallback() {
+		if (fallback != null) return fallback;
+		fallback = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, uniqueName(BOOTSTRAP_PREFIX + "forName"),
+				FALLBACK_DESC, null, null);
+		LabelNode notFound = new LabelNode();
+		fallback.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+		fallback.instructions.add(new JumpInsnNode(Opcodes.IFNULL, notFound));
+		fallback.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+		fallback.instructions.add(new InsnNode(Opcodes.ARETURN));
+		fallback.instructions.add(notFound);
+		fallback.instructions.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
+		fallback.instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
+		fallback.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, CLASS, "forName", FOR_NAME_DESC, false));
+		fallback.instructions.add(new InsnNode(Opcodes.ARETURN));
+		fallback.maxStack = 1;
+		fallback.maxLocals = 2;
+		methods.add(fallback);
+		return fallback;
+	}
+
+	private boolean isInterface() {
+		return (access & Opcodes.ACC_INTERFACE) != 0;
+	}
+
+	// a name no method of the class has yet, since an earlier run may have used it
+	private String uniqueName(String base) {
+		String candidate = base;
+		for (int i = 0; hasMethod(candidate); i++) {
+			candidate = base + "$" + i;
+		}
+		return candidate;
+	}
+
+	private boolean hasMethod(String methodName) {
+		for (MethodNode method : methods) {
+			if (method.name.equals(methodName)) return true;
+		}
+		return false;
+	}
+
+	private static boolean isGenerated(MethodNode method) {
+		return (method.access & Opcodes.ACC_SYNTHETIC) != 0 && method.name.startsWith(BOOTSTRAP_PREFIX);
+	}
+
+	private TransformReport.Entry entry(String method, int line, String site, String reason) {
+		return new TransformReport.Entry(name, method, line, site, reason);
+	}
+
+	private static boolean isLookup(AbstractInsnNode insn) {
+		if (insn.getOpcode() != Opcodes.INVOKESTATIC) return false;
+		MethodInsnNode call = (MethodInsnNode) insn;
+		return call.owner.equals(CLASS) && call.name.equals("forName") && call.desc.equals(FOR_NAME_DESC);
+	}
+
+	private static boolean isMemberLookup(AbstractInsnNode insn) {
+		if (insn.getOpcode() != Opcodes.INVOKEVIRTUAL) return false;
+		MethodInsnNode call = (MethodInsnNode) insn;
+		if (!call.owner.equals(CLASS)) return false;
+		if (call.name.equals("getMethod") || call.name.equals("getDeclaredMethod")) return call.desc.equals(GET_METHOD_DESC);
+		if (call.name.equals("getField") || call.name.equals("getDeclaredField")) return call.desc.equals(GET_FIELD_DESC);
+		return false;
+	}
+
+	private static AbstractInsnNode previousInsn(AbstractInsnNode insn) {
+		AbstractInsnNode previous = insn.getPrevious();
+		while (previous != null && previous.getOpcode() < 0) {
+			if (previous.getType() == AbstractInsnNode.FRAME) return null; // a branch target, so the name may come from elsewhere
+			previous = previous.getPrevious();
+		}
+		return previous;
+	}
+
+	/**
+	 * Find a handler that catches an exception thrown by the lookup, returning its type.
+	 */
+	private static String findHandler(MethodNode method, AbstractInsnNode start, AbstractInsnNode lookup) {
+		int first = method.instructions.indexOf(start);
+		int last = method.instructions.indexOf(lookup);
+		for (TryCatchBlockNode tryCatch : method.tryCatchBlocks) {
+			if (tryCatch.type == null || !LOOKUP_EXCEPTIONS.contains(tryCatch.type)) continue;
+			int tryStart = method.instructions.indexOf(tryCatch.start);
+			int tryEnd = method.instructions.indexOf(tryCatch.end);
+			if (tryStart <= last && tryEnd > first) return tryCatch.type;
+		}
+		return null;
+	}
+
+	private static int lineOf(AbstractInsnNode insn) {
+		for (AbstractInsnNode previous = insn; previous != null; previous = previous.getPrevious()) {
+			if (previous instanceof LineNumberNode) return ((LineNumberNode) previous).line;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,70 @@
+package me.archdukeliamus.dygenerate;
+
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of transform results, kept by {@link TransformDaemon} across the runs it serves, so that classes unchanged since an
+ * earlier build are not transformed again. Results are keyed by the SHA-256 of the original bytecode and the options that affect the
+ * output, and the least recently used are dropped once the cached bytecode passes a size limit.
+ * <br><br>
+ * Use of this class is safe by multiple threads.
+ */
+final class ResultCache {
+	private final long maxBytes;
+	private final Map<String,Result> results = new LinkedHashMap<>(16, 0.75f, true); // access order, guarded by this
+	private long bytes; // guarded by this
+
+	/**
+	 * Create a cache.
+	 * @param maxBytes the total size of cached bytecode to keep
+	 */
+	ResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Compute the key of a class transformed with some options.
+	 */
+	String key(byte[] classBytecode, TransformOptions options) {
+		MessageDigest digest = TransformCache.sha256();
+		digest.update((byte) ((options.isFoldConstants() ? 1 : 0) | (options.isHandleFields() ? 2 : 0) | (options.isReflectionConstants() ? 4 : 0)));
+		return TransformCache.hex(digest.digest(classBytecode));
+	}
+
+	synchronized Result get(String key) {
+		return results.get(key);
+	}
+
+	synchronized void put(String key, Result result) {
+		Result old = results.put(key, result);
+		if (old != null) bytes -= old.size();
+		bytes += result.size();
+		Iterator<Result> it = results.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().size();
+			it.remove();
+		}
+	}
+
+	/**
+	 * The result of transforming a class.
+	 */
+	static final class Result {
+		final byte[] bytecode; // null if the class was left unchanged
+		final int indySites;
+		final int condySites;
+
+		Result(byte[] bytecode, int indySites, int condySites) {
+			this.bytecode = bytecode;
+			this.indySites = indySites;
+			this.condySites = condySites;
+		}
+
+		int size() {
+			return bytecode == null ? 64 : bytecode.length + 64; // allow for the key and the entry itself
+		}
+	}
+}
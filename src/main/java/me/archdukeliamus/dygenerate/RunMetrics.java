@@ -0,0 +1,143 @@
+package me.archdukeliamus.dygenerate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Timings and counts collected over a command line run, written out as JSON or CSV for dashboards. Times are kept in nanoseconds and
+ * written in milliseconds.
+ */
+final class RunMetrics {
+	enum Phase {
+		READ, SCAN, PARSE, PATCH, WRITE
+	}
+
+	private static final int SLOWEST_FILES = 10;
+	private static final String[] COUNT_NAMES = {"classes_scanned", "classes_skipped", "classes_patched", "classes_failed", "indy_sites",
+			"condy_sites", "bytes_in", "bytes_out"};
+
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private final PriorityQueue<FileTime> slowest = new PriorityQueue<>(Comparator.comparingLong((FileTime file) -> file.nanos));
+	long classesScanned; // class files read
+	long classesSkipped; // read, but unchanged, so not written back
+	long classesPatched; // changed and written back
+	long classesFailed;
+	long indySites; // emitted by Dygenerate
+	long condySites;
+	long bytesIn;
+	long bytesOut;
+
+	void addPhase(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Record the total time spent on a file, keeping only the slowest.
+	 */
+	void addFile(Path path, long nanos) {
+		slowest.add(new FileTime(path.toString(), nanos));
+		if (slowest.size() > SLOWEST_FILES) slowest.poll(); // drop the fastest
+	}
+
+	/**
+	 * Write the metrics to a file, as CSV if its name ends in <code>.csv</code> and as JSON otherwise.
+	 */
+	void write(Path file) throws IOException {
+		String content = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? toCsv() : toJson();
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private List<FileTime> slowestFirst() {
+		List<FileTime> files = new ArrayList<>(slowest);
+		files.sort(Comparator.comparingLong((FileTime file) -> file.nanos).reversed());
+		return files;
+	}
+
+	private long[] counts() {
+		return new long[] {classesScanned, classesSkipped, classesPatched, classesFailed, indySites, condySites, bytesIn, bytesOut};
+	}
+
+	String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"phases_ms\": {");
+		for (Phase phase : Phase.values()) {
+			sb.append(phase.ordinal() == 0 ? "\n" : ",\n");
+			sb.append("    \"").append(phase.name().toLowerCase(Locale.ROOT)).append("\": ").append(millis(getPhaseNanos(phase)));
+		}
+		sb.append("\n  },\n  \"counts\": {");
+		long[] counts = counts();
+		for (int i = 0; i < counts.length; i++) {
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    \"").append(COUNT_NAMES[i]).append("\": ").append(counts[i]);
+		}
+		sb.append("\n  },\n  \"slowest_files\": [");
+		List<FileTime> files = slowestFirst();
+		for (int i = 0; i < files.size(); i++) {
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    {\"path\": \"").append(escapeJson(files.get(i).path)).append("\", \"ms\": ").append(millis(files.get(i).nanos)).append("}");
+		}
+		sb.append(files.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	// one row per value: kind, name, value
+	String toCsv() {
+		StringBuilder sb = new StringBuilder("kind,name,value\n");
+		for (Phase phase : Phase.values()) {
+			sb.append("phase_ms,").append(phase.name().toLowerCase(Locale.ROOT)).append(',').append(millis(getPhaseNanos(phase))).append('\n');
+		}
+		long[] counts = counts();
+		for (int i = 0; i < counts.length; i++) {
+			sb.append("count,").append(COUNT_NAMES[i]).append(',').append(counts[i]).append('\n');
+		}
+		for (FileTime file : slowestFirst()) {
+			sb.append("slowest_file_ms,").append(escapeCsv(file.path)).append(',').append(millis(file.nanos)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+	}
+
+	private static String escapeJson(String s) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String escapeCsv(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static final class FileTime {
+		final String path;
+		final long nanos;
+
+		FileTime(String path, long nanos) {
+			this.path = path;
+			this.nanos = nanos;
+		}
+	}
+}
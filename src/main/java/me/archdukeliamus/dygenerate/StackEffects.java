@@ -0,0 +1,131 @@
+package me.archdukeliamus.dygenerate;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+
+/**
+ * Operand stack effects of individual instructions, in stack slots (longs and doubles take two). Used by passes that need to find
+ * where an expression begins without running a full data flow analysis.
+ */
+final class StackEffects {
+
+	private StackEffects() {}
+
+	/**
+	 * Gets the number of stack slots an instruction pops.
+	 * @param insn the instruction
+	 * @return slots popped, or zero for pseudo-instructions such as labels
+	 */
+	static int pops(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		switch (opcode) {
+			case Opcodes.GETSTATIC:
+				return 0;
+			case Opcodes.PUTSTATIC:
+				return fieldSize(insn);
+			case Opcodes.GETFIELD:
+				return 1;
+			case Opcodes.PUTFIELD:
+				return 1 + fieldSize(insn);
+			case Opcodes.INVOKEVIRTUAL:
+			case Opcodes.INVOKESPECIAL:
+			case Opcodes.INVOKEINTERFACE:
+				return Type.getArgumentsAndReturnSizes(((MethodInsnNode) insn).desc) >> 2; // includes the receiver
+			case Opcodes.INVOKESTATIC:
+				return (Type.getArgumentsAndReturnSizes(((MethodInsnNode) insn).desc) >> 2) - 1;
+			case Opcodes.INVOKEDYNAMIC:
+				return (Type.getArgumentsAndReturnSizes(((InvokeDynamicInsnNode) insn).desc) >> 2) - 1;
+			case Opcodes.MULTIANEWARRAY:
+				return ((MultiANewArrayInsnNode) insn).dims;
+			default:
+				return opcode < 0 ? 0 : FIXED_POPS[opcode];
+		}
+	}
+
+	/**
+	 * Gets the number of stack slots an instruction pushes.
+	 * @param insn the instruction
+	 * @return slots pushed, or zero for pseudo-instructions such as labels
+	 */
+	static int pushes(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		switch (opcode) {
+			case Opcodes.GETSTATIC:
+			case Opcodes.GETFIELD:
+				return fieldSize(insn);
+			case Opcodes.PUTSTATIC:
+			case Opcodes.PUTFIELD:
+				return 0;
+			case Opcodes.INVOKEVIRTUAL:
+			case Opcodes.INVOKESPECIAL:
+			case Opcodes.INVOKEINTERFACE:
+			case Opcodes.INVOKESTATIC:
+				return Type.getArgumentsAndReturnSizes(((MethodInsnNode) insn).desc) & 0x3;
+			case Opcodes.INVOKEDYNAMIC:
+				return Type.getArgumentsAndReturnSizes(((InvokeDynamicInsnNode) insn).desc) & 0x3;
+			case Opcodes.LDC:
+				Object cst = ((LdcInsnNode) insn).cst;
+				if (cst instanceof Long || cst instanceof Double) return 2;
+				if (cst instanceof ConstantDynamic) return ((ConstantDynamic) cst).getSize();
+				return 1;
+			case Opcodes.MULTIANEWARRAY:
+				return 1;
+			default:
+				return opcode < 0 ? 0 : FIXED_PUSHES[opcode];
+		}
+	}
+
+	private static int fieldSize(AbstractInsnNode insn) {
+		return Type.getType(((FieldInsnNode) insn).desc).getSize();
+	}
+
+	// Effects of the instructions whose effect does not depend on their operands, indexed by opcode
+	private static final int[] FIXED_POPS = new int[256];
+	private static final int[] FIXED_PUSHES = new int[256];
+	static {
+		effect(0, 1, Opcodes.ACONST_NULL, Opcodes.ICONST_M1, Opcodes.ICONST_0, Opcodes.ICONST_1, Opcodes.ICONST_2, Opcodes.ICONST_3,
+				Opcodes.ICONST_4, Opcodes.ICONST_5, Opcodes.FCONST_0, Opcodes.FCONST_1, Opcodes.FCONST_2, Opcodes.BIPUSH, Opcodes.SIPUSH,
+				Opcodes.ILOAD, Opcodes.FLOAD, Opcodes.ALOAD, Opcodes.NEW, Opcodes.JSR);
+		effect(0, 2, Opcodes.LCONST_0, Opcodes.LCONST_1, Opcodes.DCONST_0, Opcodes.DCONST_1, Opcodes.LLOAD, Opcodes.DLOAD);
+		effect(2, 1, Opcodes.IALOAD, Opcodes.FALOAD, Opcodes.AALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD,
+				Opcodes.IADD, Opcodes.ISUB, Opcodes.IMUL, Opcodes.IDIV, Opcodes.IREM, Opcodes.ISHL, Opcodes.ISHR, Opcodes.IUSHR,
+				Opcodes.IAND, Opcodes.IOR, Opcodes.IXOR, Opcodes.FADD, Opcodes.FSUB, Opcodes.FMUL, Opcodes.FDIV, Opcodes.FREM,
+				Opcodes.FCMPL, Opcodes.FCMPG);
+		effect(2, 2, Opcodes.LALOAD, Opcodes.DALOAD, Opcodes.LNEG, Opcodes.DNEG, Opcodes.L2D, Opcodes.D2L, Opcodes.SWAP);
+		effect(1, 0, Opcodes.ISTORE, Opcodes.FSTORE, Opcodes.ASTORE, Opcodes.POP, Opcodes.IFEQ, Opcodes.IFNE, Opcodes.IFLT, Opcodes.IFGE,
+				Opcodes.IFGT, Opcodes.IFLE, Opcodes.IFNULL, Opcodes.IFNONNULL, Opcodes.TABLESWITCH, Opcodes.LOOKUPSWITCH, Opcodes.IRETURN,
+				Opcodes.FRETURN, Opcodes.ARETURN, Opcodes.ATHROW, Opcodes.MONITORENTER, Opcodes.MONITOREXIT);
+		effect(2, 0, Opcodes.LSTORE, Opcodes.DSTORE, Opcodes.POP2, Opcodes.IF_ICMPEQ, Opcodes.IF_ICMPNE, Opcodes.IF_ICMPLT,
+				Opcodes.IF_ICMPGE, Opcodes.IF_ICMPGT, Opcodes.IF_ICMPLE, Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE, Opcodes.LRETURN,
+				Opcodes.DRETURN);
+		effect(3, 0, Opcodes.IASTORE, Opcodes.FASTORE, Opcodes.AASTORE, Opcodes.BASTORE, Opcodes.CASTORE, Opcodes.SASTORE);
+		effect(4, 0, Opcodes.LASTORE, Opcodes.DASTORE);
+		effect(1, 2, Opcodes.DUP, Opcodes.I2L, Opcodes.I2D, Opcodes.F2L, Opcodes.F2D);
+		effect(2, 3, Opcodes.DUP_X1);
+		effect(3, 4, Opcodes.DUP_X2);
+		effect(2, 4, Opcodes.DUP2);
+		effect(3, 5, Opcodes.DUP2_X1);
+		effect(4, 6, Opcodes.DUP2_X2);
+		effect(4, 2, Opcodes.LADD, Opcodes.LSUB, Opcodes.LMUL, Opcodes.LDIV, Opcodes.LREM, Opcodes.LAND, Opcodes.LOR, Opcodes.LXOR,
+				Opcodes.DADD, Opcodes.DSUB, Opcodes.DMUL, Opcodes.DDIV, Opcodes.DREM);
+		effect(3, 2, Opcodes.LSHL, Opcodes.LSHR, Opcodes.LUSHR);
+		effect(1, 1, Opcodes.INEG, Opcodes.FNEG, Opcodes.I2F, Opcodes.F2I, Opcodes.I2B, Opcodes.I2C, Opcodes.I2S, Opcodes.NEWARRAY,
+				Opcodes.ANEWARRAY, Opcodes.ARRAYLENGTH, Opcodes.CHECKCAST, Opcodes.INSTANCEOF);
+		effect(2, 1, Opcodes.L2I, Opcodes.L2F, Opcodes.D2I, Opcodes.D2F);
+		effect(4, 1, Opcodes.LCMP, Opcodes.DCMPL, Opcodes.DCMPG);
+	}
+
+	private static void effect(int pops, int pushes, int... opcodes) {
+		for (int opcode : opcodes) {
+			FIXED_POPS[opcode] = pops;
+			FIXED_PUSHES[opcode] = pushes;
+		}
+	}
+}
@@ -14,11 +14,17 @@ import org.objectweb.asm.Type;
  */
 final class SurrogateMethodClassVisitor extends ClassVisitor {
 	private final Map<Surrogate,BootstrapData> surrogates;
+	private final RunMetrics metrics; // times annotation parsing, may be null
 	private String classFQCN; // FQCN of the class currently being visited
 	
 	SurrogateMethodClassVisitor(int api, Map<Surrogate,BootstrapData> surrogateMap) {
+		this(api, surrogateMap, null);
+	}
+	
+	SurrogateMethodClassVisitor(int api, Map<Surrogate,BootstrapData> surrogateMap, RunMetrics metrics) {
 		super(api);
 		surrogates = surrogateMap;
+		this.metrics = metrics;
 	}
 	
 	/**
@@ -37,6 +43,14 @@ final class SurrogateMethodClassVisitor extends ClassVisitor {
 		return surrogates;
 	}
 	
+	/**
+	 * Get the run metrics
+	 * @return the metrics, or null if none are collected
+	 */
+	RunMetrics getMetrics() {
+		return metrics;
+	}
+	
 	/**
 	 * Visit class, get the FQCN used.
 	 */
@@ -159,7 +173,10 @@ final class SurrogateMethodAnnotationVisitor extends AnnotationVisitor {
 			// needs check for nonstatic call
 			String payload = (String) value;
 			// Parse the data
+			long start = System.nanoTime();
 			BootstrapData bootstrapData = BootstrapData.fromString(type, payload);
+			RunMetrics metrics = parent.getParent().getMetrics();
+			if (metrics != null) metrics.addPhase(RunMetrics.Phase.PARSE, System.nanoTime() - start);
 			parent.getParent().getSurrogates().put(
 					new Surrogate(parent.getParent().getClassFQCN(),parent.getMethodName(),parent.getMethodDescriptor()),
 					bootstrapData);
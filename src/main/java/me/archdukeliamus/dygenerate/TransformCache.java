@@ -0,0 +1,121 @@
+package me.archdukeliamus.dygenerate;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A content-addressed on-disk cache of transformed classes. Entries are keyed by the SHA-256 of the original bytecode together with a
+ * salt identifying the transformer and its options, so that a change to either misses the cache rather than returning stale bytes. A class
+ * the transform left unchanged is remembered by an empty entry.
+ * <br><br>
+ * Entries are written to a temporary file and moved into place, so concurrent writers, including other JVMs sharing the directory, never
+ * see half an entry. The cache is best effort: I/O errors are treated as misses and are otherwise ignored.
+ */
+final class TransformCache {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final Path directory;
+	private final byte[] salt;
+
+	/**
+	 * Create a cache.
+	 * @param directory the cache directory, created when the first entry is written
+	 * @param salt identifies the transformer and options the entries were made with
+	 */
+	TransformCache(Path directory, byte[] salt) {
+		this.directory = directory;
+		this.salt = salt.clone();
+	}
+
+	/**
+	 * Compute the key of a class.
+	 */
+	String key(byte[] classBytecode) {
+		MessageDigest digest = sha256();
+		digest.update(salt);
+		return hex(digest.digest(classBytecode));
+	}
+
+	/**
+	 * Look up an entry.
+	 * @return the transformed bytecode, an empty array if the class was left unchanged, or null on a miss
+	 */
+	byte[] get(String key) {
+		try {
+			return Files.readAllBytes(path(key));
+		} catch (IOException | RuntimeException ex) {
+			return null; // not there yet, or unreadable
+		}
+	}
+
+	/**
+	 * Store an entry.
+	 * @param transformed the transformed bytecode, or an empty array if the class was left unchanged
+	 */
+	void put(String key, byte[] transformed) {
+		Path path = path(key);
+		Path temp = null;
+		try {
+			Files.createDirectories(path.getParent());
+			temp = Files.createTempFile(path.getParent(), key, ".tmp");
+			Files.write(temp, transformed);
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException ex) {
+			// leave it for the next run
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException ex2) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	// spread entries over 256 subdirectories to keep directories small
+	private Path path(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key.substring(2) + ".class");
+	}
+
+	/**
+	 * Identify the build of Dygenerate that is running, by the location, size and modification time of its jar.
+	 */
+	static String buildIdentity() {
+		try {
+			CodeSource source = TransformCache.class.getProtectionDomain().getCodeSource();
+			Path location = Paths.get(source.getLocation().toURI());
+			// the size and time of the jar stand in for its content, which would be slow to hash on every startup
+			return location + " " + Files.size(location) + " " + Files.getLastModifiedTime(location).toMillis();
+		} catch (URISyntaxException | IOException | RuntimeException ex) {
+			return "unknown"; // versioned prefixes still tell releases apart
+		}
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error(ex); // Should not happen, every JDK has SHA-256
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+}
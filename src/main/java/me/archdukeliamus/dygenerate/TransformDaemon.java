@@ -0,0 +1,191 @@
+package me.archdukeliamus.dygenerate;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-running transformer serving command line runs for {@link DaemonClient}, so that builds with many modules pay for JVM startup and
+ * for warming up the parser and ASM once rather than once per module. The daemon listens on a loopback port, which it writes to a file in
+ * <code>.dygenerate</code> under the user's home directory together with a random token that every request must present, so that only
+ * the user who started it can use it. The file is readable by that user only, where the file system allows. The file also identifies the
+ * build of Dygenerate the daemon runs, so that a client of another build starts a fresh daemon instead of being served by a stale one.
+ * <br><br>
+ * Each connection carries one run: a header line with the build and the token, the client's working directory, then the arguments one per
+ * line and an empty line. The daemon runs them as {@link CommandLine} would, streaming its output back, and ends with a line holding a NUL
+ * character and the exit code. Runs are served concurrently, and share a {@link ResultCache} so that classes seen by an earlier run are not transformed
+ * again. The daemon exits once no run has been served for the idle timeout.
+ */
+final class TransformDaemon {
+	static final String PROTOCOL = "dygenerate-daemon 2";
+	private static final long DEFAULT_IDLE_MINUTES = 10;
+	private static final long CACHE_BYTES = 256L * 1024 * 1024;
+	private static final int REQUEST_TIMEOUT_MILLIS = 30_000; // to read the request, not to run it
+
+	private final String token;
+	private final String build = build();
+	private final ResultCache cache = new ResultCache(CACHE_BYTES);
+	private final AtomicInteger active = new AtomicInteger();
+	private volatile long lastActive = System.nanoTime();
+
+	private TransformDaemon(String token) {
+		this.token = token;
+	}
+
+	/**
+	 * Run a daemon until it is idle.
+	 * @param args the command line arguments, <code>--daemon</code> and optionally <code>--idle-timeout=</code><i>minutes</i>
+	 * @return the exit code
+	 */
+	static int run(String... args) {
+		long idleMinutes = DEFAULT_IDLE_MINUTES;
+		for (String arg : args) {
+			if (arg.startsWith("--idle-timeout=")) {
+				try {
+					idleMinutes = Long.parseLong(arg.substring("--idle-timeout=".length()));
+				} catch (NumberFormatException ex) {
+					idleMinutes = -1;
+				}
+				if (idleMinutes <= 0) {
+					System.out.println(arg + ": the idle timeout must be a positive number of minutes");
+					return 1;
+				}
+			} else if (!arg.equals("--daemon")) {
+				System.out.println(arg + ": not a daemon option");
+				CommandLine.usage(System.out);
+				return 1;
+			}
+		}
+		byte[] secret = new byte[16];
+		new SecureRandom().nextBytes(secret);
+		TransformDaemon daemon = new TransformDaemon(TransformCache.hex(secret));
+		try {
+			daemon.serve(idleMinutes * 60_000_000_000L);
+		} catch (IOException ex) {
+			System.out.println("daemon failed: " + ex.getMessage());
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Identify the build of Dygenerate running, as a string without spaces.
+	 */
+	static String build() {
+		return TransformCache.hex(TransformCache.sha256().digest(TransformCache.buildIdentity().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private void serve(long idleNanos) throws IOException {
+		Path portFile = DaemonClient.portFile();
+		ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "dygenerate-daemon-request");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout((int) Math.min(10_000, idleNanos / 1_000_000));
+			writePortFile(portFile, server.getLocalPort());
+			System.out.println("daemon listening on port " + server.getLocalPort());
+			while (true) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketTimeoutException ex) {
+					if (active.get() == 0 && System.nanoTime() - lastActive >= idleNanos) break;
+					continue;
+				}
+				active.incrementAndGet();
+				pool.execute(() -> handle(socket));
+			}
+			System.out.println("daemon idle, exiting");
+		} finally {
+			pool.shutdown();
+			removePortFile(portFile);
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket s = socket) {
+			s.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			String header = in.readLine();
+			if (header == null || !MessageDigest.isEqual(header.getBytes(StandardCharsets.UTF_8),
+					(PROTOCOL + " " + build + " " + token).getBytes(StandardCharsets.UTF_8))) {
+				return; // not our client, or one of another build
+			}
+			String directory = in.readLine();
+			List<String> args = new ArrayList<>();
+			for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+				args.add(line);
+			}
+			s.setSoTimeout(0);
+			PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), true, "UTF-8");
+			if (args.contains("--watch")) {
+				out.println("--watch: not available through the daemon, run it directly");
+				out.println("\0" + 1);
+				return;
+			}
+			int code;
+			try {
+				code = new CommandLine(out, Paths.get(directory), cache).run(args.toArray(new String[0]));
+			} catch (InvalidPathException | NullPointerException ex) {
+				out.println(directory + ": invalid working directory");
+				code = 1;
+			} catch (RuntimeException ex) {
+				ex.printStackTrace(out);
+				code = 1;
+			}
+			out.println("\0" + code);
+			out.flush();
+		} catch (IOException ex) {
+			// the client went away, nothing to report to
+		} finally {
+			lastActive = System.nanoTime();
+			active.decrementAndGet();
+		}
+	}
+
+	// write the file beside its final place and move it in, so that a client never reads half of it
+	private void writePortFile(Path portFile, int port) throws IOException {
+		Files.createDirectories(portFile.getParent());
+		Path temp = portFile.resolveSibling(portFile.getFileName() + ".tmp");
+		Files.deleteIfExists(temp);
+		try {
+			Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException ex) {
+			Files.createFile(temp);
+		}
+		Files.write(temp, (port + " " + token + " " + build + "\n").getBytes(StandardCharsets.UTF_8));
+		Files.move(temp, portFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	// remove the file, unless another daemon has replaced it since
+	private void removePortFile(Path portFile) {
+		try {
+			String content = new String(Files.readAllBytes(portFile), StandardCharsets.UTF_8);
+			if (content.trim().endsWith(" " + token + " " + build)) Files.delete(portFile);
+		} catch (IOException ex) {
+			// already gone
+		}
+	}
+}
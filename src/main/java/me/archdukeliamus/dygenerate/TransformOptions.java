@@ -0,0 +1,99 @@
+package me.archdukeliamus.dygenerate;
+
+/**
+ * Options enabling optional transformation passes. The default options enable none of them, matching
+ * {@link Dygenerate#transformBytecodes(byte[])}.
+ */
+public final class TransformOptions {
+	private boolean foldConstants;
+	private boolean prelinkHooks;
+	private boolean handleFields;
+	private boolean reflectionConstants;
+
+	/**
+	 * Create options with every optional pass disabled.
+	 */
+	public TransformOptions() {}
+
+	/**
+	 * Whether dynamic constants with pure bootstraps are evaluated at transform time.
+	 * @return true if constant folding is enabled
+	 */
+	public boolean isFoldConstants() {
+		return foldConstants;
+	}
+
+	/**
+	 * Set whether dynamic constants with pure bootstraps are evaluated at transform time. Only constants bootstrapped by
+	 * <code>ConstantBootstraps.invoke</code> or <code>ConstantBootstraps.getStaticFinal</code> over an allowlist of side-effect free JDK
+	 * methods and fields are evaluated, and only those with a primitive or <code>String</code> type are replaced, by a plain <code>ldc</code>
+	 * of the value. The value is computed by the JDK running Dygenerate.
+	 * @param foldConstants true to enable constant folding
+	 */
+	public void setFoldConstants(boolean foldConstants) {
+		this.foldConstants = foldConstants;
+	}
+
+	/**
+	 * Whether transformed classes are given a hook that links their call sites ahead of first use.
+	 * @return true if prelink hooks are added
+	 */
+	public boolean isPrelinkHooks() {
+		return prelinkHooks;
+	}
+
+	/**
+	 * Set whether transformed classes are given a hook that links their call sites ahead of first use. Each class containing
+	 * <code>invokedynamic</code> instructions or dynamic constants gets a private synthetic <code>prelink$hook</code> method that runs the
+	 * bootstrap of every site and keeps the call sites for the instructions to pick up when they are first executed. Classes given a
+	 * hook are listed in the report, and {@link Dygenerate#generateWarmUpClass} generates a class that calls all of their hooks.
+	 * @param prelinkHooks true to add prelink hooks
+	 */
+	public void setPrelinkHooks(boolean prelinkHooks) {
+		this.prelinkHooks = prelinkHooks;
+	}
+
+	/**
+	 * Whether <code>MethodHandle</code> fields only used to <code>invokeExact</code> are replaced with <code>invokedynamic</code> call sites.
+	 * @return true if method handle fields are replaced
+	 */
+	public boolean isHandleFields() {
+		return handleFields;
+	}
+
+	/**
+	 * Set whether <code>private static final MethodHandle</code> fields initialized from a <code>MethodHandles.lookup().findX(...)</code> call
+	 * with constant arguments, and only ever used to <code>invokeExact</code>, are replaced with <code>invokedynamic</code> call sites linked
+	 * to the same handle. The field and its initializer are removed, so lookup failures are reported as <code>BootstrapMethodError</code> on
+	 * first call instead of during class initialization.
+	 * @param handleFields true to replace method handle fields
+	 */
+	public void setHandleFields(boolean handleFields) {
+		this.handleFields = handleFields;
+	}
+
+	/**
+	 * Whether <code>Class.forName</code> calls and member lookups with constant arguments are replaced with dynamic constants.
+	 * @return true if reflective lookups are made constant
+	 */
+	public boolean isReflectionConstants() {
+		return reflectionConstants;
+	}
+
+	/**
+	 * Set whether <code>Class.forName</code> calls with a constant name are replaced with dynamic constants, so that each site looks its
+	 * class up once instead of on every execution. A class that is not found is looked up again on every execution, throwing
+	 * <code>ClassNotFoundException</code> as before. Lookups inside a <code>try</code> block that may catch their failure are left alone.
+	 * <br><br>
+	 * Methods and fields looked up on a class literal with constant arguments, whose result is only passed to <code>Method.invoke</code>,
+	 * <code>Field.get</code> or <code>Field.set</code>, are replaced too: the lookup becomes a method handle constant behaving as the
+	 * reflective call, which is then called through the handle instead, without a lookup or access check on each call.
+	 * <br><br>
+	 * As this changes every class using reflection, including those of libraries transformed by the agent, and makes transformed classes
+	 * depend on the runtime utilities for member lookups, it is off by default.
+	 * @param reflectionConstants true to make reflective lookups constant
+	 */
+	public void setReflectionConstants(boolean reflectionConstants) {
+		this.reflectionConstants = reflectionConstants;
+	}
+}
@@ -0,0 +1,262 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the sites that transformation passes converted or skipped, so that the user can see which code was changed and why
+ * other code was not. A report may be passed to {@link Dygenerate#transformBytecodes(byte[], TransformOptions, TransformReport)} and reused across classes.
+ * <br><br>
+ * The report also holds the classes that were given a prelink hook, from which a warm-up class can be generated with
+ * {@link Dygenerate#generateWarmUpClass}, and, if asked for with {@link #setInventory(boolean)}, an inventory of every
+ * <code>invokedynamic</code> and dynamic constant site in the transformed classes.
+ */
+public final class TransformReport {
+	private final List<Entry> entries = new ArrayList<>();
+	private final List<Site> sites = new ArrayList<>();
+	private final List<String> prelinkedClasses = new ArrayList<>();
+	private final Set<String> changedClasses = new LinkedHashSet<>();
+	private int emittedInvokeDynamic;
+	private int emittedConstantDynamic;
+	private boolean inventory;
+
+	/**
+	 * Create an empty report.
+	 */
+	public TransformReport() {}
+
+	/**
+	 * Whether the report takes an inventory of the sites in the transformed classes.
+	 * @return true if the sites are recorded
+	 */
+	public boolean isInventory() {
+		return inventory;
+	}
+
+	/**
+	 * Set whether the report takes an inventory of every <code>invokedynamic</code> and dynamic constant site in the transformed classes,
+	 * including those the compiler emitted for lambdas, string concatenation and switches. Taking it reads every class with a dynamic
+	 * site into a tree, so it is off by default.
+	 * @param inventory true to record the sites
+	 */
+	public void setInventory(boolean inventory) {
+		this.inventory = inventory;
+	}
+
+	/**
+	 * Get the entries recorded so far, in the order the sites were visited.
+	 * @return an unmodifiable view of the entries
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	void add(Entry entry) {
+		entries.add(entry);
+	}
+
+	/**
+	 * Get the <code>invokedynamic</code> and dynamic constant sites in the transformed classes, in the order they appear.
+	 * @return an unmodifiable view of the sites, empty unless the report takes an inventory
+	 */
+	public List<Site> getSites() {
+		return Collections.unmodifiableList(sites);
+	}
+
+	void addSite(Site site) {
+		sites.add(site);
+	}
+
+	/**
+	 * Get the internal names of the transformed classes that were given a prelink hook.
+	 * @return an unmodifiable view of the class names
+	 */
+	public List<String> getPrelinkedClasses() {
+		return Collections.unmodifiableList(prelinkedClasses);
+	}
+
+	void addPrelinkedClass(String className) {
+		prelinkedClasses.add(className);
+	}
+
+	/**
+	 * Get the internal names of the transformed classes that were changed in any way. Classes not listed came out equivalent to how they
+	 * went in, so they need not be written back.
+	 * @return an unmodifiable view of the class names, in the order they were changed
+	 */
+	public Set<String> getChangedClasses() {
+		return Collections.unmodifiableSet(changedClasses);
+	}
+
+	void addChangedClass(String className) {
+		changedClasses.add(className);
+	}
+
+	/**
+	 * Get the number of <code>invokedynamic</code> instructions emitted by Dygenerate, not counting those that were already in the classes.
+	 * @return the number of instructions
+	 */
+	public int getEmittedInvokeDynamicCount() {
+		return emittedInvokeDynamic;
+	}
+
+	/**
+	 * Get the number of dynamic constant loads emitted by Dygenerate, not counting those that were already in the classes.
+	 * @return the number of loads
+	 */
+	public int getEmittedConstantDynamicCount() {
+		return emittedConstantDynamic;
+	}
+
+	void addEmitted(BootstrapType type) {
+		if (type == BootstrapType.INVOKEDYNAMIC) {
+			emittedInvokeDynamic++;
+		} else {
+			emittedConstantDynamic++;
+		}
+	}
+
+	/**
+	 * A single converted or skipped site.
+	 */
+	public static final class Entry {
+		private final String className;
+		private final String method;
+		private final int line;
+		private final String site;
+		private final String reason;
+
+		/**
+		 * Create an entry.
+		 * @param reason the reason the site was skipped, or null if it was converted
+		 */
+		Entry(String className, String method, int line, String site, String reason) {
+			this.className = className;
+			this.method = method;
+			this.line = line;
+			this.site = site;
+			this.reason = reason;
+		}
+
+		/**
+		 * Get the internal name of the class containing the site.
+		 * @return the class name
+		 */
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * Get the name and descriptor of the method containing the site.
+		 * @return the method
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Get the source line of the site.
+		 * @return the line number, or -1 if the class has no line number information
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Get a short description of the code at the site.
+		 * @return the description
+		 */
+		public String getSite() {
+			return site;
+		}
+
+		/**
+		 * Whether the site was converted.
+		 * @return true if converted, false if skipped
+		 */
+		public boolean isConverted() {
+			return reason == null;
+		}
+
+		/**
+		 * Get the reason the site was skipped.
+		 * @return the reason, or null if the site was converted
+		 */
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			String location = className + "." + method + (line < 0 ? "" : " line " + line);
+			return (reason == null ? "converted " : "skipped ") + location + ": " + site + (reason == null ? "" : " (" + reason + ")");
+		}
+	}
+
+	/**
+	 * A single <code>invokedynamic</code> instruction or dynamic constant in a transformed class.
+	 */
+	public static final class Site {
+		private final String className;
+		private final String method;
+		private final String name;
+		private final String descriptor;
+		private final BootstrapData bootstrapData;
+
+		Site(String className, String method, String name, String descriptor, BootstrapData bootstrapData) {
+			this.className = className;
+			this.method = method;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.bootstrapData = bootstrapData;
+		}
+
+		/**
+		 * Get the internal name of the class containing the site.
+		 * @return the class name
+		 */
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * Get the name and descriptor of the method containing the site.
+		 * @return the method
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Get the name passed to the bootstrap method.
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the method descriptor of the call site, or the field descriptor of the constant.
+		 * @return the descriptor
+		 */
+		public String getDescriptor() {
+			return descriptor;
+		}
+
+		/**
+		 * Get the bootstrap method and static arguments of the site, as they were before any prelink indirection was added.
+		 * @return the bootstrap data
+		 */
+		public BootstrapData getBootstrapData() {
+			return bootstrapData;
+		}
+
+		@Override
+		public String toString() {
+			return className + "." + method + ": " + name + ":" + descriptor + " " + bootstrapData;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package me.archdukeliamus.dygenerate;
+
+import java.util.List;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates a warm-up class, which calls the prelink hooks of a list of classes one after another or in parallel. The generated class has
+ * a single public method, <code>public static void warmUp()</code>, that returns once every hook has run. Each task finds its class through
+ * the class loader of the warm-up class and calls the hook reflectively, as the hooks are private; any failure is ignored, since the call
+ * sites themselves will report it when they are first executed.
+ * <br><br>
+ * Calling a hook initializes its class. In parallel, the tasks run in the common fork-join pool, and classes whose static initializers
+ * depend on each other in a cycle may deadlock when two threads start initializing them from different ends of the cycle. The generated
+ * class only depends on the JDK.
+ */
+final class WarmUpClassGenerator {
+	private static final String TASK = "java/util/concurrent/ForkJoinTask";
+	private static final String TASKS_DESC = "[Ljava/util/concurrent/ForkJoinTask;";
+	private static final int CLASSES_PER_METHOD = 1000; // keeps the fill methods well under the 64K code limit
+
+	private WarmUpClassGenerator() {}
+
+	/**
+	 * Generate the warm-up class.
+	 * @param className the internal name of the warm-up class
+	 * @param classes the internal names of the classes with prelink hooks
+	 * @param parallel true to call the hooks in parallel, false to call them in order on the calling thread
+	 * @return the class bytecode
+	 */
+	static byte[] generate(String className, List<String> classes, boolean parallel) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object",
+				new String[] {"java/lang/Runnable"});
+		cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "name", "Ljava/lang/String;", null, null).visitEnd();
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE, "<init>", "(Ljava/lang/String;)V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitFieldInsn(Opcodes.PUTFIELD, className, "name", "Ljava/lang/String;");
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(2, 2);
+		mv.visitEnd();
+
+		// run(): Class.forName(name, false, loader).getDeclaredMethod(hook) made accessible and invoked, ignoring failures
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+		mv.visitCode();
+		Label start = new Label();
+		Label end = new Label();
+		Label handler = new Label();
+		mv.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+		mv.visitLabel(start);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "name", "Ljava/lang/String;");
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitLdcInsn(Type.getObjectType(className));
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Class", "forName", "(Ljava/lang/String;ZLjava/lang/ClassLoader;)Ljava/lang/Class;", false);
+		mv.visitLdcInsn(PrelinkClassVisitor.HOOK_NAME);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Class");
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Class", "getDeclaredMethod",
+				"(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;", false);
+		mv.visitVarInsn(Opcodes.ASTORE, 1);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitInsn(Opcodes.ICONST_1);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/reflect/Method", "setAccessible", "(Z)V", false);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitInsn(Opcodes.ACONST_NULL);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/reflect/Method", "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", false);
+		mv.visitInsn(Opcodes.POP);
+		mv.visitLabel(end);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitLabel(handler);
+		mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] {"java/lang/Throwable"});
+		mv.visitInsn(Opcodes.POP);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(4, 2);
+		mv.visitEnd();
+
+		// warmUp(): in parallel, fill an array with one task per class, then run them all; otherwise run each task as it is made
+		String fillDesc = parallel ? "(" + TASKS_DESC + ")V" : "()V";
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "warmUp", "()V", null, null);
+		mv.visitCode();
+		if (parallel) {
+			mv.visitLdcInsn(classes.size());
+			mv.visitTypeInsn(Opcodes.ANEWARRAY, TASK);
+		}
+		for (int from = 0; from < classes.size(); from += CLASSES_PER_METHOD) {
+			if (parallel) mv.visitInsn(Opcodes.DUP);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, "fill$" + (from / CLASSES_PER_METHOD), fillDesc, false);
+		}
+		if (parallel) mv.visitMethodInsn(Opcodes.INVOKESTATIC, TASK, "invokeAll", "(" + TASKS_DESC + ")V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(2, 0);
+		mv.visitEnd();
+
+		for (int from = 0; from < classes.size(); from += CLASSES_PER_METHOD) {
+			mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "fill$" + (from / CLASSES_PER_METHOD),
+					fillDesc, null, null);
+			mv.visitCode();
+			for (int i = from; i < Math.min(from + CLASSES_PER_METHOD, classes.size()); i++) {
+				if (parallel) {
+					mv.visitVarInsn(Opcodes.ALOAD, 0);
+					mv.visitLdcInsn(i);
+				}
+				mv.visitTypeInsn(Opcodes.NEW, className);
+				mv.visitInsn(Opcodes.DUP);
+				mv.visitLdcInsn(classes.get(i).replace('/', '.'));
+				mv.visitMethodInsn(Opcodes.INVOKESPECIAL, className, "<init>", "(Ljava/lang/String;)V", false);
+				if (parallel) {
+					mv.visitMethodInsn(Opcodes.INVOKESTATIC, TASK, "adapt", "(Ljava/lang/Runnable;)Ljava/util/concurrent/ForkJoinTask;", false);
+					mv.visitInsn(Opcodes.AASTORE);
+				} else {
+					mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, className, "run", "()V", false);
+				}
+			}
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(5, 1);
+			mv.visitEnd();
+		}
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
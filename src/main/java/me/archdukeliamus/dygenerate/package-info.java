@@ -187,6 +187,90 @@
  * <br><br>
  * Alternatively, Dygenerate may be invoked programmatically, passing a byte array and receiving a byte array of the processed output, with
  * {@link me.archdukeliamus.dygenerate.ClassTransformException ClassTransformException} being thrown on potential errors.
+ * <br><br>
+ * With the <code>--fold-constants</code> option (or {@link me.archdukeliamus.dygenerate.TransformOptions#setFoldConstants(boolean)}), dynamic
+ * constants bootstrapped by <code>ConstantBootstraps.invoke</code> or <code>ConstantBootstraps.getStaticFinal</code> over side-effect free members
+ * of the JDK's number, character, boolean, <code>Math</code> and <code>String</code> classes are evaluated during post-processing. Those with a
+ * primitive or <code>String</code> type are loaded with a plain <code>ldc</code> of the value instead, so that no bootstrap runs at all. The
+ * evaluation happens in a class loader that cannot see any other classes, so code being transformed is never run.
+ * <br><br>
+ * Every <code>invokedynamic</code> instruction and dynamic constant in the transformed classes, including those produced by
+ * <code>javac</code> itself, is listed in the {@link me.archdukeliamus.dygenerate.TransformReport TransformReport} together with the method
+ * containing it and its bootstrap data; <code>--inventory=</code><i>file</i> writes this list to a file. The first execution of each site runs
+ * its bootstrap method, which can be slow. With <code>--warm-up=</code><i>classname</i> (or
+ * {@link me.archdukeliamus.dygenerate.TransformOptions#setPrelinkHooks(boolean)}), each class is given a synthetic hook that runs the bootstraps
+ * of all its sites ahead of time and keeps the call sites for the instructions to pick up, and a warm-up class calling every hook is written
+ * to the first directory given. Calling its <code>warmUp()</code> method at startup moves linkage off the path of the first requests. The
+ * warm-up class calls the hooks reflectively, so classes in named modules must be open to it. Each hook initializes its class, so the hooks
+ * are called one after another; <code>--parallel-warm-up</code> calls them in parallel instead, which is faster but deadlocks if the static
+ * initializers of some of the classes depend on each other in a cycle.
+ * <br><br>
+ * Classes that need no changes are not written back. A summary of the classes patched, left unchanged and failed is printed at the end of each
+ * run; <code>--quiet</code> prints only this summary and any errors. <code>--metrics=</code><i>file</i> writes the time spent reading, scanning,
+ * parsing bootstrap data, patching and writing, the counts of classes, emitted <code>invokedynamic</code> instructions and dynamic constants,
+ * the bytes read and written and the slowest files, as JSON, or as CSV if the file name ends in <code>.csv</code>.
+ * <br><br>
+ * During development, <code>--watch</code> keeps running after the first pass and transforms the classes in the given directories again as
+ * the compiler rewrites them. Changes are gathered until the compiler has been quiet for a moment, then only the classes changed are
+ * transformed, in parallel. Results and parsed bootstrap data stay in memory between changes, so a class compiled to the same bytecode as
+ * before is not transformed again.
+ * <br><br>
+ * Builds that run Dygenerate once per module can avoid starting a JVM each time by running
+ * {@link me.archdukeliamus.dygenerate.DaemonClient DaemonClient} with the same arguments instead. It passes the run to a background daemon,
+ * starting one if needed, which keeps the results for classes it has seen before and exits after ten minutes without requests
+ * (<code>--idle-timeout=</code><i>minutes</i> when started by hand with <code>--daemon</code>).
+ * <br><br>
+ * Gradle builds can instead apply the <code>me.archdukeliamus.dygenerate</code> plugin from the <code>gradle-plugin</code> project, which adds
+ * a <code>dygenerateClasses</code> task after the Java compile task of each source set. The task is incremental, transforming only the
+ * classes that changed, runs in parallel workers and can be taken from the build cache; <code>dygenerate { foldConstants = true }</code>
+ * enables constant folding, <code>handleFields = true</code> the replacement of method handle fields and <code>reflectionConstants = true</code>
+ * constant reflective lookups.
+ * <br><br>
+ * The separate pass can be left out altogether by transforming classes as <code>javac</code> compiles them: putting the jar of the
+ * <code>javac-plugin</code> project on the annotation processor path transforms each class right after it is generated, and code compiling
+ * through <code>javax.tools</code> can wrap its file manager in a <code>TransformingFileManager</code> so that classes are transformed
+ * before they are ever written.
+ * <br><br>
+ * Classes that never pass through a build, such as plugins, may instead be transformed as they are loaded by running the JVM with
+ * <code>-javaagent:dygenerate.jar</code>; see {@link me.archdukeliamus.dygenerate.DygenerateAgent DygenerateAgent}. Classes whose constant
+ * pool names nothing the transform looks for are passed over without being parsed, and transformed classes are kept in an on-disk cache so
+ * that later startups skip the transform.
+ * <br><br>
+ * Classes generated at runtime may use surrogates too. {@link me.archdukeliamus.dygenerate.Dygenerate#defineClass Dygenerate.defineClass} and
+ * {@link me.archdukeliamus.dygenerate.Dygenerate#defineHiddenClass Dygenerate.defineHiddenClass} transform and define a class with a
+ * <code>Lookup</code> in one step, and a {@link me.archdukeliamus.dygenerate.DefiningClassVisitor DefiningClassVisitor} takes the place of
+ * the <code>ClassWriter</code> at the end of an ASM visitor chain, so that the generated class is transformed without being written out and
+ * parsed again.
+ * 
+ * <h2>Lazy Constants</h2>
+ * 
+ * Post-processing also turns <code>private static final</code> fields marked {@link me.archdukeliamus.dygenerate.LazyConstant} into dynamic
+ * constants, without any surrogate methods. The initializer of each such field is moved from the static initializer into a synthetic bootstrap
+ * method, and reads of the field become <code>ldc</code> instructions. This defers expensive initializers, such as compiling regular expressions
+ * or building lookup tables, until first use, so that they do not slow down class initialization or run at all if the field is never read.
+ * <br><br>
+ * Likewise, with the <code>--handle-fields</code> option (or {@link me.archdukeliamus.dygenerate.TransformOptions#setHandleFields(boolean)}),
+ * <code>private static final MethodHandle</code> fields initialized from <code>MethodHandles.lookup().findX(...)</code> with constant
+ * arguments (class literals, strings and <code>MethodType.methodType(...)</code> calls) are replaced when every read of the field is the receiver of an
+ * <code>invokeExact</code>. Each such call becomes an <code>invokedynamic</code> linked to a <code>ConstantCallSite</code> of the same handle,
+ * which the JIT can inline as well as a constant field, and the field and its initializer are removed. Lookup failures are then reported as
+ * <code>BootstrapMethodError</code> on first call, instead of during class initialization. Fields used in any other way are left alone.
+ * <br><br>
+ * With the <code>--reflection-constants</code> option (or
+ * {@link me.archdukeliamus.dygenerate.TransformOptions#setReflectionConstants(boolean)}), <code>Class.forName</code> calls with a constant
+ * name, such as <code>Class.forName("com.example.MyClass")</code>, are replaced with dynamic constants holding the resulting <code>Class</code>,
+ * so that the class is looked up once per site rather than on every execution. A class that is not found is looked up again each time,
+ * throwing the same <code>ClassNotFoundException</code> as before, and lookups inside a <code>try</code> block that catches
+ * <code>ClassNotFoundException</code> or any of its supertypes, or <code>LinkageError</code>, are left alone.
+ * <br><br>
+ * The same option turns methods and fields looked up on a class literal with constant arguments, such as
+ * <code>MyClass.class.getDeclaredMethod("run", int.class).invoke(target, 1)</code>, into method handle constants from
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#methodInvoker Constants.methodInvoker},
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#fieldGetter fieldGetter} and
+ * {@link me.archdukeliamus.dygenerate.rtutils.Constants#fieldSetter fieldSetter}, when the <code>Method</code> or <code>Field</code> is
+ * only passed to <code>invoke</code>, <code>get</code> or <code>set</code>. The handle behaves as the reflective call, down to the exceptions
+ * it throws, but calls the member directly, and as no <code>Method</code> or <code>Field</code> object is left, none is shared between
+ * callers. On the command line, every converted and skipped lookup is listed together with the reason it was skipped.
  * 
  * <h2>An Example</h2>
  * 
@@ -0,0 +1,43 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event timing a bootstrap method in {@link Bootstraps}. Begin the event before building the call site and call
+ * {@link #end(String, Lookup, String, MethodType)} afterwards; while the event is disabled, neither does any work.
+ */
+@Name("me.archdukeliamus.dygenerate.Bootstrap")
+@Label("Bootstrap")
+@Category({"Dygenerate", "Linkage"})
+@Description("A Dygenerate bootstrap method creating a call site")
+@StackTrace(false)
+final class BootstrapEvent extends Event {
+	@Label("Bootstrap Method")
+	String bootstrap;
+	@Label("Caller Class")
+	Class<?> callerClass;
+	@Label("Name")
+	String name;
+	@Label("Type")
+	String type;
+
+	/**
+	 * Commit the event if it is enabled and took long enough to be recorded.
+	 */
+	void end(String bootstrap, Lookup lk, String name, MethodType type) {
+		if (!shouldCommit()) return;
+		this.bootstrap = bootstrap;
+		this.callerClass = lk.lookupClass();
+		this.name = name;
+		this.type = type.toMethodDescriptorString();
+		commit();
+	}
+}
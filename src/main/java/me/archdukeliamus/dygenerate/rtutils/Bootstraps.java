@@ -1,5 +1,6 @@
 package me.archdukeliamus.dygenerate.rtutils;
 
+import java.lang.System.Logger.Level;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
@@ -12,6 +13,16 @@ import java.lang.invoke.MethodType;
  *
  */
 public final class Bootstraps {
+	private static final MethodHandle MH_STRING_SWITCH;
+	private static final MethodHandle MH_ENUM_SWITCH;
+	static {
+		try {
+			MH_STRING_SWITCH = MethodHandles.lookup().findVirtual(PerfectHashSwitch.class, "indexOf", MethodType.methodType(int.class, String.class));
+			MH_ENUM_SWITCH = MethodHandles.lookup().findVirtual(EnumSwitch.class, "indexOf", MethodType.methodType(int.class, Enum.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
 
 	private Bootstraps() {}
 	
@@ -24,7 +35,11 @@ public final class Bootstraps {
 	 * @return a DuckTypeCallSite
 	 */
 	public static CallSite duckTypeCall(Lookup lk, String name, MethodType type) {
-		return new DuckTypeCallSite(lk, name, type);
+		BootstrapEvent event = new BootstrapEvent();
+		event.begin();
+		CallSite site = new DuckTypeCallSite(lk, name, type);
+		event.end("duckTypeCall", lk, name, type);
+		return site;
 	}
 	
 	/**
@@ -37,7 +52,11 @@ public final class Bootstraps {
 	 * @return a DuckTypeCallSite
 	 */
 	public static CallSite duckTypeCall(Lookup lk, String name, MethodType type, int polymorphism) {
-		return new DuckTypeCallSite(lk, name, type, polymorphism);
+		BootstrapEvent event = new BootstrapEvent();
+		event.begin();
+		CallSite site = new DuckTypeCallSite(lk, name, type, polymorphism);
+		event.end("duckTypeCall", lk, name, type);
+		return site;
 	}
 	
 	/**
@@ -54,9 +73,13 @@ public final class Bootstraps {
 	 * @return a ConstantCallSite
 	 */
 	public static CallSite lookupAndInvoke(Lookup lk, String callerName, MethodType callerType, MethodHandle lookupHandle) {
+		BootstrapEvent event = new BootstrapEvent();
+		event.begin();
 		MethodType lookupType = lookupHandle.type();
 		if (lookupType.returnType() != MethodHandle.class) throw new IllegalArgumentException("lookup handle does not return a method handle");
-		return new ConstantCallSite(MethodHandles.foldArguments(MethodHandles.invoker(callerType), lookupHandle.bindTo(lk).bindTo(callerName).bindTo(callerType)));
+		CallSite site = new ConstantCallSite(MethodHandles.foldArguments(MethodHandles.invoker(callerType), lookupHandle.bindTo(lk).bindTo(callerName).bindTo(callerType)));
+		event.end("lookupAndInvoke", lk, callerName, callerType);
+		return site;
 	}
 	
 	/**
@@ -73,8 +96,270 @@ public final class Bootstraps {
 	 * @return a ConstantCallSite
 	 */
 	public static CallSite lookupAndInvokeExact(Lookup lk, String callerName, MethodType callerType, MethodHandle lookupHandle) {
+		BootstrapEvent event = new BootstrapEvent();
+		event.begin();
 		MethodType lookupType = lookupHandle.type();
 		if (lookupType.returnType() != MethodHandle.class) throw new IllegalArgumentException("lookup handle does not return a method handle");
-		return new ConstantCallSite(MethodHandles.foldArguments(MethodHandles.exactInvoker(callerType), lookupHandle.bindTo(lk).bindTo(callerName).bindTo(callerType)));
+		CallSite site = new ConstantCallSite(MethodHandles.foldArguments(MethodHandles.exactInvoker(callerType), lookupHandle.bindTo(lk).bindTo(callerName).bindTo(callerType)));
+		event.end("lookupAndInvokeExact", lk, callerName, callerType);
+		return site;
+	}
+	
+	/**
+	 * A call site that profiles the value of the argument at <code>argIndex</code> and specializes itself on the hottest values seen, binding
+	 * each value into <code>resolver</code> as a constant behind an identity guard. Up to 4 values are specialized on after 256 invocations.
+	 * <code>resolver</code> must be adaptable to the caller type and is also used as the generic fallback.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param resolver the method handle performing the operation, which will be specialized
+	 * @param argIndex index of the argument to profile
+	 * @return a ValueProfileCallSite
+	 */
+	public static CallSite valueProfileCall(Lookup lk, String name, MethodType type, MethodHandle resolver, int argIndex) {
+		return new ValueProfileCallSite(type, resolver, argIndex);
+	}
+	
+	/**
+	 * A call site that profiles the value of the argument at <code>argIndex</code> and specializes itself on the hottest values seen, binding
+	 * each value into <code>resolver</code> as a constant behind an identity guard. The number of values specialized on and the number of
+	 * invocations profiled beforehand are configurable. <code>resolver</code> must be adaptable to the caller type and is also used as the
+	 * generic fallback.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param resolver the method handle performing the operation, which will be specialized
+	 * @param argIndex index of the argument to profile
+	 * @param maxValues amount of values to specialize on
+	 * @param sampleSize amount of invocations to profile before specializing
+	 * @return a ValueProfileCallSite
+	 */
+	public static CallSite valueProfileCall(Lookup lk, String name, MethodType type, MethodHandle resolver, int argIndex, int maxValues, int sampleSize) {
+		return new ValueProfileCallSite(type, resolver, argIndex, maxValues, sampleSize);
+	}
+	
+	/**
+	 * A constant call site that memoizes the results of <code>target</code> in a bounded cache private to the call site, keyed on the
+	 * invocation arguments. Up to 256 results are cached with LRU eviction. <code>target</code> must be a pure function and must be
+	 * adaptable to the caller type. The call site is registered with the platform MBean server, so that its hit rate can be watched.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param target the method handle to memoize
+	 * @return a MemoizingCallSite
+	 */
+	public static CallSite memoize(Lookup lk, String name, MethodType type, MethodHandle target) {
+		return new MemoizingCallSite(target.asType(type)).register(lk, name);
+	}
+	
+	/**
+	 * A constant call site that memoizes the results of <code>target</code> in a bounded cache private to the call site, keyed on the
+	 * invocation arguments. The cache capacity and eviction policy are configurable; the policy is the name of a
+	 * {@link MemoizingCallSite.Eviction} constant. <code>target</code> must be a pure function and must be adaptable to the caller type.
+	 * The call site is registered with the platform MBean server, so that its hit rate can be watched.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param target the method handle to memoize
+	 * @param capacity amount of results to cache
+	 * @param eviction name of the eviction policy: FIFO, LRU or RANDOM
+	 * @return a MemoizingCallSite
+	 */
+	public static CallSite memoize(Lookup lk, String name, MethodType type, MethodHandle target, int capacity, String eviction) {
+		return new MemoizingCallSite(target.asType(type), capacity, MemoizingCallSite.Eviction.valueOf(eviction)).register(lk, name);
+	}
+	
+	/**
+	 * A call site that reads the {@link FeatureFlags} flag named by the caller name. The call site takes no arguments and returns the
+	 * current flag value as a constant until the flag is set again, at which point it relinks.
+	 * @param lk caller lookup
+	 * @param name caller name, used as the flag name
+	 * @param type caller type
+	 * @return a call site reading the flag
+	 */
+	public static CallSite featureFlag(Lookup lk, String name, MethodType type) {
+		return new FeatureFlagCallSite(FeatureFlags.flag(name), type);
+	}
+	
+	/**
+	 * A call site that reads the {@link FeatureFlags} flag named by <code>flagName</code>. The call site takes no arguments and returns the
+	 * current flag value as a constant until the flag is set again, at which point it relinks.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param flagName the name of the flag to read
+	 * @return a call site reading the flag
+	 */
+	public static CallSite featureFlag(Lookup lk, String name, MethodType type, String flagName) {
+		return new FeatureFlagCallSite(FeatureFlags.flag(flagName), type);
+	}
+	
+	/**
+	 * A call site for a log statement. The call site must return void; its arguments are formatted as if by
+	 * <code>String.format(format, args...)</code> and logged at <code>level</code> to the <code>System.Logger</code> named after the caller
+	 * class. The format string is compiled at link time as in {@link #format(Lookup, String, MethodType, String)}. A single
+	 * <code>Object[]</code> argument is passed through as the varargs array. While <code>level</code> is below the {@link Logging}
+	 * threshold the call site is linked to a no-op, and it relinks whenever the threshold changes.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param level the name of the <code>System.Logger.Level</code> to log at
+	 * @param format the format string
+	 * @return a call site logging its arguments
+	 */
+	public static CallSite log(Lookup lk, String name, MethodType type, String level, String format) {
+		return new LogCallSite(System.getLogger(lk.lookupClass().getName()), Level.valueOf(level), format, type);
+	}
+	
+	/**
+	 * A constant call site that formats its arguments as if by <code>String.format(format, args...)</code>. The format string is parsed once
+	 * when linking and compiled into a chain of appends to a pre-sized <code>StringBuilder</code>, using the append overload for the static
+	 * type of each argument so that primitives are not boxed. The conversions <code>%s %d %x %X %c %b %n %%</code> are compiled, with
+	 * output as under <code>Locale.ROOT</code>; format strings using other conversions, flags, width or precision are passed to
+	 * <code>String.format</code> unchanged. The caller type must return a type assignable from String.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param format the format string
+	 * @return a ConstantCallSite
+	 */
+	public static CallSite format(Lookup lk, String name, MethodType type, String format) {
+		return new ConstantCallSite(FormatCompiler.compile(format, type).asType(type));
+	}
+	
+	/**
+	 * A call site that implements a switch over the classes of an object. The caller type must be (Object, int) -> int, or take a more
+	 * specific reference type. Invoking the call site returns the index of the first case class at or after the restart index (the second
+	 * argument) that the first argument is an instance of, -1 if the first argument is null, or the number of case classes if none match.
+	 * Matching case indices are cached per receiver class, and the first receiver class seen is guarded inline.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param labels the case classes, in order
+	 * @return a call site returning case indices
+	 */
+	public static CallSite typeSwitch(Lookup lk, String name, MethodType type, Class<?>... labels) {
+		return new TypeSwitchCallSite(type, labels);
+	}
+	
+	/**
+	 * A constant call site that implements a switch over string case labels. The caller type must be (String) -> int. Invoking the call
+	 * site returns the index of the label equal to the argument, -1 if the argument is null, or the number of labels if none match. A
+	 * collision-free hash table of the labels is built when linking, so each invocation costs one hash and at most one
+	 * <code>equals</code>.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param labels the case labels, in order
+	 * @return a ConstantCallSite
+	 */
+	public static CallSite stringSwitch(Lookup lk, String name, MethodType type, String... labels) {
+		PerfectHashSwitch sw = new PerfectHashSwitch(labels);
+		return new ConstantCallSite(MH_STRING_SWITCH.bindTo(sw).asType(type));
+	}
+	
+	/**
+	 * A constant call site that implements a switch over enum constants given by name. The caller type must be (E) -> int where E is
+	 * the enum class. Invoking the call site returns the index of the name of the argument, -1 if the argument is null, or the number
+	 * of names if none match. Names are resolved to ordinals when linking, so each invocation is a single table lookup.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param names the names of the case constants, in order
+	 * @return a ConstantCallSite
+	 */
+	public static CallSite enumSwitch(Lookup lk, String name, MethodType type, String... names) {
+		if (type.parameterCount() != 1) throw new IllegalArgumentException("enum switch call sites take exactly one argument");
+		EnumSwitch sw = new EnumSwitch(type.parameterType(0), names);
+		return new ConstantCallSite(MH_ENUM_SWITCH.bindTo(sw).asType(type));
+	}
+	
+	/**
+	 * A constant call site implementing <code>equals</code>, <code>hashCode</code> or <code>toString</code> from component getters, like
+	 * <code>java.lang.runtime.ObjectMethods.bootstrap</code> but for any class and any Java version. The caller name selects the method:
+	 * <ul>
+	 * 	<li><code>equals</code>, with caller type (C, Object) -> boolean
+	 * 	<li><code>hashCode</code>, with caller type (C) -> int
+	 * 	<li><code>toString</code>, with caller type (C) -> String
+	 * </ul>
+	 * Each getter is a handle of type (C) -> T, such as a <code>getfield</code> or <code>invokevirtual</code> handle to a field or accessor.
+	 * Components are compared, hashed and appended with operations specialized to their types, with the semantics of records, except that
+	 * <code>equals</code> requires both objects to have exactly the same class. The string form is <code>SimpleName[a=1, b=2]</code>.
+	 * @param lk caller lookup
+	 * @param name caller name, the method to implement
+	 * @param type caller type
+	 * @param receiverClass the class the method is implemented for
+	 * @param names the component names, separated by semicolons, used by <code>toString</code>
+	 * @param getters the component getters, in order
+	 * @return a ConstantCallSite
+	 */
+	public static CallSite objectMethod(Lookup lk, String name, MethodType type, Class<?> receiverClass, String names, MethodHandle... getters) {
+		String[] nameList = names.isEmpty() ? new String[0] : names.split(";");
+		if (nameList.length != getters.length) throw new IllegalArgumentException("expected " + getters.length + " component names, got " + nameList.length);
+		MethodHandle[] adapted = new MethodHandle[getters.length];
+		for (int i = 0; i < getters.length; i++) {
+			adapted[i] = getters[i].asType(MethodType.methodType(getters[i].type().returnType(), receiverClass));
+		}
+		MethodHandle handle;
+		switch (name) {
+			case "equals":
+				handle = ObjectMethodHandles.equalsHandle(receiverClass, adapted);
+				break;
+			case "hashCode":
+				handle = ObjectMethodHandles.hashCodeHandle(receiverClass, adapted);
+				break;
+			case "toString":
+				handle = ObjectMethodHandles.toStringHandle(receiverClass, nameList, adapted);
+				break;
+			default:
+				throw new IllegalArgumentException("cannot implement object method " + name);
+		}
+		return new ConstantCallSite(handle.asType(type));
+	}
+	
+	/**
+	 * A call site that counts its invocations, wrapping the call site created by another bootstrap method. <code>bootstrap</code> is invoked
+	 * with the caller lookup, name and type followed by <code>args</code>, as the JVM would have invoked it, so profiling can be switched on
+	 * for any call site by prepending the handle of the original bootstrap method to its static arguments. The count is published through a
+	 * {@link CallSiteProfile} MBean.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param bootstrap the bootstrap method creating the call site to profile
+	 * @param args the static arguments of that bootstrap method
+	 * @return a ConstantCallSite
+	 * @throws Throwable anything thrown by the wrapped bootstrap method
+	 */
+	public static CallSite profiled(Lookup lk, String name, MethodType type, MethodHandle bootstrap, Object... args) throws Throwable {
+		return new CallSiteProfile(lk, name, type, 0).wrap(invokeBootstrap(lk, name, type, bootstrap, args));
+	}
+	
+	/**
+	 * A call site that counts its invocations and records the latency of one in every <code>sampleRate</code> invocations in a histogram,
+	 * wrapping the call site created by another bootstrap method as in {@link #profiled(Lookup, String, MethodType, MethodHandle, Object...)}.
+	 * A sample rate of 1 times every invocation; timing costs two reads of <code>System.nanoTime</code>.
+	 * @param lk caller lookup
+	 * @param name caller name
+	 * @param type caller type
+	 * @param sampleRate time one in this many invocations. Must be greater than zero.
+	 * @param bootstrap the bootstrap method creating the call site to profile
+	 * @param args the static arguments of that bootstrap method
+	 * @return a ConstantCallSite
+	 * @throws Throwable anything thrown by the wrapped bootstrap method
+	 */
+	public static CallSite profiledWithLatency(Lookup lk, String name, MethodType type, int sampleRate, MethodHandle bootstrap, Object... args) throws Throwable {
+		if (sampleRate <= 0) throw new IllegalArgumentException("Sample rate must be a positive integer");
+		return new CallSiteProfile(lk, name, type, sampleRate).wrap(invokeBootstrap(lk, name, type, bootstrap, args));
+	}
+	
+	private static CallSite invokeBootstrap(Lookup lk, String name, MethodType type, MethodHandle bootstrap, Object[] args) throws Throwable {
+		Object[] bootstrapArgs = new Object[args.length + 3];
+		bootstrapArgs[0] = lk;
+		bootstrapArgs[1] = name;
+		bootstrapArgs[2] = type;
+		System.arraycopy(args, 0, bootstrapArgs, 3, args.length);
+		CallSite site = (CallSite) bootstrap.invokeWithArguments(bootstrapArgs);
+		if (!site.type().equals(type)) throw new IllegalArgumentException("wrapped bootstrap returned a call site of type " + site.type() + ", expected " + type);
+		return site;
 	}
 }
@@ -0,0 +1,179 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.System.Logger.Level;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The invocation profile of a call site created by {@link Bootstraps#profiled(Lookup, String, MethodType, MethodHandle, Object...)}.
+ * Invocations are counted with a <code>LongAdder</code>, which stays cheap under contention, and the latency of a sample of invocations
+ * may be recorded in a lock-free histogram. Each profile is registered with the platform MBean server under the name
+ * <code>me.archdukeliamus.dygenerate:type=CallSiteProfile,caller=</code><i>class</i><code>,name=</code><i>name</i><code>,id=</code><i>n</i>,
+ * where <i>n</i> tells apart sites with the same caller and name.
+ * <br><br>
+ * Profiles stay registered, and keep their call site's target reachable, for the life of the JVM. Profiling is meant for finding hot
+ * sites, not for classes that are unloaded.
+ */
+public final class CallSiteProfile implements CallSiteProfileMBean {
+	private static final MethodHandle MH_INCREMENT;
+	private static final MethodHandle MH_NANO_TIME;
+	private static final MethodHandle MH_SAMPLE;
+	private static final MethodHandle MH_RECORD;
+	private static final MethodHandle MH_RECORD_VOID;
+	static {
+		try {
+			Lookup lk = MethodHandles.lookup();
+			MH_INCREMENT = lk.findVirtual(LongAdder.class, "increment", MethodType.methodType(void.class));
+			MH_NANO_TIME = lk.findStatic(System.class, "nanoTime", MethodType.methodType(long.class));
+			MH_SAMPLE = lk.findStatic(CallSiteProfile.class, "sample", MethodType.methodType(boolean.class, int.class));
+			MH_RECORD = lk.findStatic(CallSiteProfile.class, "record", MethodType.methodType(Object.class, LatencyHistogram.class, Throwable.class, Object.class, long.class));
+			MH_RECORD_VOID = lk.findStatic(CallSiteProfile.class, "record", MethodType.methodType(void.class, LatencyHistogram.class, Throwable.class, long.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+	private static final AtomicLong ids = new AtomicLong();
+
+	private final String callerClass;
+	private final String name;
+	private final MethodType type;
+	private final LongAdder invocations = new LongAdder();
+	private final LatencyHistogram latency; // null if latency is not sampled
+	private final int sampleRate; // time one in n invocations
+
+	/**
+	 * Create a profile.
+	 * @param sampleRate time one in this many invocations, or 0 to only count them
+	 */
+	CallSiteProfile(Lookup lk, String name, MethodType type, int sampleRate) {
+		if (sampleRate < 0) throw new IllegalArgumentException("Sample rate must be zero or more");
+		this.callerClass = lk.lookupClass().getName();
+		this.name = name;
+		this.type = type;
+		this.sampleRate = sampleRate;
+		this.latency = sampleRate == 0 ? null : new LatencyHistogram();
+	}
+
+	/**
+	 * Wrap the call site created by another bootstrap so that its invocations are profiled, and register the profile.
+	 */
+	CallSite wrap(CallSite site) {
+		// a constant target can be inlined through the wrapper, anything else has to stay dynamic
+		MethodHandle target = site instanceof ConstantCallSite ? site.getTarget() : site.dynamicInvoker();
+		target = target.asType(type);
+		MethodHandle profiled = target;
+		if (latency != null) {
+			MethodHandle timed = timed(target);
+			if (sampleRate > 1) {
+				MethodHandle test = MethodHandles.dropArguments(MethodHandles.insertArguments(MH_SAMPLE, 0, sampleRate), 0, type.parameterList());
+				timed = MethodHandles.guardWithTest(test, timed, target);
+			}
+			profiled = timed;
+		}
+		profiled = MethodHandles.foldArguments(profiled, MH_INCREMENT.bindTo(invocations));
+		register();
+		return new ConstantCallSite(profiled);
+	}
+
+	// Take the time before the call and record the latency when it returns or throws
+	private MethodHandle timed(MethodHandle target) {
+		Class<?> returnType = type.returnType();
+		MethodHandle cleanup;
+		if (returnType == void.class) {
+			cleanup = MH_RECORD_VOID.bindTo(latency);
+		} else {
+			cleanup = MH_RECORD.bindTo(latency).asType(MethodType.methodType(returnType, Throwable.class, returnType, long.class));
+		}
+		MethodHandle body = MethodHandles.dropArguments(target, 0, long.class); // start time first
+		return MethodHandles.foldArguments(MethodHandles.tryFinally(body, cleanup), MH_NANO_TIME);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean sample(int rate) {
+		return ThreadLocalRandom.current().nextInt(rate) == 0;
+	}
+
+	@SuppressWarnings("unused")
+	private static Object record(LatencyHistogram latency, Throwable thrown, Object result, long start) {
+		latency.record(System.nanoTime() - start);
+		return result;
+	}
+
+	@SuppressWarnings("unused")
+	private static void record(LatencyHistogram latency, Throwable thrown, long start) {
+		latency.record(System.nanoTime() - start);
+	}
+
+	private void register() {
+		try {
+			ObjectName objectName = new ObjectName("me.archdukeliamus.dygenerate:type=CallSiteProfile,caller=" + ObjectName.quote(callerClass)
+					+ ",name=" + ObjectName.quote(name) + ",id=" + ids.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (JMException | RuntimeException ex) {
+			// the call site still works, it just cannot be seen
+			System.getLogger(CallSiteProfile.class.getName()).log(Level.WARNING, "cannot register call site profile for " + callerClass + "." + name, ex);
+		}
+	}
+
+	@Override
+	public String getCallerClass() {
+		return callerClass;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getType() {
+		return type.toMethodDescriptorString();
+	}
+
+	@Override
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	@Override
+	public long getSampledInvocations() {
+		return latency == null ? 0 : latency.total();
+	}
+
+	@Override
+	public long getLatencyP50Nanos() {
+		return latency == null ? 0 : latency.percentile(50);
+	}
+
+	@Override
+	public long getLatencyP99Nanos() {
+		return latency == null ? 0 : latency.percentile(99);
+	}
+
+	@Override
+	public long getLatencyMaxNanos() {
+		return latency == null ? 0 : latency.percentile(100);
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		return latency == null ? new long[LatencyHistogram.BUCKETS] : latency.snapshot();
+	}
+
+	@Override
+	public void reset() {
+		invocations.reset();
+		if (latency != null) latency.reset();
+	}
+}
@@ -0,0 +1,66 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+/**
+ * Management interface of a {@link CallSiteProfile}, as registered with the platform MBean server.
+ */
+public interface CallSiteProfileMBean {
+	/**
+	 * Get the name of the class containing the call site.
+	 * @return the class name
+	 */
+	String getCallerClass();
+
+	/**
+	 * Get the name of the call site.
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Get the method descriptor of the call site.
+	 * @return the descriptor
+	 */
+	String getType();
+
+	/**
+	 * Get the number of invocations since the call site was linked or the profile was last reset.
+	 * @return the invocation count
+	 */
+	long getInvocations();
+
+	/**
+	 * Get the number of invocations whose latency was sampled.
+	 * @return the sample count, or 0 if latency is not sampled
+	 */
+	long getSampledInvocations();
+
+	/**
+	 * Get the median latency, rounded up to a power of two.
+	 * @return the latency in nanoseconds, or 0 if there are no samples
+	 */
+	long getLatencyP50Nanos();
+
+	/**
+	 * Get the 99th percentile latency, rounded up to a power of two.
+	 * @return the latency in nanoseconds, or 0 if there are no samples
+	 */
+	long getLatencyP99Nanos();
+
+	/**
+	 * Get the highest latency, rounded up to a power of two.
+	 * @return the latency in nanoseconds, or 0 if there are no samples
+	 */
+	long getLatencyMaxNanos();
+
+	/**
+	 * Get the latency histogram. Element <code>i</code> counts the samples of at least <code>2^(i-1)</code> and less than <code>2^i</code>
+	 * nanoseconds.
+	 * @return the sample counts per bucket
+	 */
+	long[] getLatencyHistogram();
+
+	/**
+	 * Reset the invocation count and latency histogram to zero.
+	 */
+	void reset();
+}
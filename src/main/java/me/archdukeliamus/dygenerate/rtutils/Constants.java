@@ -0,0 +1,318 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Contains bootstrap methods for dynamic constants. Each builds an immutable value from its static arguments the first time the
+ * constant is loaded, rather than in <code>&lt;clinit&gt;</code>, and the value is then a constant to the JIT for every later load.
+ * <br><br>
+ * As with all condy bootstraps, the first three arguments are the caller lookup, the constant name and the constant type. Unless noted
+ * otherwise the name is ignored.
+ */
+public final class Constants {
+
+	private Constants() {}
+
+	/**
+	 * A compiled regular expression.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param regex the regular expression
+	 * @return the compiled pattern
+	 */
+	public static Pattern pattern(Lookup lk, String name, Class<?> type, String regex) {
+		return Pattern.compile(regex);
+	}
+
+	/**
+	 * A compiled regular expression with match flags.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param regex the regular expression
+	 * @param flags the match flags, as in <code>Pattern.compile(String, int)</code>
+	 * @return the compiled pattern
+	 */
+	public static Pattern pattern(Lookup lk, String name, Class<?> type, String regex, int flags) {
+		return Pattern.compile(regex, flags);
+	}
+
+	/**
+	 * A BigDecimal parsed from its string form.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param value the decimal, as accepted by <code>new BigDecimal(String)</code>
+	 * @return the BigDecimal
+	 */
+	public static BigDecimal bigDecimal(Lookup lk, String name, Class<?> type, String value) {
+		return new BigDecimal(value);
+	}
+
+	/**
+	 * A BigInteger parsed from its string form.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param value the integer, as accepted by <code>new BigInteger(String)</code>
+	 * @return the BigInteger
+	 */
+	public static BigInteger bigInteger(Lookup lk, String name, Class<?> type, String value) {
+		return new BigInteger(value);
+	}
+
+	/**
+	 * An immutable list of the static arguments.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param elements the elements
+	 * @return the list
+	 */
+	public static List<Object> list(Lookup lk, String name, Class<?> type, Object... elements) {
+		return List.of(elements);
+	}
+
+	/**
+	 * An immutable set of the static arguments.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param elements the elements, which must be distinct
+	 * @return the set
+	 */
+	public static Set<Object> set(Lookup lk, String name, Class<?> type, Object... elements) {
+		return Set.of(elements);
+	}
+
+	/**
+	 * An immutable map of the static arguments, taken as alternating keys and values.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param keysAndValues the keys and values, in the order key, value, key, value...
+	 * @return the map
+	 */
+	public static Map<Object,Object> map(Lookup lk, String name, Class<?> type, Object... keysAndValues) {
+		if (keysAndValues.length % 2 != 0) throw new IllegalArgumentException("map needs an even number of arguments");
+		Map<Object,Object> map = new HashMap<>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			if (map.put(keysAndValues[i], keysAndValues[i + 1]) != null) throw new IllegalArgumentException("duplicate key " + keysAndValues[i]);
+		}
+		return Map.copyOf(map);
+	}
+
+	/**
+	 * A primitive array decoded from base64. The constant type selects the array type; the decoded bytes are read as big-endian
+	 * elements of that type. Booleans are one byte each, nonzero meaning true.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type, a primitive array class
+	 * @param base64 the array contents, base64 encoded
+	 * @return the array
+	 */
+	public static Object base64Array(Lookup lk, String name, Class<?> type, String base64) {
+		Class<?> component = type.getComponentType();
+		if (component == null || !component.isPrimitive()) throw new IllegalArgumentException("not a primitive array type: " + type.getName());
+		byte[] bytes = Base64.getDecoder().decode(base64);
+		if (component == byte.class) return bytes;
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (component == boolean.class) {
+			boolean[] array = new boolean[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				array[i] = bytes[i] != 0;
+			}
+			return array;
+		} else if (component == char.class) {
+			char[] array = new char[bytes.length / Character.BYTES];
+			buffer.asCharBuffer().get(array);
+			return array;
+		} else if (component == short.class) {
+			short[] array = new short[bytes.length / Short.BYTES];
+			buffer.asShortBuffer().get(array);
+			return array;
+		} else if (component == int.class) {
+			int[] array = new int[bytes.length / Integer.BYTES];
+			buffer.asIntBuffer().get(array);
+			return array;
+		} else if (component == long.class) {
+			long[] array = new long[bytes.length / Long.BYTES];
+			buffer.asLongBuffer().get(array);
+			return array;
+		} else if (component == float.class) {
+			float[] array = new float[bytes.length / Float.BYTES];
+			buffer.asFloatBuffer().get(array);
+			return array;
+		} else {
+			double[] array = new double[bytes.length / Double.BYTES];
+			buffer.asDoubleBuffer().get(array);
+			return array;
+		}
+	}
+
+	/**
+	 * A method handle to a virtual method, looked up with the caller lookup. The constant name is the method name.
+	 * @param lk caller lookup
+	 * @param name constant name, the method name
+	 * @param type constant type
+	 * @param owner the class declaring the method
+	 * @param methodType the type of the method
+	 * @return the method handle
+	 * @throws NoSuchMethodException if the method does not exist
+	 * @throws IllegalAccessException if the method is not accessible to the caller
+	 */
+	public static MethodHandle virtualHandle(Lookup lk, String name, Class<?> type, Class<?> owner, MethodType methodType) throws NoSuchMethodException, IllegalAccessException {
+		return lk.findVirtual(owner, name, methodType);
+	}
+
+	/**
+	 * A method handle to a static method, looked up with the caller lookup. The constant name is the method name.
+	 * @param lk caller lookup
+	 * @param name constant name, the method name
+	 * @param type constant type
+	 * @param owner the class declaring the method
+	 * @param methodType the type of the method
+	 * @return the method handle
+	 * @throws NoSuchMethodException if the method does not exist
+	 * @throws IllegalAccessException if the method is not accessible to the caller
+	 */
+	public static MethodHandle staticHandle(Lookup lk, String name, Class<?> type, Class<?> owner, MethodType methodType) throws NoSuchMethodException, IllegalAccessException {
+		return lk.findStatic(owner, name, methodType);
+	}
+
+	/**
+	 * A var handle to an instance field, looked up with the caller lookup. The constant name is the field name.
+	 * @param lk caller lookup
+	 * @param name constant name, the field name
+	 * @param type constant type
+	 * @param owner the class declaring the field
+	 * @param fieldType the type of the field
+	 * @return the var handle
+	 * @throws NoSuchFieldException if the field does not exist
+	 * @throws IllegalAccessException if the field is not accessible to the caller
+	 */
+	public static VarHandle varHandle(Lookup lk, String name, Class<?> type, Class<?> owner, Class<?> fieldType) throws NoSuchFieldException, IllegalAccessException {
+		return lk.findVarHandle(owner, name, fieldType);
+	}
+
+	/**
+	 * A var handle to a static field, looked up with the caller lookup. The constant name is the field name.
+	 * @param lk caller lookup
+	 * @param name constant name, the field name
+	 * @param type constant type
+	 * @param owner the class declaring the field
+	 * @param fieldType the type of the field
+	 * @return the var handle
+	 * @throws NoSuchFieldException if the field does not exist
+	 * @throws IllegalAccessException if the field is not accessible to the caller
+	 */
+	public static VarHandle staticVarHandle(Lookup lk, String name, Class<?> type, Class<?> owner, Class<?> fieldType) throws NoSuchFieldException, IllegalAccessException {
+		return lk.findStaticVarHandle(owner, name, fieldType);
+	}
+
+	/**
+	 * A method handle of type <code>(Object, Object[])Object</code> invoking a method as <code>Method.invoke</code> does on the method
+	 * <code>owner.getMethod(name, parameterTypes)</code>, or <code>owner.getDeclaredMethod(name, parameterTypes)</code> if
+	 * <code>declared</code> is not zero. The receiver is ignored for a static method. A method the caller can access is called directly,
+	 * without access checks or a <code>Method</code> on each call; otherwise the handle calls <code>Method.invoke</code> as if from the
+	 * caller. A method that is not found is looked up again on every invocation, which throws as the lookup did. The constant name is the
+	 * method name.
+	 * @param lk caller lookup
+	 * @param name constant name, the method name
+	 * @param type constant type
+	 * @param owner the class to look the method up on
+	 * @param declared non-zero to look up a declared method of the class
+	 * @param parameterTypes the parameter types of the method
+	 * @return the method handle
+	 * @throws ReflectiveOperationException if the caller lookup cannot call reflection as if from the caller
+	 */
+	public static MethodHandle methodInvoker(Lookup lk, String name, Class<?> type, Class<?> owner, int declared, Class<?>... parameterTypes) throws ReflectiveOperationException {
+		return ReflectiveInvokers.method(lk, owner, name, declared != 0, parameterTypes);
+	}
+
+	/**
+	 * A method handle of type <code>(Object)Object</code> reading a field as <code>Field.get</code> does on the field
+	 * <code>owner.getField(name)</code>, or <code>owner.getDeclaredField(name)</code> if <code>declared</code> is not zero. The receiver is
+	 * ignored for a static field. Fields are found and accessed as in
+	 * {@link #methodInvoker(Lookup, String, Class, Class, int, Class...)}. The constant name is the field name.
+	 * @param lk caller lookup
+	 * @param name constant name, the field name
+	 * @param type constant type
+	 * @param owner the class to look the field up on
+	 * @param declared non-zero to look up a declared field of the class
+	 * @return the method handle
+	 * @throws ReflectiveOperationException if the caller lookup cannot call reflection as if from the caller
+	 */
+	public static MethodHandle fieldGetter(Lookup lk, String name, Class<?> type, Class<?> owner, int declared) throws ReflectiveOperationException {
+		return ReflectiveInvokers.getter(lk, owner, name, declared != 0);
+	}
+
+	/**
+	 * A method handle of type <code>(Object, Object)void</code> writing a field as <code>Field.set</code> does on the field
+	 * <code>owner.getField(name)</code>, or <code>owner.getDeclaredField(name)</code> if <code>declared</code> is not zero. The receiver is
+	 * ignored for a static field. Fields are found and accessed as in
+	 * {@link #methodInvoker(Lookup, String, Class, Class, int, Class...)}. The constant name is the field name.
+	 * @param lk caller lookup
+	 * @param name constant name, the field name
+	 * @param type constant type
+	 * @param owner the class to look the field up on
+	 * @param declared non-zero to look up a declared field of the class
+	 * @return the method handle
+	 * @throws ReflectiveOperationException if the caller lookup cannot call reflection as if from the caller
+	 */
+	public static MethodHandle fieldSetter(Lookup lk, String name, Class<?> type, Class<?> owner, int declared) throws ReflectiveOperationException {
+		return ReflectiveInvokers.setter(lk, owner, name, declared != 0);
+	}
+
+	/**
+	 * The value of a system property, converted to the constant type. The value is read once, when the constant is first loaded;
+	 * later changes to the property are not seen. String, int, long, boolean, float and double types (or their boxes) are supported.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param key the property key
+	 * @param defaultValue the value to use if the property is not set
+	 * @return the converted value
+	 */
+	public static Object systemProperty(Lookup lk, String name, Class<?> type, String key, String defaultValue) {
+		return convert(System.getProperty(key, defaultValue), type);
+	}
+
+	/**
+	 * The value of an environment variable, converted to the constant type. String, int, long, boolean, float and double types (or their
+	 * boxes) are supported.
+	 * @param lk caller lookup
+	 * @param name constant name
+	 * @param type constant type
+	 * @param variable the environment variable name
+	 * @param defaultValue the value to use if the variable is not set
+	 * @return the converted value
+	 */
+	public static Object env(Lookup lk, String name, Class<?> type, String variable, String defaultValue) {
+		String value = System.getenv(variable);
+		return convert(value == null ? defaultValue : value, type);
+	}
+
+	private static Object convert(String value, Class<?> type) {
+		if (type == String.class || type == Object.class || type == CharSequence.class) return value;
+		if (type == int.class || type == Integer.class) return Integer.valueOf(value.trim());
+		if (type == long.class || type == Long.class) return Long.valueOf(value.trim());
+		if (type == boolean.class || type == Boolean.class) return Boolean.valueOf(value.trim());
+		if (type == float.class || type == Float.class) return Float.valueOf(value.trim());
+		if (type == double.class || type == Double.class) return Double.valueOf(value.trim());
+		throw new IllegalArgumentException("cannot convert configuration value to " + type.getName());
+	}
+}
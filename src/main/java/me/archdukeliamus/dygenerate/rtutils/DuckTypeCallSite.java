@@ -14,6 +14,9 @@ import java.util.List;
  * Remaining arguments are passed for the method to be invoked. The exact type must be present on the target class;
  * argument conversions are not performed even if it would result in the call resolving (method overloads are decided at compile-time).
  * By default, 8 class targets are cached.
+ * <br><br>
+ * If {@link ReceiverProfiles} are enabled, the receiver classes this call site links to are recorded, and the cache is pre-built from
+ * the receiver classes linked most often for the same caller, name and type in earlier runs.
  * 
  * Use of this call site is safe by multiple threads. In the case of concurrent dispatches to the linker, the last writer wins.
  * Spurious lookups may result in some cases.
@@ -27,6 +30,7 @@ public final class DuckTypeCallSite extends MutableCallSite {
 	// cache lists for guard-target MH pairs. The list is ALWAYS handled as if it were immutable- thread safety depends on it
 	private volatile List<MethodHandle> cacheList;
 	private final int maxPolymorphicCache; // store at most n many class-handle pairs before dropping them; zero means do lookup every time (bad!)
+	private final ReceiverProfiles.Profile profile; // null unless receiver profiles are enabled
 	
 	/**
 	 * Construct a call site with a default polymorphic cache of 8 classes
@@ -40,7 +44,9 @@ public final class DuckTypeCallSite extends MutableCallSite {
 		this.name = name;
 		this.cacheList = new ArrayList<>();
 		this.maxPolymorphicCache = 8;
+		this.profile = ReceiverProfiles.profile(lk, name, type);
 		setTarget(MH_LOOKUP_AND_CALL);
+		if (profile != null) seed();
 	}
 	
 	/**
@@ -57,7 +63,31 @@ public final class DuckTypeCallSite extends MutableCallSite {
 		this.cacheList = new ArrayList<>();
 		if (maxPolymorphicCache < 0) throw new IllegalArgumentException("Max polymorphic caching must be a positive integer");
 		this.maxPolymorphicCache = maxPolymorphicCache;
+		this.profile = ReceiverProfiles.profile(lk, name, type);
 		setTarget(MH_LOOKUP_AND_CALL);
+		if (profile != null) seed();
+	}
+	
+	// Pre-build the cache from the hottest receiver classes recorded in earlier runs, skipping any that no longer resolve
+	private final void seed() {
+		List<MethodHandle> seededCacheList = new ArrayList<>();
+		for (String receiver : profile.receivers()) {
+			if (seededCacheList.size() >= maxPolymorphicCache * 2) break;
+			try {
+				Class<?> cls = Class.forName(receiver, false, lk.lookupClass().getClassLoader());
+				MethodHandle mh = lk.findVirtual(cls, name, type().dropParameterTypes(0, 1));
+				// the end of the list is tested first and evicted last, so the hottest go there
+				seededCacheList.add(0, mh);
+				seededCacheList.add(0, MH_TESTCLASS.bindTo(cls));
+			} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | LinkageError ex) {
+				continue; // stale entry, it will be looked up again if it is ever seen
+			}
+		}
+		if (seededCacheList.isEmpty()) return;
+		synchronized (this) {
+			setTarget(genGuardHandle(seededCacheList));
+			cacheList = seededCacheList; // volatile write
+		}
 	}
 	
 	private final MethodHandle findOrThrow(Object receiver) {
@@ -79,15 +109,29 @@ public final class DuckTypeCallSite extends MutableCallSite {
 	private final MethodHandle link(Object recv) {
 		Class<?> cls = recv.getClass();
 		MethodHandle mh = findOrThrow(recv);
+		if (profile != null) profile.record(cls);
 		
 		// Try to race the lookup. If we lose, it's fine, the lookup will just try again next time.
 		
 		List<MethodHandle> newCacheList = new ArrayList<>(cacheList); // volatile read
+		boolean relinked = !newCacheList.isEmpty(); // otherwise this is the first link
 		newCacheList.add(MH_TESTCLASS.bindTo(cls));
 		newCacheList.add(mh);
+		boolean evicted = false;
 		if (newCacheList.size() > maxPolymorphicCache * 2) { // too many handles, discard oldest used
 			newCacheList.remove(0);
 			newCacheList.remove(0);
+			evicted = true;
+		}
+		LinkMissEvent miss = new LinkMissEvent();
+		if (miss.shouldCommit()) {
+			miss.callerClass = lk.lookupClass();
+			miss.name = name;
+			miss.type = type().toMethodDescriptorString();
+			miss.receiverClass = cls;
+			miss.cacheSize = newCacheList.size() / 2;
+			miss.evicted = evicted;
+			miss.commit();
 		}
 		// Fallback call
 		// Create a handle that calls this method (#link) with the first argument of the arg list, then combines it's result
@@ -105,6 +149,7 @@ public final class DuckTypeCallSite extends MutableCallSite {
 			// <a lookup by other thread while here would trigger desync>
 			cacheList = newCacheList; // volatile write
 		}
+		if (relinked) RelinkEvent.record(this, "receiver cache miss");
 		// return handle found, still have to give something to invoke
 		return mh.asType(type());
 	}
@@ -0,0 +1,51 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.util.Arrays;
+
+/**
+ * A switch over enum constants given by name. The names are resolved to ordinals when linking, and the switch is a single array load
+ * indexed by the ordinal of the constant switched on. Constants added to the enum after linking, which have ordinals past the end of
+ * the table or no case label, match no case.
+ */
+final class EnumSwitch {
+	private final int caseCount;
+	private final int[] casesByOrdinal; // case index for each ordinal, or caseCount if none
+
+	/**
+	 * Build a switch over the named constants of an enum. The case index of a name is its position in the array.
+	 * @param enumClass the enum class
+	 * @param names the names of the case constants
+	 * @throws IllegalArgumentException if the class is not an enum, or a name is not a constant of it or is duplicated
+	 */
+	EnumSwitch(Class<?> enumClass, String[] names) {
+		Object[] constants = enumClass.getEnumConstants();
+		if (constants == null) throw new IllegalArgumentException(enumClass.getName() + " is not an enum");
+		this.caseCount = names.length;
+		this.casesByOrdinal = new int[constants.length];
+		Arrays.fill(casesByOrdinal, caseCount);
+		for (int i = 0; i < names.length; i++) {
+			int ordinal = ordinalOf(constants, names[i], enumClass);
+			if (casesByOrdinal[ordinal] != caseCount) throw new IllegalArgumentException("duplicate case label " + names[i]);
+			casesByOrdinal[ordinal] = i;
+		}
+	}
+
+	private static int ordinalOf(Object[] constants, String name, Class<?> enumClass) {
+		for (Object constant : constants) {
+			Enum<?> e = (Enum<?>) constant;
+			if (e.name().equals(name)) return e.ordinal();
+		}
+		throw new IllegalArgumentException(name + " is not a constant of " + enumClass.getName());
+	}
+
+	/**
+	 * Find the case index of an enum constant.
+	 * @param value the constant to switch on
+	 * @return the case index, -1 if the constant is null, or the number of labels if no label matches
+	 */
+	int indexOf(Enum<?> value) {
+		if (value == null) return -1;
+		int ordinal = value.ordinal();
+		return ordinal < casesByOrdinal.length ? casesByOrdinal[ordinal] : caseCount;
+	}
+}
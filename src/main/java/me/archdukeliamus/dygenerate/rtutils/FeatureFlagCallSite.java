@@ -0,0 +1,61 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * A call site reading a {@link FeatureFlags} flag. The target returns the flag value as a constant, guarded by the switch point of
+ * that value. Once the flag is set, the switch point is invalidated and the next invocation relinks the call site to the new value.
+ * <br><br>
+ * Use of this call site is safe by multiple threads. In the case of concurrent relinks, the last writer wins. A target linked to a
+ * stale value is guarded by an already invalidated switch point, so it relinks again on its next invocation.
+ */
+final class FeatureFlagCallSite extends MutableCallSite {
+	private final MethodHandle MH_RELINK = findOwnMH("relink", MethodType.methodType(Object.class));
+	private final FeatureFlags.Flag flag;
+	private final MethodHandle relinkHandle; // the target until linked, and again whenever the flag changes
+
+	/**
+	 * Construct a call site reading a flag.
+	 * @param flag the flag to read
+	 * @param type the call site type, which must take no arguments
+	 */
+	FeatureFlagCallSite(FeatureFlags.Flag flag, MethodType type) {
+		super(type);
+		if (type.parameterCount() != 0) throw new IllegalArgumentException("feature flag call sites take no arguments");
+		if (type.returnType() == void.class) throw new IllegalArgumentException("feature flag call sites must return a value");
+		this.flag = flag;
+		this.relinkHandle = MH_RELINK.asType(type);
+		setTarget(relinkHandle);
+	}
+
+	@SuppressWarnings("unused")
+	private final Object relink() {
+		FeatureFlags.State state = flag.state(); // volatile read
+		Object value = linkedValue(state.value);
+		MethodHandle constant = MethodHandles.constant(type().returnType(), value); // throws ClassCastException on a mistyped flag
+		boolean relinked = getTarget() != relinkHandle; // otherwise this is the first link
+		// if the switch point was already invalidated, this falls straight back to relinking, which is what we want
+		setTarget(state.switchPoint.guardWithTest(constant, relinkHandle));
+		if (relinked) RelinkEvent.record(this, "linked to flag value");
+		return value;
+	}
+
+	// unset flags read as false rather than failing to unbox
+	private final Object linkedValue(Object value) {
+		if (value == null && type().returnType() == boolean.class) {
+			return Boolean.FALSE;
+		}
+		return value;
+	}
+
+	private final MethodHandle findOwnMH(String name, MethodType type) {
+		try {
+			return MethodHandles.lookup().findSpecial(getClass(), name, type, getClass()).bindTo(this);
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.SwitchPoint;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of named runtime feature flags whose values are linked into call sites as constants. Flags are read through call sites
+ * bootstrapped by {@link Bootstraps#featureFlag(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType)}, which
+ * return the current value of the flag without any memory read. Each flag owns a <code>SwitchPoint</code>; setting a flag invalidates
+ * it, causing only the call sites reading that flag to relink to the new value on their next invocation.
+ * <br><br>
+ * Flags are typically <code>Boolean</code>s or enum constants, but any value may be used as long as it is compatible with the return
+ * type of the call sites reading it. A flag that has never been set has the value <code>null</code>, which reads as <code>false</code>
+ * from call sites returning <code>boolean</code>.
+ * <br><br>
+ * Setting a flag is expensive, as it deoptimizes every method that has inlined a read of it. Flags are meant to change rarely.
+ */
+public final class FeatureFlags {
+	private static final ConcurrentMap<String,Flag> flags = new ConcurrentHashMap<>();
+
+	private FeatureFlags() {}
+
+	/**
+	 * Sets the value of a flag, relinking all call sites reading it.
+	 * @param name the flag name
+	 * @param value the new value, or null to unset it
+	 */
+	public static void set(String name, Object value) {
+		flag(name).set(value);
+	}
+
+	/**
+	 * Gets the current value of a flag.
+	 * @param name the flag name
+	 * @return the value, or null if the flag has not been set
+	 */
+	public static Object get(String name) {
+		return flag(name).state().value;
+	}
+
+	/**
+	 * Returns true if the flag is set to <code>Boolean.TRUE</code>.
+	 * @param name the flag name
+	 * @return whether the flag is enabled
+	 */
+	public static boolean isEnabled(String name) {
+		return Boolean.TRUE.equals(get(name));
+	}
+
+	/**
+	 * Gets the flag of the given name, creating it unset if it does not yet exist.
+	 */
+	static Flag flag(String name) {
+		Objects.requireNonNull(name, "name");
+		return flags.computeIfAbsent(name, Flag::new);
+	}
+
+	/**
+	 * A single flag. The current value and the switch point guarding it are swapped together.
+	 */
+	static final class Flag {
+		private final String name;
+		private volatile State state;
+
+		private Flag(String name) {
+			this.name = name;
+			this.state = new State(null);
+		}
+
+		String getName() {
+			return name;
+		}
+
+		State state() {
+			return state; // volatile read
+		}
+
+		private void set(Object value) {
+			State old;
+			synchronized (this) {
+				old = state;
+				state = new State(value); // volatile write, relinking sites will see the new value
+			}
+			SwitchPoint.invalidateAll(new SwitchPoint[] {old.switchPoint});
+		}
+	}
+
+	/**
+	 * An immutable flag value, valid until its switch point is invalidated.
+	 */
+	static final class State {
+		final Object value;
+		final SwitchPoint switchPoint;
+
+		private State(Object value) {
+			this.value = value;
+			this.switchPoint = new SwitchPoint();
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.IllegalFormatConversionException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiles printf-style format strings into method handles at link time. The format string is parsed once, and the resulting handle
+ * appends each literal and argument to a pre-sized <code>StringBuilder</code> in turn. Arguments are appended with the
+ * <code>StringBuilder.append</code> overload matching their static type, so primitives are never boxed.
+ * <br><br>
+ * The conversions <code>%s</code>, <code>%d</code>, <code>%x</code>, <code>%X</code>, <code>%c</code>, <code>%b</code>, <code>%n</code>
+ * and <code>%%</code> are compiled, optionally with an explicit argument index (<code>%2$s</code>). Their output is the same as
+ * <code>String.format</code> under <code>Locale.ROOT</code>. Any other conversion, or any flags, width or precision, cause the whole
+ * format string to fall back to <code>String.format</code>, also under <code>Locale.ROOT</code>, as does a single <code>Object[]</code>
+ * argument passed as varargs.
+ */
+final class FormatCompiler {
+	private static final int ARG_SIZE_ESTIMATE = 16; // chars reserved per formatted argument
+	private static final MethodHandle MH_FORMAT;
+	private static final MethodHandle MH_NEW_BUILDER;
+	private static final MethodHandle MH_TO_STRING;
+	private static final MethodHandle MH_APPEND_STRING;
+	static {
+		try {
+			MethodHandles.Lookup lk = MethodHandles.lookup();
+			// the fallback formats under Locale.ROOT too, so output does not depend on which specifiers are compiled
+			MH_FORMAT = MethodHandles.insertArguments(lk.findStatic(String.class, "format",
+					MethodType.methodType(String.class, Locale.class, String.class, Object[].class)), 0, Locale.ROOT);
+			MH_NEW_BUILDER = lk.findConstructor(StringBuilder.class, MethodType.methodType(void.class, int.class));
+			MH_TO_STRING = lk.findVirtual(StringBuilder.class, "toString", MethodType.methodType(String.class));
+			MH_APPEND_STRING = appender(lk.findVirtual(StringBuilder.class, "append", MethodType.methodType(StringBuilder.class, String.class)));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private FormatCompiler() {}
+
+	/**
+	 * Compile a format string for the given argument types.
+	 * @param format the format string
+	 * @param type the type of the resulting handle; the return type is ignored and taken to be String
+	 * @return a handle formatting its arguments
+	 * @throws IllegalArgumentException if the format string refers to arguments that are not present, or a conversion does not apply to
+	 * the static type of its argument
+	 */
+	static MethodHandle compile(String format, MethodType type) {
+		type = type.changeReturnType(String.class);
+		// varargs passed through as an array, whose length is only known at runtime
+		boolean varargs = type.parameterCount() == 1 && type.parameterType(0) == Object[].class;
+		List<Object> pieces = varargs ? null : parse(format, type.parameterCount());
+		if (pieces == null) {
+			// not compilable, leave it to String.format
+			MethodHandle formatter = MethodHandles.insertArguments(MH_FORMAT, 0, format);
+			if (!varargs) formatter = formatter.asCollector(Object[].class, type.parameterCount());
+			return formatter.asType(type);
+		}
+		// body: (StringBuilder, args...) -> void, each piece appends in order
+		List<Class<?>> argTypes = type.parameterList();
+		MethodHandle body = MethodHandles.empty(type.changeReturnType(void.class).insertParameterTypes(0, StringBuilder.class));
+		int capacity = 0;
+		for (int i = pieces.size() - 1; i >= 0; i--) {
+			Object piece = pieces.get(i);
+			MethodHandle step;
+			if (piece instanceof String) {
+				String literal = (String) piece;
+				capacity += literal.length();
+				step = MethodHandles.insertArguments(MH_APPEND_STRING, 1, literal);
+				step = MethodHandles.dropArguments(step, 1, argTypes);
+			} else {
+				Spec spec = (Spec) piece;
+				capacity += ARG_SIZE_ESTIMATE;
+				step = appenderFor(spec.conversion, argTypes.get(spec.index));
+				// take (StringBuilder, args...) but only use the builder and argument at spec.index
+				step = MethodHandles.dropArguments(step, 1, argTypes.subList(0, spec.index));
+				step = MethodHandles.dropArguments(step, spec.index + 2, argTypes.subList(spec.index + 1, argTypes.size()));
+			}
+			body = MethodHandles.foldArguments(body, step);
+		}
+		// builder -> string, then create the builder up front
+		MethodHandle result = MethodHandles.foldArguments(MethodHandles.dropArguments(MH_TO_STRING, 1, argTypes), body);
+		MethodHandle newBuilder = MethodHandles.insertArguments(MH_NEW_BUILDER, 0, capacity);
+		return MethodHandles.foldArguments(result, newBuilder);
+	}
+
+	/**
+	 * Split a format string into literal strings and conversion specs. Returns null if the format string cannot be compiled.
+	 */
+	private static List<Object> parse(String format, int argCount) {
+		List<Object> pieces = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int nextArg = 0;
+		int i = 0;
+		while (i < format.length()) {
+			char ch = format.charAt(i++);
+			if (ch != '%') {
+				literal.append(ch);
+				continue;
+			}
+			// explicit argument index, if any
+			int index = -1;
+			int digitsEnd = i;
+			while (digitsEnd < format.length() && Character.isDigit(format.charAt(digitsEnd))) digitsEnd++;
+			if (digitsEnd > i && digitsEnd < format.length() && format.charAt(digitsEnd) == '$') {
+				index = Integer.parseInt(format.substring(i, digitsEnd)) - 1;
+				i = digitsEnd + 1;
+			}
+			if (i >= format.length()) throw new IllegalArgumentException("format string ends with an incomplete specifier: " + format);
+			char conversion = format.charAt(i++);
+			switch (conversion) {
+				case '%':
+					if (index >= 0) return null;
+					literal.append('%');
+					break;
+				case 'n':
+					if (index >= 0) return null;
+					literal.append(System.lineSeparator());
+					break;
+				case 's':
+				case 'd':
+				case 'x':
+				case 'X':
+				case 'c':
+				case 'b':
+					if (index < 0) index = nextArg++;
+					if (index < 0 || index >= argCount) throw new IllegalArgumentException("format specifier %" + conversion + " refers to missing argument " + (index + 1));
+					if (literal.length() > 0) {
+						pieces.add(literal.toString());
+						literal.setLength(0);
+					}
+					pieces.add(new Spec(conversion, index));
+					break;
+				default:
+					// flags, width, precision or another conversion. Leave it to String.format
+					return null;
+			}
+		}
+		if (literal.length() > 0) pieces.add(literal.toString());
+		return pieces;
+	}
+
+	/**
+	 * Find the appender for a conversion of an argument type, of type (StringBuilder, argType) -> void.
+	 */
+	private static MethodHandle appenderFor(char conversion, Class<?> argType) {
+		try {
+			MethodHandles.Lookup lk = MethodHandles.lookup();
+			switch (conversion) {
+				case 's':
+					if (argType.isPrimitive()) return builderAppend(lk, argType);
+					if (argType == String.class) return MH_APPEND_STRING;
+					return own(lk, "appendObject", Object.class, argType);
+				case 'd':
+					if (argType == int.class || argType == short.class || argType == byte.class) return builderAppend(lk, int.class).asType(appenderType(argType));
+					if (argType == long.class) return builderAppend(lk, long.class);
+					if (!argType.isPrimitive()) return own(lk, "appendDecimal", Object.class, argType);
+					break;
+				case 'x':
+				case 'X':
+					String hexHelper = conversion == 'X' ? "appendUpperHex" : "appendHex";
+					if (argType == int.class || argType == short.class || argType == byte.class || argType == long.class) {
+						MethodHandle hex = lk.findStatic(FormatCompiler.class, hexHelper, MethodType.methodType(void.class, StringBuilder.class, long.class, int.class));
+						return MethodHandles.insertArguments(hex, 2, bitWidth(argType)).asType(appenderType(argType));
+					}
+					if (!argType.isPrimitive()) return own(lk, hexHelper, Object.class, argType);
+					break;
+				case 'c':
+					if (argType == char.class) return builderAppend(lk, char.class);
+					if (argType == int.class || argType == short.class || argType == byte.class) return own(lk, "appendCodePoint", int.class, argType);
+					if (!argType.isPrimitive()) return own(lk, "appendChar", Object.class, argType);
+					break;
+				case 'b':
+					if (argType == boolean.class) return builderAppend(lk, boolean.class);
+					if (argType.isPrimitive()) return MethodHandles.dropArguments(MethodHandles.insertArguments(MH_APPEND_STRING, 1, "true"), 1, argType);
+					return own(lk, "appendBoolean", Object.class, argType);
+				default:
+					break;
+			}
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+		throw new IllegalArgumentException("format conversion %" + conversion + " cannot be applied to " + argType.getName());
+	}
+
+	private static MethodType appenderType(Class<?> argType) {
+		return MethodType.methodType(void.class, StringBuilder.class, argType);
+	}
+
+	// StringBuilder.append(prim) with the result dropped. char, boolean, int, long, float and double are exact overloads.
+	private static MethodHandle builderAppend(MethodHandles.Lookup lk, Class<?> argType) throws NoSuchMethodException, IllegalAccessException {
+		Class<?> overload = (argType == short.class || argType == byte.class) ? int.class : argType;
+		MethodHandle append = lk.findVirtual(StringBuilder.class, "append", MethodType.methodType(StringBuilder.class, overload));
+		return appender(append).asType(appenderType(argType));
+	}
+
+	private static MethodHandle appender(MethodHandle append) {
+		return append.asType(append.type().changeReturnType(void.class));
+	}
+
+	// one of the static helpers below, adapted to take the argument type
+	private static MethodHandle own(MethodHandles.Lookup lk, String name, Class<?> helperType, Class<?> argType) throws NoSuchMethodException, IllegalAccessException {
+		return lk.findStatic(FormatCompiler.class, name, MethodType.methodType(void.class, StringBuilder.class, helperType)).asType(appenderType(argType));
+	}
+
+	private static int bitWidth(Class<?> argType) {
+		if (argType == byte.class) return 8;
+		if (argType == short.class) return 16;
+		if (argType == int.class) return 32;
+		return 64;
+	}
+
+	// Helpers for conversions that have no single StringBuilder overload
+
+	@SuppressWarnings("unused")
+	private static void appendObject(StringBuilder sb, Object arg) {
+		if (arg instanceof Formattable) {
+			sb.append(String.format(Locale.ROOT, "%s", arg));
+		} else {
+			sb.append(arg);
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendDecimal(StringBuilder sb, Object arg) {
+		if (arg == null) {
+			sb.append("null");
+		} else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+			sb.append(((Number) arg).longValue());
+		} else if (arg instanceof BigInteger) {
+			sb.append(arg);
+		} else {
+			throw new IllegalFormatConversionException('d', arg.getClass());
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendHex(StringBuilder sb, long arg, int bits) {
+		if (bits < 64) arg &= (1L << bits) - 1; // negative values are shown in two's complement of their own width
+		sb.append(Long.toHexString(arg));
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendUpperHex(StringBuilder sb, long arg, int bits) {
+		if (bits < 64) arg &= (1L << bits) - 1;
+		sb.append(Long.toHexString(arg).toUpperCase(Locale.ROOT));
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendHex(StringBuilder sb, Object arg) {
+		if (arg == null) {
+			sb.append("null");
+		} else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte || arg instanceof BigInteger) {
+			sb.append(String.format(Locale.ROOT, "%x", arg));
+		} else {
+			throw new IllegalFormatConversionException('x', arg.getClass());
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendUpperHex(StringBuilder sb, Object arg) {
+		if (arg == null) {
+			sb.append("NULL");
+		} else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte || arg instanceof BigInteger) {
+			sb.append(String.format(Locale.ROOT, "%X", arg));
+		} else {
+			throw new IllegalFormatConversionException('X', arg.getClass());
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendCodePoint(StringBuilder sb, int arg) {
+		sb.appendCodePoint(arg);
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendChar(StringBuilder sb, Object arg) {
+		if (arg == null) {
+			sb.append("null");
+		} else if (arg instanceof Character) {
+			sb.append((char) (Character) arg);
+		} else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+			sb.appendCodePoint(((Number) arg).intValue());
+		} else {
+			throw new IllegalFormatConversionException('c', arg.getClass());
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static void appendBoolean(StringBuilder sb, Object arg) {
+		if (arg == null) {
+			sb.append(false);
+		} else if (arg instanceof Boolean) {
+			sb.append((boolean) (Boolean) arg);
+		} else {
+			sb.append(true);
+		}
+	}
+
+	/**
+	 * A conversion of one argument.
+	 */
+	private static final class Spec {
+		final char conversion;
+		final int index;
+
+		Spec(char conversion, int index) {
+			this.conversion = conversion;
+			this.index = index;
+		}
+	}
+}
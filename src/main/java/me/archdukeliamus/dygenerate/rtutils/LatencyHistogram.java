@@ -0,0 +1,72 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with power of two buckets. Bucket <code>i</code> counts latencies of at least
+ * <code>2^(i-1)</code> and less than <code>2^i</code> nanoseconds; bucket 0 counts latencies of zero. Recording is a single atomic
+ * increment, and percentiles are accurate to within a factor of two, which is enough to tell hot sites from cold ones.
+ * <br><br>
+ * Reads taken while other threads record may be slightly inconsistent, but never lose recorded values.
+ */
+final class LatencyHistogram {
+	static final int BUCKETS = 64;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	void record(long nanos) {
+		counts.incrementAndGet(bucket(nanos));
+	}
+
+	static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * Get the exclusive upper bound of a bucket, in nanoseconds.
+	 */
+	static long upperBound(int bucket) {
+		return bucket == 0 ? 1 : (bucket >= 63 ? Long.MAX_VALUE : 1L << bucket);
+	}
+
+	long[] snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	long total() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Get the upper bound of the bucket containing a percentile, or 0 if nothing has been recorded.
+	 * @param percentile the percentile, between 0 and 100
+	 */
+	long percentile(double percentile) {
+		long[] snapshot = snapshot();
+		long total = 0;
+		for (long count : snapshot) {
+			total += count;
+		}
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] != 0) return upperBound(i);
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+}
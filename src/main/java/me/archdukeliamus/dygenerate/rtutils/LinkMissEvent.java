@@ -0,0 +1,32 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a {@link DuckTypeCallSite} invoked with a receiver class missing from its cache. A site that keeps missing
+ * with <code>evicted</code> set is more polymorphic than its cache.
+ */
+@Name("me.archdukeliamus.dygenerate.LinkMiss")
+@Label("Duck Type Cache Miss")
+@Category({"Dygenerate", "Linkage"})
+@Description("A duck typing call site looking up the method for a receiver class missing from its cache")
+final class LinkMissEvent extends Event {
+	@Label("Caller Class")
+	Class<?> callerClass;
+	@Label("Name")
+	String name;
+	@Label("Type")
+	String type;
+	@Label("Receiver Class")
+	Class<?> receiverClass;
+	@Label("Cache Size")
+	@Description("Number of receiver classes cached after the miss")
+	int cacheSize;
+	@Label("Evicted")
+	@Description("Whether the oldest cached receiver class was dropped to make room")
+	boolean evicted;
+}
@@ -0,0 +1,77 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * A call site for a single log statement with a fixed level and format string. While the level is disabled, the target is a no-op;
+ * while enabled, the target formats its arguments with the format string, compiled by {@link FormatCompiler}, and logs the message.
+ * Either target is guarded by the switch point of the current {@link Logging} threshold, and relinks when the threshold changes.
+ * <br><br>
+ * Use of this call site is safe by multiple threads. In the case of concurrent relinks, the last writer wins.
+ */
+final class LogCallSite extends MutableCallSite {
+	private static final MethodHandle MH_LOG;
+	static {
+		try {
+			MH_LOG = MethodHandles.lookup().findVirtual(Logger.class, "log", MethodType.methodType(void.class, Level.class, String.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private final MethodHandle MH_RELINK = findOwnMH("relink", MethodType.methodType(void.class, Object[].class));
+	private final FeatureFlags.Flag threshold = FeatureFlags.flag(Logging.LEVEL_FLAG);
+	private final Level level; // level of this log statement
+	private final MethodHandle enabledHandle; // formats and logs, built once up front
+	private final MethodHandle relinkHandle; // relinks with the arguments collected
+
+	/**
+	 * Construct a log call site.
+	 * @param logger the logger to log to
+	 * @param level the level of the log statement
+	 * @param format the format string
+	 * @param type the call site type, which must return void
+	 */
+	LogCallSite(Logger logger, Level level, String format, MethodType type) {
+		super(type);
+		if (type.returnType() != void.class) throw new IllegalArgumentException("log call sites must return void");
+		this.level = level;
+		this.enabledHandle = genEnabledHandle(logger, level, format, type);
+		this.relinkHandle = MH_RELINK.asCollector(Object[].class, type.parameterCount()).asType(type);
+		setTarget(relinkHandle);
+	}
+
+	@SuppressWarnings("unused")
+	private final void relink(Object[] args) throws Throwable {
+		FeatureFlags.State state = threshold.state(); // volatile read
+		boolean enabled = Logging.isEnabled(level, Logging.levelOf(state.value));
+		MethodHandle target = enabled ? enabledHandle : MethodHandles.empty(type());
+		boolean relinked = getTarget() != relinkHandle; // otherwise this is the first link
+		setTarget(state.switchPoint.guardWithTest(target, relinkHandle));
+		if (relinked) RelinkEvent.record(this, "linked to log level");
+		if (enabled) {
+			// this invocation still has to be logged
+			enabledHandle.invokeWithArguments(args);
+		}
+	}
+
+	// format(format, args...) -> logger.log(level, message)
+	private static MethodHandle genEnabledHandle(Logger logger, Level level, String format, MethodType type) {
+		MethodHandle formatter = FormatCompiler.compile(format, type);
+		MethodHandle sink = MethodHandles.insertArguments(MH_LOG, 0, logger, level);
+		return MethodHandles.filterReturnValue(formatter, sink);
+	}
+
+	private final MethodHandle findOwnMH(String name, MethodType type) {
+		try {
+			return MethodHandles.lookup().findSpecial(getClass(), name, type, getClass()).bindTo(this);
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+}
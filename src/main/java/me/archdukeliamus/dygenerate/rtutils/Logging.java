@@ -0,0 +1,64 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.System.Logger.Level;
+import java.util.Objects;
+
+/**
+ * Runtime configuration for logging call sites bootstrapped by
+ * {@link Bootstraps#log(java.lang.invoke.MethodHandles.Lookup, String, java.lang.invoke.MethodType, String, String)}.
+ * <br><br>
+ * Logging call sites whose level is below the configured threshold are linked to a no-op, so a disabled log statement costs nothing:
+ * its arguments are not formatted and no level check is performed per call. The threshold is held as the {@link FeatureFlags} flag
+ * named by {@link #LEVEL_FLAG}; changing it relinks every logging call site.
+ * <br><br>
+ * Enabled call sites pass the formatted message to the <code>System.Logger</code> named after the calling class, which may apply its
+ * own filtering on top of the threshold.
+ */
+public final class Logging {
+	/**
+	 * The name of the feature flag holding the threshold level.
+	 */
+	public static final String LEVEL_FLAG = "me.archdukeliamus.dygenerate.rtutils.Logging.level";
+	/**
+	 * The threshold level used while no level has been set.
+	 */
+	public static final Level DEFAULT_LEVEL = Level.INFO;
+
+	private Logging() {}
+
+	/**
+	 * Sets the threshold level. Logging call sites below this level become no-ops. This relinks every logging call site.
+	 * @param level the new threshold level
+	 */
+	public static void setLevel(Level level) {
+		FeatureFlags.set(LEVEL_FLAG, Objects.requireNonNull(level, "level"));
+	}
+
+	/**
+	 * Gets the threshold level.
+	 * @return the threshold level
+	 */
+	public static Level getLevel() {
+		return levelOf(FeatureFlags.get(LEVEL_FLAG));
+	}
+
+	/**
+	 * Returns true if log statements at the given level are currently enabled.
+	 * @param level the level to check
+	 * @return whether the level is enabled
+	 */
+	public static boolean isEnabled(Level level) {
+		return isEnabled(level, getLevel());
+	}
+
+	static boolean isEnabled(Level level, Level threshold) {
+		return level != Level.OFF && threshold != Level.OFF && level.getSeverity() >= threshold.getSeverity();
+	}
+
+	/**
+	 * Interpret a level flag value, falling back to the default if unset.
+	 */
+	static Level levelOf(Object flagValue) {
+		return flagValue == null ? DEFAULT_LEVEL : (Level) flagValue;
+	}
+}
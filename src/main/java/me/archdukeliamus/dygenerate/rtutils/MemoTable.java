@@ -0,0 +1,165 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, set-associative result cache backing a {@link MemoizingCallSite}. Keys hash to a set of {@value #WAYS} slots; lookups
+ * scan the set without locking and inserts lock only the stripe owning the set. When a set is full, a victim is chosen by the
+ * eviction policy. Keys are either a single object, a single primitive widened into a <code>long</code>, or an argument array.
+ * <br><br>
+ * Concurrent misses on the same key may compute the value more than once. The memoized function is expected to be pure, so
+ * whichever result is stored last wins.
+ */
+final class MemoTable {
+	static final int WAYS = 4; // slots per set
+	private static final int MAX_STRIPES = 64; // upper bound on write locks
+
+	private final MethodHandle compute; // computes the value on a miss, type depends on the key kind
+	private final MemoizingCallSite.Eviction eviction;
+	private final AtomicReferenceArray<Entry> slots; // sets * WAYS slots, a set occupies a contiguous run
+	private final int setMask;
+	private final Object[] stripes; // write locks, striped over sets
+	private final byte[] nextVictim; // round-robin victim per set for FIFO, guarded by the stripe lock
+	private int clock; // access clock for LRU. Racy on purpose: an approximate order is good enough
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	MemoTable(MethodHandle compute, int capacity, MemoizingCallSite.Eviction eviction) {
+		this.compute = compute;
+		this.eviction = eviction;
+		int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS));
+		if (sets * WAYS < capacity) sets <<= 1; // round up to a power of two
+		this.slots = new AtomicReferenceArray<>(sets * WAYS);
+		this.setMask = sets - 1;
+		this.stripes = new Object[Math.min(sets, MAX_STRIPES)];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
+		this.nextVictim = new byte[sets];
+	}
+
+	// Lookups, one per key kind. Each is bound into the call site target.
+
+	Object getObject(Object key) throws Throwable {
+		int hash = spread(Objects.hashCode(key));
+		int base = (hash & setMask) * WAYS;
+		for (int i = 0; i < WAYS; i++) {
+			Entry e = slots.get(base + i);
+			if (e != null && e.hash == hash && Objects.equals(e.key, key)) return hit(e);
+		}
+		misses.increment();
+		Object value = compute.invokeExact(key);
+		insert(base, new Entry(hash, key, 0L, value));
+		return value;
+	}
+
+	Object getLong(long key) throws Throwable {
+		int hash = spread(Long.hashCode(key));
+		int base = (hash & setMask) * WAYS;
+		for (int i = 0; i < WAYS; i++) {
+			Entry e = slots.get(base + i);
+			if (e != null && e.primKey == key && e.hash == hash) return hit(e);
+		}
+		misses.increment();
+		Object value = compute.invokeExact(key);
+		insert(base, new Entry(hash, null, key, value));
+		return value;
+	}
+
+	Object getArray(Object[] key) throws Throwable {
+		int hash = spread(Arrays.hashCode(key));
+		int base = (hash & setMask) * WAYS;
+		for (int i = 0; i < WAYS; i++) {
+			Entry e = slots.get(base + i);
+			if (e != null && e.hash == hash && Arrays.equals((Object[]) e.key, key)) return hit(e);
+		}
+		misses.increment();
+		Object value = compute.invokeExact(key);
+		insert(base, new Entry(hash, key, 0L, value));
+		return value;
+	}
+
+	private Object hit(Entry e) {
+		hits.increment();
+		if (eviction == MemoizingCallSite.Eviction.LRU) e.lastUsed = ++clock;
+		return e.value;
+	}
+
+	private void insert(int base, Entry entry) {
+		int set = base / WAYS;
+		synchronized (stripes[set % stripes.length]) {
+			int victim = -1;
+			for (int i = 0; i < WAYS; i++) {
+				if (slots.get(base + i) == null) {
+					victim = i;
+					break;
+				}
+			}
+			if (victim < 0) {
+				switch (eviction) {
+					case FIFO:
+						victim = nextVictim[set];
+						nextVictim[set] = (byte) ((victim + 1) % WAYS);
+						break;
+					case LRU:
+						victim = 0;
+						for (int i = 1; i < WAYS; i++) {
+							if (slots.get(base + i).lastUsed - slots.get(base + victim).lastUsed < 0) victim = i;
+						}
+						break;
+					case RANDOM:
+					default:
+						victim = ThreadLocalRandom.current().nextInt(WAYS);
+						break;
+				}
+			}
+			entry.lastUsed = ++clock;
+			slots.set(base + victim, entry); // volatile write publishes the entry to lock-free readers
+		}
+	}
+
+	private static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	long getHitCount() {
+		return hits.sum();
+	}
+
+	long getMissCount() {
+		return misses.sum();
+	}
+
+	int getCapacity() {
+		return slots.length();
+	}
+
+	MemoizingCallSite.Eviction getEviction() {
+		return eviction;
+	}
+
+	/**
+	 * A cached key-value pair. Everything except the access stamp is immutable.
+	 */
+	private static final class Entry {
+		final int hash;
+		final Object key; // object or array key, null for primitive keys
+		final long primKey; // widened primitive key
+		final Object value;
+		int lastUsed; // LRU stamp, written racily
+
+		Entry(int hash, Object key, long primKey, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.primKey = primKey;
+			this.value = value;
+		}
+	}
+}
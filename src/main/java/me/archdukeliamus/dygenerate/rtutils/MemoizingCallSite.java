@@ -0,0 +1,227 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.System.Logger.Level;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A constant call site that memoizes the results of a target handle in a bounded cache private to the call site. The cache is keyed
+ * on the arguments of each invocation: a single reference argument is used as the key directly, a single primitive argument is used
+ * without boxing, and multiple arguments are collected into an array compared element-wise with <code>equals</code>.
+ * <br><br>
+ * The target must be a pure function of its arguments; results are never invalidated, only evicted once the cache is full. Exceptions
+ * thrown by the target are not cached. The target must not return <code>void</code>.
+ * <br><br>
+ * Lookups in the cache do not lock. Use of this call site is safe by multiple threads, though concurrent misses on the same key may
+ * each invoke the target.
+ * <br><br>
+ * Call sites linked by {@link Bootstraps#memoize(Lookup, String, MethodType, MethodHandle)} are registered with the platform MBean server
+ * under the name <code>me.archdukeliamus.dygenerate:type=MemoizingCallSite,caller=</code><i>class</i><code>,name=</code><i>name</i><code>,id=</code><i>n</i>,
+ * where <i>n</i> tells apart sites with the same caller and name, so that their hit rates can be watched. Like profiles, they stay
+ * registered for the life of the JVM.
+ */
+public final class MemoizingCallSite extends ConstantCallSite implements MemoizingCallSiteMBean {
+	private static final MethodHandle MH_GET_OBJECT;
+	private static final MethodHandle MH_GET_LONG;
+	private static final MethodHandle MH_GET_ARRAY;
+	private static final MethodHandle MH_FLOAT_TO_BITS;
+	private static final MethodHandle MH_BITS_TO_FLOAT;
+	private static final MethodHandle MH_DOUBLE_TO_BITS;
+	private static final MethodHandle MH_BITS_TO_DOUBLE;
+	static {
+		try {
+			MethodHandles.Lookup lk = MethodHandles.lookup();
+			MH_GET_OBJECT = lk.findVirtual(MemoTable.class, "getObject", MethodType.methodType(Object.class, Object.class));
+			MH_GET_LONG = lk.findVirtual(MemoTable.class, "getLong", MethodType.methodType(Object.class, long.class));
+			MH_GET_ARRAY = lk.findVirtual(MemoTable.class, "getArray", MethodType.methodType(Object.class, Object[].class));
+			MH_FLOAT_TO_BITS = lk.findStatic(Float.class, "floatToRawIntBits", MethodType.methodType(int.class, float.class));
+			MH_BITS_TO_FLOAT = lk.findStatic(Float.class, "intBitsToFloat", MethodType.methodType(float.class, int.class));
+			MH_DOUBLE_TO_BITS = lk.findStatic(Double.class, "doubleToRawLongBits", MethodType.methodType(long.class, double.class));
+			MH_BITS_TO_DOUBLE = lk.findStatic(Double.class, "longBitsToDouble", MethodType.methodType(double.class, long.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+	private static final AtomicLong ids = new AtomicLong();
+
+	/**
+	 * Policies deciding which cached result to discard when the cache is full.
+	 */
+	public enum Eviction {
+		/**
+		 * Discard the oldest inserted result.
+		 */
+		FIFO,
+		/**
+		 * Discard the (approximately) least recently used result. Hits pay for one extra write.
+		 */
+		LRU,
+		/**
+		 * Discard a random result.
+		 */
+		RANDOM
+	}
+
+	private final MemoTable table;
+
+	/**
+	 * Construct a memoizing call site caching up to 256 results with LRU eviction.
+	 * @param target Handle to memoize; the type of the call site is the type of this handle
+	 */
+	public MemoizingCallSite(MethodHandle target) {
+		this(target, 256, Eviction.LRU);
+	}
+
+	/**
+	 * Construct a memoizing call site with a custom cache size and eviction policy. The capacity is rounded up to a multiple of the
+	 * cache associativity.
+	 * @param target Handle to memoize; the type of the call site is the type of this handle
+	 * @param capacity Number of results to cache. Must be greater than zero.
+	 * @param eviction Eviction policy
+	 */
+	public MemoizingCallSite(MethodHandle target, int capacity, Eviction eviction) {
+		this(target, newTable(target, capacity, eviction));
+	}
+
+	private MemoizingCallSite(MethodHandle target, MemoTable table) {
+		super(genMemoHandle(target, table));
+		this.table = table;
+	}
+
+	/**
+	 * Register this call site with the platform MBean server, as linked by the given caller.
+	 */
+	MemoizingCallSite register(Lookup lk, String name) {
+		String callerClass = lk.lookupClass().getName();
+		try {
+			ObjectName objectName = new ObjectName("me.archdukeliamus.dygenerate:type=MemoizingCallSite,caller=" + ObjectName.quote(callerClass)
+					+ ",name=" + ObjectName.quote(name) + ",id=" + ids.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (JMException | RuntimeException ex) {
+			// the call site still works, it just cannot be seen
+			System.getLogger(MemoizingCallSite.class.getName()).log(Level.WARNING, "cannot register memoizing call site for " + callerClass + "." + name, ex);
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the number of invocations answered from the cache.
+	 * @return the hit count
+	 */
+	@Override
+	public long getHitCount() {
+		return table.getHitCount();
+	}
+
+	/**
+	 * Gets the number of invocations that had to call the target.
+	 * @return the miss count
+	 */
+	@Override
+	public long getMissCount() {
+		return table.getMissCount();
+	}
+
+	/**
+	 * Gets the fraction of invocations answered from the cache, or zero if the call site has not been invoked.
+	 * @return the hit rate, between 0 and 1
+	 */
+	@Override
+	public double getHitRate() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * Gets the maximum number of results this call site caches.
+	 * @return the capacity
+	 */
+	@Override
+	public int getCapacity() {
+		return table.getCapacity();
+	}
+
+	/**
+	 * Gets the eviction policy of this call site.
+	 * @return the eviction policy
+	 */
+	public Eviction getEviction() {
+		return table.getEviction();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("MemoizingCallSite{");
+		sb.append(type());
+		sb.append(",hits=");
+		sb.append(getHitCount());
+		sb.append(",misses=");
+		sb.append(getMissCount());
+		sb.append("}");
+		return sb.toString();
+	}
+
+	// The key kind is decided by the target type. The compute handle takes the key as the table stores it.
+	private static MemoTable newTable(MethodHandle target, int capacity, Eviction eviction) {
+		Objects.requireNonNull(target, "target");
+		Objects.requireNonNull(eviction, "eviction");
+		MethodType type = target.type();
+		if (type.returnType() == void.class) throw new IllegalArgumentException("cannot memoize a void method");
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be a positive integer");
+		MethodHandle compute;
+		if (type.parameterCount() == 1 && type.parameterType(0).isPrimitive()) {
+			compute = fromLongKey(target, type.parameterType(0));
+		} else if (type.parameterCount() == 1) {
+			compute = target.asType(MethodType.methodType(Object.class, Object.class));
+		} else {
+			compute = target.asSpreader(Object[].class, type.parameterCount()).asType(MethodType.methodType(Object.class, Object[].class));
+		}
+		return new MemoTable(compute, capacity, eviction);
+	}
+
+	private static MethodHandle genMemoHandle(MethodHandle target, MemoTable table) {
+		MethodType type = target.type();
+		MethodHandle handle;
+		if (type.parameterCount() == 1 && type.parameterType(0).isPrimitive()) {
+			handle = MethodHandles.filterArguments(MH_GET_LONG.bindTo(table), 0, toLongKey(type.parameterType(0)));
+		} else if (type.parameterCount() == 1) {
+			handle = MH_GET_OBJECT.bindTo(table);
+		} else {
+			handle = MH_GET_ARRAY.bindTo(table).asCollector(Object[].class, type.parameterCount());
+		}
+		return handle.asType(type);
+	}
+
+	// Primitive key of type prim -> long key. Floating point keys compare by bits, so NaNs are found again and -0.0 is not 0.0.
+	private static MethodHandle toLongKey(Class<?> prim) {
+		MethodType widen = MethodType.methodType(long.class, prim);
+		if (prim == float.class) {
+			return MethodHandles.explicitCastArguments(MH_FLOAT_TO_BITS, widen);
+		} else if (prim == double.class) {
+			return MH_DOUBLE_TO_BITS;
+		}
+		return MethodHandles.explicitCastArguments(MethodHandles.identity(prim), widen);
+	}
+
+	// Target taking prim -> target taking the long key
+	private static MethodHandle fromLongKey(MethodHandle target, Class<?> prim) {
+		MethodHandle generic = target.asType(target.type().changeReturnType(Object.class));
+		if (prim == float.class) {
+			generic = MethodHandles.filterArguments(generic, 0, MH_BITS_TO_FLOAT);
+		} else if (prim == double.class) {
+			generic = MethodHandles.filterArguments(generic, 0, MH_BITS_TO_DOUBLE);
+		}
+		return MethodHandles.explicitCastArguments(generic, MethodType.methodType(Object.class, long.class));
+	}
+}
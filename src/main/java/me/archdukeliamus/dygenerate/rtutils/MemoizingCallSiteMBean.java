@@ -0,0 +1,30 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+/**
+ * Management interface of a {@link MemoizingCallSite}, as registered with the platform MBean server.
+ */
+public interface MemoizingCallSiteMBean {
+	/**
+	 * Get the number of invocations answered from the cache.
+	 * @return the hit count
+	 */
+	long getHitCount();
+
+	/**
+	 * Get the number of invocations that had to call the target.
+	 * @return the miss count
+	 */
+	long getMissCount();
+
+	/**
+	 * Get the fraction of invocations answered from the cache, or zero if the call site has not been invoked.
+	 * @return the hit rate, between 0 and 1
+	 */
+	double getHitRate();
+
+	/**
+	 * Get the maximum number of results the call site caches.
+	 * @return the capacity
+	 */
+	int getCapacity();
+}
@@ -0,0 +1,166 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+/**
+ * Builds <code>equals</code>, <code>hashCode</code> and <code>toString</code> implementations from component getter handles, in the manner
+ * of <code>java.lang.runtime.ObjectMethods</code> but for any class. The resulting handles are fused chains of the getters with a
+ * comparison, hash or append specialized to each component type, so primitives are never boxed and nothing is reflected per call.
+ * <br><br>
+ * The semantics match those of records: components are compared with <code>==</code> for integral types, with
+ * <code>Float.compare</code>/<code>Double.compare</code> for floating point types, and with <code>Objects.equals</code> otherwise;
+ * the hash code is <code>31 * h + hash(c)</code> over the components in order, starting at zero; and the string form is
+ * <code>Name[a=1, b=2]</code>. Unlike records, <code>equals</code> requires both objects to have exactly the same class, so it stays
+ * symmetric for classes that can be subclassed.
+ */
+final class ObjectMethodHandles {
+	private static final MethodHandle MH_SAME_CLASS;
+	private static final MethodHandle MH_COMBINE_HASH;
+	private static final MethodHandle MH_OBJECTS_EQUALS;
+	private static final MethodHandle MH_OBJECTS_HASH;
+	static {
+		try {
+			MethodHandles.Lookup lk = MethodHandles.lookup();
+			MH_SAME_CLASS = lk.findStatic(ObjectMethodHandles.class, "sameClass", MethodType.methodType(boolean.class, Object.class, Object.class));
+			MH_COMBINE_HASH = lk.findStatic(ObjectMethodHandles.class, "combineHash", MethodType.methodType(int.class, int.class, int.class));
+			MH_OBJECTS_EQUALS = lk.findStatic(Objects.class, "equals", MethodType.methodType(boolean.class, Object.class, Object.class));
+			MH_OBJECTS_HASH = lk.findStatic(Objects.class, "hashCode", MethodType.methodType(int.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private ObjectMethodHandles() {}
+
+	/**
+	 * Build an equals handle of type (C, Object) -> boolean.
+	 */
+	static MethodHandle equalsHandle(Class<?> receiverClass, MethodHandle[] getters) {
+		// (C, C) -> boolean, true if every component is equal
+		MethodHandle components = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, receiverClass, receiverClass);
+		MethodHandle isFalse = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, receiverClass, receiverClass);
+		for (int i = getters.length - 1; i >= 0; i--) {
+			MethodHandle getter = getters[i];
+			MethodHandle test = MethodHandles.filterArguments(componentEquals(getter.type().returnType()), 0, getter, getter);
+			components = MethodHandles.guardWithTest(test, components, isFalse);
+		}
+		// only compare components once the other object is known to be of the same class
+		MethodHandle checked = components.asType(MethodType.methodType(boolean.class, receiverClass, Object.class));
+		MethodHandle sameClass = MH_SAME_CLASS.asType(MethodType.methodType(boolean.class, receiverClass, Object.class));
+		MethodHandle notSame = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, receiverClass, Object.class);
+		return MethodHandles.guardWithTest(sameClass, checked, notSame);
+	}
+
+	/**
+	 * Build a hashCode handle of type (C) -> int.
+	 */
+	static MethodHandle hashCodeHandle(Class<?> receiverClass, MethodHandle[] getters) {
+		MethodHandle hash = MethodHandles.dropArguments(MethodHandles.constant(int.class, 0), 0, receiverClass);
+		for (MethodHandle getter : getters) {
+			MethodHandle component = MethodHandles.filterReturnValue(getter, componentHash(getter.type().returnType()));
+			// 31 * hash(c) + component(c), with c passed to both
+			MethodHandle combined = MethodHandles.filterArguments(MH_COMBINE_HASH, 0, hash, component);
+			hash = MethodHandles.permuteArguments(combined, MethodType.methodType(int.class, receiverClass), 0, 0);
+		}
+		return hash;
+	}
+
+	/**
+	 * Build a toString handle of type (C) -> String.
+	 */
+	static MethodHandle toStringHandle(Class<?> receiverClass, String[] names, MethodHandle[] getters) {
+		StringBuilder format = new StringBuilder();
+		format.append(escape(receiverClass.getSimpleName())).append('[');
+		Class<?>[] componentTypes = new Class<?>[getters.length];
+		for (int i = 0; i < getters.length; i++) {
+			if (i > 0) format.append(", ");
+			format.append(escape(names[i])).append("=%s");
+			componentTypes[i] = getters[i].type().returnType();
+		}
+		format.append(']');
+		MethodHandle formatter = FormatCompiler.compile(format.toString(), MethodType.methodType(String.class, componentTypes));
+		// call every getter on the same receiver
+		MethodHandle formatted = MethodHandles.filterArguments(formatter, 0, getters);
+		return MethodHandles.permuteArguments(formatted, MethodType.methodType(String.class, receiverClass), new int[getters.length]);
+	}
+
+	private static String escape(String literal) {
+		return literal.replace("%", "%%");
+	}
+
+	// (T, T) -> boolean
+	private static MethodHandle componentEquals(Class<?> type) {
+		try {
+			if (type == float.class) {
+				return MethodHandles.lookup().findStatic(ObjectMethodHandles.class, "floatEquals", MethodType.methodType(boolean.class, float.class, float.class));
+			} else if (type == double.class) {
+				return MethodHandles.lookup().findStatic(ObjectMethodHandles.class, "doubleEquals", MethodType.methodType(boolean.class, double.class, double.class));
+			} else if (type == boolean.class) {
+				return MethodHandles.lookup().findStatic(ObjectMethodHandles.class, "booleanEquals", MethodType.methodType(boolean.class, boolean.class, boolean.class));
+			} else if (type == long.class) {
+				return MethodHandles.lookup().findStatic(ObjectMethodHandles.class, "longEquals", MethodType.methodType(boolean.class, long.class, long.class));
+			} else if (type.isPrimitive()) {
+				// int, char, short, byte all widen to int
+				MethodHandle intEquals = MethodHandles.lookup().findStatic(ObjectMethodHandles.class, "intEquals", MethodType.methodType(boolean.class, int.class, int.class));
+				return intEquals.asType(MethodType.methodType(boolean.class, type, type));
+			}
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+		return MH_OBJECTS_EQUALS.asType(MethodType.methodType(boolean.class, type, type));
+	}
+
+	// (T) -> int
+	private static MethodHandle componentHash(Class<?> type) {
+		try {
+			if (type == int.class || type == char.class || type == short.class || type == byte.class) {
+				return MethodHandles.identity(int.class).asType(MethodType.methodType(int.class, type));
+			} else if (type.isPrimitive()) {
+				// Long.hashCode(long), Double.hashCode(double) etc. are the hashes of the boxes
+				Class<?> box = MethodType.methodType(type).wrap().returnType();
+				return MethodHandles.lookup().findStatic(box, "hashCode", MethodType.methodType(int.class, type));
+			}
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+		return MH_OBJECTS_HASH.asType(MethodType.methodType(int.class, type));
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean sameClass(Object receiver, Object other) {
+		return other != null && receiver.getClass() == other.getClass();
+	}
+
+	@SuppressWarnings("unused")
+	private static int combineHash(int hash, int component) {
+		return 31 * hash + component;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean intEquals(int a, int b) {
+		return a == b;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean longEquals(long a, long b) {
+		return a == b;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean booleanEquals(boolean a, boolean b) {
+		return a == b;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean floatEquals(float a, float b) {
+		return Float.compare(a, b) == 0;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean doubleEquals(double a, double b) {
+		return Double.compare(a, b) == 0;
+	}
+}
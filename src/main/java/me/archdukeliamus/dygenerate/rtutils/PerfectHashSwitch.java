@@ -0,0 +1,138 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A switch over string case labels using a collision-free hash table built once at link time, by hash-and-displace. Labels are first
+ * grouped into buckets by their <code>hashCode</code>; then, largest bucket first, a seed is searched for each bucket that places all
+ * of its labels into free slots of the table. Looking up a string costs one (cached) <code>hashCode</code>, two array loads, some
+ * arithmetic and a single <code>equals</code> against the only label that could match.
+ * <br><br>
+ * If two labels share a <code>hashCode</code>, no seed can separate them, and the switch falls back to a <code>HashMap</code>.
+ */
+final class PerfectHashSwitch {
+	private static final int BUCKET_MULTIPLIER = 0x9E3779B9;
+	private static final int MAX_SEED = 1 << 20; // give up after this many seeds for one bucket
+
+	private final int caseCount;
+	private final int bucketShift; // keeps the top bits of the bucket hash
+	private final int slotMask;
+	private final int[] seeds; // displacement seed of each bucket
+	private final String[] keys; // label occupying each slot, or null
+	private final int[] cases; // case index of the label in each slot
+	private final Map<String,Integer> fallback; // only used if hash codes collide
+
+	/**
+	 * Build a switch over the given labels. The case index of a label is its position in the array.
+	 * @param labels the case labels
+	 * @throws IllegalArgumentException if a label is null or duplicated
+	 */
+	PerfectHashSwitch(String[] labels) {
+		this.caseCount = labels.length;
+		Set<String> seen = new HashSet<>();
+		Set<Integer> hashes = new HashSet<>();
+		boolean hashCollision = false;
+		for (String label : labels) {
+			if (label == null) throw new IllegalArgumentException("null case label");
+			if (!seen.add(label)) throw new IllegalArgumentException("duplicate case label " + label);
+			hashCollision |= !hashes.add(label.hashCode());
+		}
+		// two to four slots per label keep the seed search short, with up to two labels per bucket on average
+		int slotCount = Integer.highestOneBit(Math.max(1, labels.length)) << 2;
+		int bucketCount = Math.max(1, slotCount >>> 2);
+		this.bucketShift = 32 - Integer.numberOfTrailingZeros(bucketCount);
+		this.slotMask = slotCount - 1;
+		if (hashCollision) {
+			this.seeds = null;
+			this.keys = null;
+			this.cases = null;
+			this.fallback = new HashMap<>();
+			for (int i = 0; i < labels.length; i++) {
+				fallback.put(labels[i], i);
+			}
+			return;
+		}
+		this.seeds = new int[bucketCount];
+		this.keys = new String[slotCount];
+		this.cases = new int[slotCount];
+		this.fallback = null;
+		place(labels, bucketCount);
+	}
+
+	private void place(String[] labels, int bucketCount) {
+		List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets.add(new ArrayList<>());
+		}
+		for (int i = 0; i < labels.length; i++) {
+			buckets.get(bucket(labels[i].hashCode())).add(i);
+		}
+		// place the hardest buckets while the table is still empty
+		List<Integer> order = new ArrayList<>(bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			order.add(i);
+		}
+		order.sort((a, b) -> Integer.compare(buckets.get(b).size(), buckets.get(a).size()));
+		int[] slots = new int[labels.length];
+		for (int b : order) {
+			List<Integer> bucket = buckets.get(b);
+			if (bucket.isEmpty()) break;
+			int seed = 0;
+			while (!fits(labels, bucket, seed, slots)) {
+				if (++seed >= MAX_SEED) throw new IllegalArgumentException("cannot build a perfect hash for " + labels.length + " labels");
+			}
+			seeds[b] = seed;
+			for (int k = 0; k < bucket.size(); k++) {
+				keys[slots[k]] = labels[bucket.get(k)];
+				cases[slots[k]] = bucket.get(k);
+			}
+		}
+	}
+
+	// Whether every label in the bucket lands in a distinct free slot with this seed. The slots are written to slotsOut.
+	private boolean fits(String[] labels, List<Integer> bucket, int seed, int[] slotsOut) {
+		for (int k = 0; k < bucket.size(); k++) {
+			int slot = slot(labels[bucket.get(k)].hashCode(), seed);
+			if (keys[slot] != null) return false;
+			for (int j = 0; j < k; j++) {
+				if (slotsOut[j] == slot) return false;
+			}
+			slotsOut[k] = slot;
+		}
+		return true;
+	}
+
+	private int bucket(int hash) {
+		// a single bucket has shift 32, which Java would treat as 0
+		return bucketShift == 32 ? 0 : (hash * BUCKET_MULTIPLIER) >>> bucketShift;
+	}
+
+	private int slot(int hash, int seed) {
+		int h = hash ^ seed * 0x85ebca6b;
+		h ^= h >>> 16;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 13;
+		return h & slotMask;
+	}
+
+	/**
+	 * Find the case index of a string.
+	 * @param value the string to switch on
+	 * @return the case index, -1 if the string is null, or the number of labels if no label matches
+	 */
+	int indexOf(String value) {
+		if (value == null) return -1;
+		if (keys != null) {
+			int hash = value.hashCode();
+			int slot = slot(hash, seeds[bucket(hash)]);
+			return value.equals(keys[slot]) ? cases[slot] : caseCount;
+		}
+		Integer index = fallback.get(value);
+		return index == null ? caseCount : index;
+	}
+}
@@ -0,0 +1,221 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An opt-in store of the receiver classes seen by each {@link DuckTypeCallSite}, persisted across runs. While enabled, every duck typing
+ * call site records the receiver classes it links to, keyed by the caller class, the method name and the call site type, and call sites
+ * created later pre-build their cache from the classes recorded for the same key, so that they start out warm instead of relinking once
+ * per receiver class. Profiles are written to the file at shutdown, or on demand with {@link #dump()}.
+ * <br><br>
+ * Recording is enabled by calling {@link #enable(Path)} before the call sites are linked, or by setting the
+ * <code>dygenerate.receiverProfiles</code> system property to the path of the profile file. The file holds one line per key: the caller class,
+ * the method name, the method descriptor and the receiver classes, separated by spaces. Each receiver class is written as its name, an
+ * <code>=</code> and the number of times call sites have linked to it, hottest first; a name without a count counts once. Receiver classes
+ * that can no longer be loaded by the caller, or no longer have the method, are skipped when seeding. Hidden classes are never recorded.
+ * <br><br>
+ * At most 64 receiver classes are kept per key. A receiver class seen once the limit is reached replaces the one linked least often,
+ * the least recently linked of those if several tie, so that a profile follows the receivers a program uses now rather than keeping the
+ * first it ever saw.
+ * <br><br>
+ * Use of this class is safe by multiple threads.
+ */
+public final class ReceiverProfiles {
+	/**
+	 * The system property naming the profile file, which enables recording when set.
+	 */
+	public static final String PROPERTY = "dygenerate.receiverProfiles";
+	private static final int MAX_RECEIVERS = 64; // per key, to keep the file compact
+	private static final ConcurrentMap<String,Profile> profiles = new ConcurrentHashMap<>();
+	private static volatile Path file; // null while disabled
+	private static boolean hooked; // whether the shutdown hook is registered, guarded by the class lock
+	static {
+		String path = System.getProperty(PROPERTY);
+		if (path != null) {
+			try {
+				enable(Paths.get(path));
+			} catch (IOException | RuntimeException ex) {
+				System.getLogger(ReceiverProfiles.class.getName()).log(Level.WARNING, "cannot enable receiver profiles from " + path, ex);
+			}
+		}
+	}
+
+	private ReceiverProfiles() {}
+
+	/**
+	 * Enable recording, reading any profiles already in the file and writing all profiles back to it at shutdown. Call sites linked
+	 * before this is called are not affected.
+	 * @param file the profile file, which need not exist yet
+	 * @throws IOException if the file exists but cannot be read
+	 */
+	public static synchronized void enable(Path file) throws IOException {
+		Objects.requireNonNull(file, "file");
+		if (Files.exists(file)) load(file);
+		ReceiverProfiles.file = file; // volatile write, publishes the loaded profiles
+		if (!hooked) {
+			Runtime.getRuntime().addShutdownHook(new Thread(ReceiverProfiles::dumpAtShutdown, "dygenerate-receiver-profiles"));
+			hooked = true;
+		}
+	}
+
+	/**
+	 * Whether recording is enabled.
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return file != null;
+	}
+
+	/**
+	 * Write all profiles to the file given to {@link #enable(Path)}. Does nothing if recording is not enabled.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void dump() throws IOException {
+		Path file = ReceiverProfiles.file;
+		if (file != null) dump(file);
+	}
+
+	/**
+	 * Write all profiles to a file, replacing it.
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void dump(Path file) throws IOException {
+		Objects.requireNonNull(file, "file");
+		List<String> lines = new ArrayList<>();
+		for (Map.Entry<String,Profile> entry : new TreeMap<>(profiles).entrySet()) {
+			String counts = entry.getValue().counts();
+			if (!counts.isEmpty()) lines.add(entry.getKey() + " " + counts);
+		}
+		// write beside the file and move it into place, so that a crash never leaves half a profile behind
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temp, lines, StandardCharsets.UTF_8);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void dumpAtShutdown() {
+		try {
+			dump();
+		} catch (IOException ex) {
+			System.getLogger(ReceiverProfiles.class.getName()).log(Level.WARNING, "cannot write receiver profiles to " + file, ex);
+		}
+	}
+
+	private static void load(Path file) throws IOException {
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String[] parts = line.trim().split(" +");
+			if (parts.length < 4) continue; // blank or damaged, skip it
+			Profile profile = profiles.computeIfAbsent(parts[0] + " " + parts[1] + " " + parts[2], key -> new Profile());
+			// hottest first, so add in reverse to leave the hottest as the most recent of any that tie
+			for (int i = parts.length - 1; i >= 3; i--) {
+				int equals = parts[i].lastIndexOf('=');
+				long count = 1;
+				if (equals >= 0) {
+					try {
+						count = Math.max(1, Long.parseLong(parts[i].substring(equals + 1)));
+					} catch (NumberFormatException ex) {
+						continue; // damaged, skip it
+					}
+				}
+				profile.add(equals >= 0 ? parts[i].substring(0, equals) : parts[i], count);
+			}
+		}
+	}
+
+	/**
+	 * Get the profile of a call site.
+	 * @return the profile, or null if recording is not enabled
+	 */
+	static Profile profile(Lookup lk, String name, MethodType type) {
+		if (file == null) return null;
+		String key = lk.lookupClass().getName() + " " + name + " " + type.toMethodDescriptorString();
+		return profiles.computeIfAbsent(key, k -> new Profile());
+	}
+
+	/**
+	 * The receiver classes seen for one key, with the number of times each was linked.
+	 */
+	static final class Profile {
+		private static final Comparator<Map.Entry<String,long[]>> HOTTEST_FIRST = Comparator.comparingLong(entry -> -entry.getValue()[0]);
+		// in access order, so the least recently linked come first; guarded by this
+		private final Map<String,long[]> receivers = new LinkedHashMap<>(16, 0.75f, true);
+
+		/**
+		 * Record a receiver class a call site has linked to.
+		 */
+		void record(Class<?> receiver) {
+			// hidden and VM anonymous classes, such as lambdas, cannot be found by name; theirs alone contain a slash
+			String name = receiver.getName();
+			if (name.indexOf('/') < 0) add(name, 1);
+		}
+
+		synchronized void add(String receiver, long count) {
+			long[] seen = receivers.get(receiver);
+			if (seen != null) {
+				seen[0] += count;
+				return;
+			}
+			if (receivers.size() >= MAX_RECEIVERS) evictColdest();
+			receivers.put(receiver, new long[] {count});
+		}
+
+		// drop the receiver linked least often, the least recently linked of any that tie
+		private void evictColdest() {
+			String coldest = null;
+			long coldestCount = Long.MAX_VALUE;
+			for (Map.Entry<String,long[]> entry : receivers.entrySet()) {
+				if (entry.getValue()[0] < coldestCount) {
+					coldest = entry.getKey();
+					coldestCount = entry.getValue()[0];
+				}
+			}
+			receivers.remove(coldest);
+		}
+
+		/**
+		 * Get the receiver classes, hottest first, and the most recently linked first of any that tie.
+		 */
+		synchronized List<String> receivers() {
+			List<String> names = new ArrayList<>();
+			for (Map.Entry<String,long[]> entry : hottestFirst()) {
+				names.add(entry.getKey());
+			}
+			return names;
+		}
+
+		// the receiver classes with their counts as written to the file
+		synchronized String counts() {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String,long[]> entry : hottestFirst()) {
+				if (sb.length() > 0) sb.append(' ');
+				sb.append(entry.getKey()).append('=').append(entry.getValue()[0]);
+			}
+			return sb.toString();
+		}
+
+		private List<Map.Entry<String,long[]>> hottestFirst() {
+			List<Map.Entry<String,long[]>> entries = new ArrayList<>(receivers.entrySet());
+			Collections.reverse(entries); // most recent first, kept among ties by the stable sort
+			entries.sort(HOTTEST_FIRST);
+			return entries;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+
+/**
+ * Method handles behaving as <code>Method.invoke</code>, <code>Field.get</code> and <code>Field.set</code> on a member looked up by name,
+ * for the reflective constants of {@link Constants}. Where the caller can access the member directly, the handle calls it directly,
+ * converting arguments and wrapping exceptions as reflection does, so that no <code>Method</code> or <code>Field</code> is left to be
+ * shared. Otherwise the handle calls reflection, as if from the caller, on a member no other code can reach. A member that is not found is
+ * looked up again on every invocation, which throws as the lookup did.
+ */
+final class ReflectiveInvokers {
+	static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	static final MethodType GET_TYPE = MethodType.methodType(Object.class, Object.class);
+	static final MethodType SET_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodHandle MH_REQUIRE_NON_NULL;
+	private static final MethodHandle MH_INVOCATION_TARGET;
+	private static final MethodHandle MH_ILLEGAL_ARGUMENT;
+	private static final MethodHandle MH_FIND_METHOD;
+	private static final MethodHandle MH_FIND_FIELD;
+	static {
+		try {
+			Lookup lk = MethodHandles.lookup();
+			MH_REQUIRE_NON_NULL = lk.findStatic(Objects.class, "requireNonNull", MethodType.methodType(Object.class, Object.class));
+			MH_INVOCATION_TARGET = lk.findStatic(ReflectiveInvokers.class, "invocationTarget", MethodType.methodType(InvocationTargetException.class, Throwable.class));
+			MH_ILLEGAL_ARGUMENT = lk.findStatic(ReflectiveInvokers.class, "illegalArgument", MethodType.methodType(IllegalArgumentException.class, Throwable.class));
+			MH_FIND_METHOD = lk.findStatic(ReflectiveInvokers.class, "findMethod", MethodType.methodType(Method.class, Class.class, String.class, boolean.class, Class[].class));
+			MH_FIND_FIELD = lk.findStatic(ReflectiveInvokers.class, "findField", MethodType.methodType(Field.class, Class.class, String.class, boolean.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private ReflectiveInvokers() {}
+
+	/**
+	 * A handle of type <code>(Object, Object[])Object</code> invoking a method as <code>Method.invoke</code> does.
+	 */
+	static MethodHandle method(Lookup lk, Class<?> owner, String name, boolean declared, Class<?>[] parameterTypes) throws ReflectiveOperationException {
+		// Method.invoke is caller sensitive, and through the lookup it behaves as if called by the caller
+		MethodHandle invoke = lk.findVirtual(Method.class, "invoke", INVOKE_TYPE);
+		Method method;
+		try {
+			method = findMethod(owner, name, declared, parameterTypes);
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+			return MethodHandles.foldArguments(invoke, MethodHandles.insertArguments(MH_FIND_METHOD, 0, owner, name, declared, parameterTypes.clone()));
+		}
+		MethodHandle target = direct(lk, method, false);
+		if (target == null) return invoke.bindTo(method);
+		target = target.asFixedArity();
+		target = MethodHandles.catchException(target, Throwable.class, thrower(MH_INVOCATION_TARGET, target.type()));
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		MethodHandle generic = target.asType(MethodType.genericMethodType(target.type().parameterCount()));
+		if (isStatic) generic = MethodHandles.dropArguments(generic, 0, Object.class);
+		return reflective(generic.asSpreader(Object[].class, method.getParameterCount()), isStatic);
+	}
+
+	/**
+	 * A handle of type <code>(Object)Object</code> reading a field as <code>Field.get</code> does.
+	 */
+	static MethodHandle getter(Lookup lk, Class<?> owner, String name, boolean declared) throws ReflectiveOperationException {
+		MethodHandle get = lk.findVirtual(Field.class, "get", GET_TYPE);
+		Field field;
+		try {
+			field = findField(owner, name, declared);
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+			return MethodHandles.foldArguments(get, MethodHandles.insertArguments(MH_FIND_FIELD, 0, owner, name, declared));
+		}
+		MethodHandle target = direct(lk, field, false);
+		if (target == null) return get.bindTo(field);
+		boolean isStatic = Modifier.isStatic(field.getModifiers());
+		if (isStatic) target = MethodHandles.dropArguments(target, 0, Object.class);
+		return reflective(target.asType(GET_TYPE), isStatic);
+	}
+
+	/**
+	 * A handle of type <code>(Object, Object)void</code> writing a field as <code>Field.set</code> does.
+	 */
+	static MethodHandle setter(Lookup lk, Class<?> owner, String name, boolean declared) throws ReflectiveOperationException {
+		MethodHandle set = lk.findVirtual(Field.class, "set", SET_TYPE);
+		Field field;
+		try {
+			field = findField(owner, name, declared);
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+			return MethodHandles.foldArguments(set, MethodHandles.insertArguments(MH_FIND_FIELD, 0, owner, name, declared));
+		}
+		MethodHandle target = direct(lk, field, true);
+		if (target == null) return set.bindTo(field);
+		boolean isStatic = Modifier.isStatic(field.getModifiers());
+		if (isStatic) target = MethodHandles.dropArguments(target, 0, Object.class);
+		return reflective(target.asType(SET_TYPE), isStatic);
+	}
+
+	/**
+	 * Get a direct handle to a member, or null if reflection has to be used to keep its behaviour: when the caller cannot access the
+	 * member, which reflection reports on every call, or when it is protected, where a direct handle only takes receivers of the caller's
+	 * own class.
+	 */
+	private static MethodHandle direct(Lookup lk, Member member, boolean setter) {
+		if (Modifier.isProtected(member.getModifiers())) return null;
+		try {
+			if (member instanceof Method) return lk.unreflect((Method) member);
+			// a final field cannot be set, and reflection throws the same
+			return setter ? lk.unreflectSetter((Field) member) : lk.unreflectGetter((Field) member);
+		} catch (IllegalAccessException ex) {
+			return null;
+		}
+	}
+
+	// Fail with IllegalArgumentException where argument conversion fails, and with NullPointerException on a missing receiver.
+	private static MethodHandle reflective(MethodHandle generic, boolean isStatic) {
+		MethodHandle converted = MethodHandles.catchException(generic, ClassCastException.class, thrower(MH_ILLEGAL_ARGUMENT, generic.type()));
+		converted = MethodHandles.catchException(converted, NullPointerException.class, thrower(MH_ILLEGAL_ARGUMENT, generic.type()));
+		if (isStatic) return converted;
+		return MethodHandles.filterArguments(converted, 0, MH_REQUIRE_NON_NULL);
+	}
+
+	// A handler of the given type throwing the exception made from the one caught
+	private static MethodHandle thrower(MethodHandle wrap, MethodType type) {
+		@SuppressWarnings("unchecked")
+		Class<? extends Throwable> exType = (Class<? extends Throwable>) wrap.type().returnType();
+		MethodHandle thrower = MethodHandles.filterArguments(MethodHandles.throwException(type.returnType(), exType), 0, wrap);
+		return MethodHandles.dropArguments(thrower, 1, type.parameterList());
+	}
+
+	@SuppressWarnings("unused")
+	private static InvocationTargetException invocationTarget(Throwable cause) {
+		return new InvocationTargetException(cause);
+	}
+
+	@SuppressWarnings("unused")
+	private static IllegalArgumentException illegalArgument(Throwable cause) {
+		return new IllegalArgumentException("argument type mismatch", cause);
+	}
+
+	private static Method findMethod(Class<?> owner, String name, boolean declared, Class<?>[] parameterTypes) throws NoSuchMethodException {
+		return declared ? owner.getDeclaredMethod(name, parameterTypes) : owner.getMethod(name, parameterTypes);
+	}
+
+	private static Field findField(Class<?> owner, String name, boolean declared) throws NoSuchFieldException {
+		return declared ? owner.getDeclaredField(name) : owner.getField(name);
+	}
+}
@@ -0,0 +1,41 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.CallSite;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a call site in this package changing its target after it was first linked. The stack trace leads to the
+ * invocation that caused the relink, and so to the site; sites that relink often are unstable and deoptimize the code they are
+ * inlined into every time.
+ */
+@Name("me.archdukeliamus.dygenerate.Relink")
+@Label("Call Site Relink")
+@Category({"Dygenerate", "Linkage"})
+@Description("A Dygenerate call site changing its target")
+final class RelinkEvent extends Event {
+	@Label("Call Site Class")
+	Class<?> callSiteClass;
+	@Label("Type")
+	String type;
+	@Label("Reason")
+	String reason;
+
+	/**
+	 * Record a relink, if the event is enabled.
+	 * @param site the call site being relinked
+	 * @param reason why the target changed
+	 */
+	static void record(CallSite site, String reason) {
+		RelinkEvent event = new RelinkEvent();
+		if (!event.shouldCommit()) return;
+		event.callSiteClass = site.getClass();
+		event.type = site.type().toMethodDescriptorString();
+		event.reason = reason;
+		event.commit();
+	}
+}
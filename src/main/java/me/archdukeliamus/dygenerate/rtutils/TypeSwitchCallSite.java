@@ -0,0 +1,102 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+
+/**
+ * A call site that dispatches on the class of its first argument, returning the index of the first case class the argument is an
+ * instance of. The second argument is the index to restart matching from, as used by a switch that retries after a failed guard.
+ * A null argument returns -1, and an argument matching no case class returns the number of case classes.
+ * <br><br>
+ * The matching case indices of each receiver class are computed once and cached in a <code>ClassValue</code>. In addition, the first
+ * receiver class seen with a restart index of zero is guarded inline and returns its case index as a constant, so monomorphic switches
+ * avoid the cache lookup entirely.
+ * <br><br>
+ * Use of this call site is safe by multiple threads. In the case of concurrent dispatches to the linker, the first writer wins.
+ */
+final class TypeSwitchCallSite extends MutableCallSite {
+	private static final MethodHandle MH_TEST_CLASS;
+	private static final MethodHandle MH_LOOKUP;
+	private static final MethodHandle MH_LINK;
+	static {
+		try {
+			MethodHandles.Lookup lk = MethodHandles.lookup();
+			MH_TEST_CLASS = lk.findStatic(TypeSwitchCallSite.class, "testClass", MethodType.methodType(boolean.class, Class.class, Object.class, int.class));
+			MH_LOOKUP = lk.findStatic(TypeSwitchCallSite.class, "lookup", MethodType.methodType(int.class, ClassValue.class, int.class, Object.class, int.class));
+			MH_LINK = lk.findVirtual(TypeSwitchCallSite.class, "link", MethodType.methodType(int.class, Object.class, int.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private final Class<?>[] labels; // case classes, in order
+	private final ClassValue<int[]> matches; // for each receiver class, the ascending case indices it is an instance of
+	private final MethodHandle lookupHandle; // generic dispatch through the cache
+	private boolean linked; // whether the inline guard has been installed, guarded by this
+
+	/**
+	 * Construct a type switch call site.
+	 * @param type the call site type, which must be (any reference, int) -> int
+	 * @param labels the case classes
+	 */
+	TypeSwitchCallSite(MethodType type, Class<?>[] labels) {
+		super(type);
+		if (type.parameterCount() != 2 || type.parameterType(0).isPrimitive() || type.parameterType(1) != int.class || type.returnType() != int.class) {
+			throw new IllegalArgumentException("type switch call sites must have type (Object, int) -> int, not " + type);
+		}
+		for (Class<?> label : labels) {
+			if (label == null) throw new IllegalArgumentException("null case class");
+		}
+		this.labels = labels.clone();
+		this.matches = new ClassValue<int[]>() {
+			@Override
+			protected int[] computeValue(Class<?> receiver) {
+				return matchingCases(receiver);
+			}
+		};
+		this.lookupHandle = MethodHandles.insertArguments(MH_LOOKUP, 0, matches, this.labels.length).asType(type);
+		setTarget(MH_LINK.bindTo(this).asType(type));
+	}
+
+	@SuppressWarnings("unused")
+	private final int link(Object receiver, int restart) {
+		if (receiver != null && restart == 0) {
+			synchronized (this) {
+				if (!linked) {
+					// guard on the first receiver class, everything else goes through the cache
+					Class<?> cls = receiver.getClass();
+					MethodHandle constant = MethodHandles.dropArguments(MethodHandles.constant(int.class, lookup(matches, labels.length, receiver, 0)), 0, type().parameterList());
+					setTarget(MethodHandles.guardWithTest(MH_TEST_CLASS.bindTo(cls).asType(type().changeReturnType(boolean.class)), constant, lookupHandle));
+					linked = true; // the only link, which replaces no linked target and so is not a relink
+				}
+			}
+		}
+		return lookup(matches, labels.length, receiver, restart);
+	}
+
+	private final int[] matchingCases(Class<?> receiver) {
+		int[] cases = new int[labels.length];
+		int count = 0;
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i].isAssignableFrom(receiver)) cases[count++] = i;
+		}
+		return Arrays.copyOf(cases, count);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean testClass(Class<?> expected, Object receiver, int restart) {
+		return receiver != null && receiver.getClass() == expected && restart == 0;
+	}
+
+	private static int lookup(ClassValue<int[]> matches, int caseCount, Object receiver, int restart) {
+		if (receiver == null) return -1;
+		int[] cases = matches.get(receiver.getClass());
+		for (int i = 0; i < cases.length; i++) {
+			if (cases[i] >= restart) return cases[i];
+		}
+		return caseCount;
+	}
+}
@@ -0,0 +1,178 @@
+package me.archdukeliamus.dygenerate.rtutils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A call site that profiles the values passed as one selected argument and specializes itself on the most frequently seen values.
+ * While profiling, every invocation is passed to a generic <code>resolver</code> handle and the value of the profiled argument is
+ * recorded. Once enough samples have been taken, the call site is relinked to a chain of guards testing the profiled argument
+ * against each of the hottest values, each guard calling the resolver with that value bound in as a constant (as if by
+ * <code>MethodHandles.insertArguments</code>). Any other value falls back to the generic resolver.
+ * <br><br>
+ * Reference arguments are compared by identity, which suits strategy objects, codecs and enum constants. Primitive arguments are
+ * compared by value. If the hottest values do not cover at least half of the samples taken, the profile is considered unstable and
+ * the call site is linked directly to the generic resolver instead.
+ * <br><br>
+ * The profile is taken once. After specialization (or the decision not to specialize) the call site target does not change again.
+ * <br><br>
+ * Use of this call site is safe by multiple threads. Samples taken concurrently with specialization may be discarded.
+ */
+public final class ValueProfileCallSite extends MutableCallSite {
+	private static final MethodHandle MH_IDENTITY;
+	private static final MethodHandle MH_EQUALS;
+	static {
+		try {
+			MH_IDENTITY = MethodHandles.lookup().findStatic(ValueProfileCallSite.class, "testIdentity", MethodType.methodType(boolean.class, Object.class, Object.class));
+			MH_EQUALS = MethodHandles.lookup().findStatic(Objects.class, "equals", MethodType.methodType(boolean.class, Object.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	private final MethodHandle MH_RECORD = findOwnMH("record", MethodType.methodType(void.class, Object.class));
+	private final MethodHandle resolver; // generic target, adapted to the call site type
+	private final int argIndex; // index of the profiled argument
+	private final int maxValues; // specialize on at most n many values
+	private final int sampleSize; // amount of invocations to profile before specializing
+	// profile of seen values and their counts, only accessed while holding the lock on this call site
+	private Map<Object,int[]> profile;
+	private int samples;
+
+	/**
+	 * Construct a call site that specializes on up to 4 values after profiling 256 invocations.
+	 * @param type Type of the call site
+	 * @param resolver Handle called to perform the operation; must be adaptable to the call site type
+	 * @param argIndex Index of the argument to profile
+	 */
+	public ValueProfileCallSite(MethodType type, MethodHandle resolver, int argIndex) {
+		this(type, resolver, argIndex, 4, 256);
+	}
+
+	/**
+	 * Construct a call site with a custom profile size.
+	 * @param type Type of the call site
+	 * @param resolver Handle called to perform the operation; must be adaptable to the call site type
+	 * @param argIndex Index of the argument to profile
+	 * @param maxValues Maximum number of values to specialize on. Must be zero or more.
+	 * @param sampleSize Number of invocations to profile before specializing. Must be greater than zero.
+	 */
+	public ValueProfileCallSite(MethodType type, MethodHandle resolver, int argIndex, int maxValues, int sampleSize) {
+		super(type);
+		Objects.requireNonNull(resolver, "resolver");
+		if (argIndex < 0 || argIndex >= type.parameterCount()) throw new IllegalArgumentException("Profiled argument index out of range: " + argIndex);
+		if (maxValues < 0) throw new IllegalArgumentException("Max specialized values must be zero or more");
+		if (sampleSize <= 0) throw new IllegalArgumentException("Sample size must be a positive integer");
+		this.resolver = resolver.asType(type);
+		this.argIndex = argIndex;
+		this.maxValues = maxValues;
+		this.sampleSize = sampleSize;
+		this.profile = new IdentityHashMap<>();
+		this.samples = 0;
+		setTarget(genProfilingHandle());
+	}
+
+	@SuppressWarnings("unused")
+	private final void record(Object value) {
+		synchronized (this) {
+			if (profile == null) return; // already specialized, a stale target got here first
+			if (isPrimitive()) {
+				// boxes are not canonical, so count by equality instead. The key set stays tiny for hot values anyway
+				Object canonical = value;
+				for (Object key : profile.keySet()) {
+					if (key.equals(value)) {
+						canonical = key;
+						break;
+					}
+				}
+				value = canonical;
+			}
+			int[] count = profile.get(value);
+			if (count == null) {
+				count = new int[1];
+				profile.put(value, count);
+			}
+			count[0]++;
+			samples++;
+			if (samples >= sampleSize) {
+				setTarget(genSpecializedHandle(hottestValues()));
+				RelinkEvent.record(this, "specialized on profiled values");
+				profile = null; // drop the profile, no longer needed
+			}
+		}
+	}
+
+	/**
+	 * Pick the values to specialize on, hottest first. Returns an empty list if the profile is unstable.
+	 */
+	private final List<Object> hottestValues() {
+		List<Map.Entry<Object,int[]>> entries = new ArrayList<>(profile.entrySet());
+		entries.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+		List<Object> hottest = new ArrayList<>();
+		int covered = 0;
+		for (int i = 0; i < entries.size() && i < maxValues; i++) {
+			hottest.add(entries.get(i).getKey());
+			covered += entries.get(i).getValue()[0];
+		}
+		if (covered * 2 < samples) {
+			// too polymorphic to be worth guarding on
+			hottest.clear();
+		}
+		return hottest;
+	}
+
+	private final boolean isPrimitive() {
+		return type().parameterType(argIndex).isPrimitive();
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean testIdentity(Object expected, Object actual) {
+		return expected == actual;
+	}
+
+	private final MethodHandle findOwnMH(String name, MethodType type) {
+		try {
+			return MethodHandles.lookup().findSpecial(getClass(), name, type, getClass()).bindTo(this);
+		} catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new Error(ex); // Should not happen
+		}
+	}
+
+	// Record the profiled argument, then call the generic resolver
+	private final MethodHandle genProfilingHandle() {
+		Class<?> argType = type().parameterType(argIndex);
+		MethodHandle recorder = MH_RECORD.asType(MethodType.methodType(void.class, argType));
+		// accept all leading arguments up to and including the profiled one
+		recorder = MethodHandles.dropArguments(recorder, 0, type().parameterList().subList(0, argIndex));
+		return MethodHandles.foldArguments(resolver, recorder);
+	}
+
+	// Cascading list of guards (if arg is value, call resolver specialized on value, if not any, call resolver)
+	private final MethodHandle genSpecializedHandle(List<Object> values) {
+		Class<?> argType = type().parameterType(argIndex);
+		MethodHandle test;
+		if (isPrimitive()) {
+			test = MH_EQUALS;
+		} else {
+			test = MH_IDENTITY;
+		}
+		MethodHandle handle = resolver;
+		// install coldest first so the hottest value is tested first
+		for (int i = values.size() - 1; i >= 0; i--) {
+			Object value = values.get(i);
+			MethodHandle guard = test.bindTo(value).asType(MethodType.methodType(boolean.class, argType));
+			guard = MethodHandles.dropArguments(guard, 0, type().parameterList().subList(0, argIndex));
+			MethodHandle specialized = MethodHandles.insertArguments(resolver, argIndex, value);
+			specialized = MethodHandles.dropArguments(specialized, argIndex, argType);
+			handle = MethodHandles.guardWithTest(guard, specialized, handle);
+		}
+		return handle;
+	}
+}
@@ -1,7 +1,10 @@
 /**
  * The <code>me.archdukeliamus.dygenerate.rtutils</code> package contains various bootstrap methods and call site implementations for
  * potentially common uses of <code>invokedynamic</code>, such as unusual dispatching strategies or analogues of behavior in other
- * language runtimes.
+ * language runtimes. Bootstrap methods for dynamic constants are found in {@link me.archdukeliamus.dygenerate.rtutils.Constants}.
+ * <br>
+ * Bootstraps, duck typing cache misses and call site relinks are reported as JDK Flight Recorder events in the <code>Dygenerate</code>
+ * category, so that unstable call sites can be found in a recording. The events cost next to nothing while they are disabled.
  * <br>
  * <b>Use of classes in this package requires Dygenerate to be present at runtime.</b>
  */
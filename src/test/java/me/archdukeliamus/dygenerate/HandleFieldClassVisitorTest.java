@@ -0,0 +1,114 @@
+package me.archdukeliamus.dygenerate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+class HandleFieldClassVisitorTest {
+	// only read as bytecode; the transformed copies are defined in loaders of their own
+	static final class Handles {
+		private static final MethodHandle LEN;
+		static {
+			try {
+				LEN = MethodHandles.lookup().findVirtual(String.class, "length", MethodType.methodType(int.class));
+			} catch (NoSuchMethodException | IllegalAccessException ex) {
+				throw new Error(ex);
+			}
+		}
+
+		static int len(String s) throws Throwable {
+			return (int) LEN.invokeExact(s);
+		}
+
+		// reads the private field of its nest host directly
+		static final class Inner {
+			static int len2(String s) throws Throwable {
+				return (int) LEN.invokeExact(s);
+			}
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+		Loader() {
+			super(HandleFieldClassVisitorTest.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classBytecode) {
+			return defineClass(null, classBytecode, 0, classBytecode.length);
+		}
+	}
+
+	@Test
+	void fieldsReadByNestmatesAreKept() throws Throwable {
+		TransformOptions options = new TransformOptions();
+		options.setHandleFields(true);
+		TransformReport report = new TransformReport();
+		byte[] host = Dygenerate.transformBytecodes(read(Handles.class), options, report);
+		Dygenerate.transformBytecodes(read(Handles.Inner.class), options, report);
+		assertTrue(report.getChangedClasses().isEmpty());
+		assertTrue(hasField(host, "LEN"));
+		assertEquals(3, Handles.Inner.len2("abc"));
+	}
+
+	@Test
+	void fieldsOutsideANestAreReplaced() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setHandleFields(true);
+		TransformReport report = new TransformReport();
+		byte[] transformed = Dygenerate.transformBytecodes(withoutNest(read(Handles.class)), options, report);
+		assertFalse(report.getChangedClasses().isEmpty());
+		assertFalse(hasField(transformed, "LEN"));
+		Method len = new Loader().define(transformed).getDeclaredMethod("len", String.class);
+		len.setAccessible(true);
+		assertEquals(3, len.invoke(null, "abc"));
+	}
+
+	@Test
+	void fieldsAreLeftAloneByDefault() throws Exception {
+		TransformReport report = new TransformReport();
+		Dygenerate.transformBytecodes(withoutNest(read(Handles.class)), new TransformOptions(), report);
+		assertTrue(report.getChangedClasses().isEmpty());
+	}
+
+	// the class as if it were declared on its own, without a nest host or nest members
+	private static byte[] withoutNest(byte[] classBytecode) {
+		ClassNode node = new ClassNode(Opcodes.ASM9);
+		new ClassReader(classBytecode).accept(node, 0);
+		node.nestHostClass = null;
+		node.nestMembers = null;
+		node.innerClasses.clear();
+		ClassWriter cw = new ClassWriter(0);
+		node.accept(cw);
+		return cw.toByteArray();
+	}
+
+	private static boolean hasField(byte[] classBytecode, String name) {
+		ClassNode node = new ClassNode(Opcodes.ASM9);
+		new ClassReader(classBytecode).accept(node, 0);
+		for (FieldNode field : node.fields) {
+			if (field.name.equals(name)) return true;
+		}
+		return false;
+	}
+
+	private static byte[] read(Class<?> type) throws IOException {
+		String resource = "/" + type.getName().replace('.', '/') + ".class";
+		try (InputStream in = HandleFieldClassVisitorTest.class.getResourceAsStream(resource)) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package me.archdukeliamus.dygenerate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+class PrelinkClassVisitorTest {
+	// only read as bytecode; its lambda and string concatenation are linked by the JDK's own bootstraps
+	static final class Sites {
+		static String greet(String name) {
+			Supplier<String> greeting = () -> "hi " + name;
+			return greeting.get();
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+		Loader() {
+			super(PrelinkClassVisitorTest.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classBytecode) {
+			return defineClass(null, classBytecode, 0, classBytecode.length);
+		}
+	}
+
+	@Test
+	void compilerSitesArePrelinked() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setPrelinkHooks(true);
+		TransformReport report = new TransformReport();
+		byte[] transformed = Dygenerate.transformBytecodes(read(Sites.class), options, report);
+		assertTrue(report.getPrelinkedClasses().contains(Type.getInternalName(Sites.class)));
+		Class<?> sites = new Loader().define(transformed);
+		invoke(sites, PrelinkClassVisitor.HOOK_NAME);
+		assertEquals("hi there", invoke(sites, "greet", "there"));
+		assertEquals("hi again", invoke(sites, "greet", "again"));
+	}
+
+	@Test
+	void primitiveConstantArgumentsAreBoxed() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setPrelinkHooks(true);
+		byte[] transformed = Dygenerate.transformBytecodes(concatOfConstant(), options, null);
+		Class<?> generated = new Loader().define(transformed);
+		invoke(generated, PrelinkClassVisitor.HOOK_NAME);
+		assertEquals(String.valueOf(Integer.MAX_VALUE), invoke(generated, "value"));
+	}
+
+	@Test
+	void sitesAreOnlyRecordedForAnInventory() throws Exception {
+		TransformReport report = new TransformReport();
+		Dygenerate.transformBytecodes(read(Sites.class), new TransformOptions(), report);
+		assertTrue(report.getSites().isEmpty());
+		report.setInventory(true);
+		Dygenerate.transformBytecodes(read(Sites.class), new TransformOptions(), report);
+		assertFalse(report.getSites().isEmpty());
+		assertTrue(report.getChangedClasses().isEmpty());
+	}
+
+	// a class whose value() concatenates an int dynamic constant, Integer.MAX_VALUE, passed as a static argument of the site
+	private static byte[] concatOfConstant() {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "Concat", null, "java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "value", "()Ljava/lang/String;", null, null);
+		mv.visitCode();
+		ConstantDynamic maxValue = new ConstantDynamic("MAX_VALUE", "I", new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/ConstantBootstraps",
+				"getStaticFinal", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Class;)Ljava/lang/Object;", false),
+				Type.getType(Integer.class));
+		Handle concat = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory", "makeConcatWithConstants",
+				"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false);
+		mv.visitInvokeDynamicInsn("value", "()Ljava/lang/String;", concat, "\u0002", maxValue);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static Object invoke(Class<?> owner, String name, Object... args) throws ReflectiveOperationException {
+		for (Method method : owner.getDeclaredMethods()) {
+			if (!method.getName().equals(name) || method.getParameterCount() != args.length) continue;
+			method.setAccessible(true);
+			return method.invoke(null, args);
+		}
+		throw new NoSuchMethodException(name);
+	}
+
+	private static byte[] read(Class<?> type) throws IOException {
+		String resource = "/" + type.getName().replace('.', '/') + ".class";
+		try (InputStream in = PrelinkClassVisitorTest.class.getResourceAsStream(resource)) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package me.archdukeliamus.dygenerate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+class ReflectionClassVisitorTest {
+	// only read as bytecode; the transformed copies are defined in loaders of their own
+	static final class Lookups {
+		static Class<?> found() throws ClassNotFoundException {
+			return Class.forName("java.lang.String");
+		}
+
+		static Class<?> missing() throws ClassNotFoundException {
+			return Class.forName("does.not.Exist");
+		}
+	}
+
+	// only read as bytecode, like Lookups
+	static final class Members {
+		private int value = 1;
+
+		private static int twice(int x) {
+			return x * 2;
+		}
+
+		private void fail() {
+			throw new IllegalStateException();
+		}
+
+		static Object callStatic(int x) throws ReflectiveOperationException {
+			return Members.class.getDeclaredMethod("twice", int.class).invoke(null, x);
+		}
+
+		static Object callInstance(Object receiver) throws ReflectiveOperationException {
+			return String.class.getMethod("length").invoke(receiver);
+		}
+
+		static Object callWith(Object... args) throws ReflectiveOperationException {
+			return Members.class.getDeclaredMethod("twice", int.class).invoke(null, args);
+		}
+
+		static void callFailing(Object receiver) throws ReflectiveOperationException {
+			Members.class.getDeclaredMethod("fail").invoke(receiver);
+		}
+
+		static Object callMissing() throws ReflectiveOperationException {
+			return Members.class.getDeclaredMethod("missing").invoke(null);
+		}
+
+		static Object increment(Members members) throws ReflectiveOperationException {
+			Object next = (Integer) Members.class.getDeclaredField("value").get(members) + 1;
+			Members.class.getDeclaredField("value").set(members, next);
+			return Members.class.getDeclaredField("value").get(members);
+		}
+
+		static Object escapes() throws ReflectiveOperationException {
+			return Members.class.getDeclaredMethod("twice", int.class);
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+		Loader() {
+			super(ReflectionClassVisitorTest.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classBytecode) {
+			return defineClass(null, classBytecode, 0, classBytecode.length);
+		}
+	}
+
+	@Test
+	void transformingTwiceChangesNothing() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setReflectionConstants(true);
+		TransformReport first = new TransformReport();
+		byte[] once = Dygenerate.transformBytecodes(read(Lookups.class), options, first);
+		assertFalse(first.getChangedClasses().isEmpty());
+		TransformReport second = new TransformReport();
+		byte[] twice = Dygenerate.transformBytecodes(once, options, second);
+		assertTrue(second.getChangedClasses().isEmpty());
+		assertEquals(methodCount(once), methodCount(twice));
+		Class<?> lookups = new Loader().define(twice);
+		assertEquals(String.class, invoke(lookups, "found"));
+		assertEquals(String.class, invoke(lookups, "found"));
+	}
+
+	@Test
+	void failedLookupThrowsAtTheSiteEveryTime() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setReflectionConstants(true);
+		Class<?> lookups = new Loader().define(Dygenerate.transformBytecodes(read(Lookups.class), options, null));
+		for (int i = 0; i < 2; i++) {
+			InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> invoke(lookups, "missing"));
+			assertInstanceOf(ClassNotFoundException.class, ex.getCause());
+		}
+	}
+
+	@Test
+	void memberCallsBehaveAsReflection() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setReflectionConstants(true);
+		TransformReport report = new TransformReport();
+		byte[] transformed = Dygenerate.transformBytecodes(read(Members.class), options, report);
+		assertEquals(8, converted(report));
+		assertEquals(transformed.length, Dygenerate.transformBytecodes(transformed, options, null).length);
+		Class<?> members = new Loader().define(transformed);
+		for (int i = 0; i < 2; i++) {
+			assertEquals(6, invoke(members, "callStatic", int.class, 3));
+			assertEquals(3, invoke(members, "callInstance", Object.class, "abc"));
+			assertEquals(10, invoke(members, "callWith", Object[].class, new Object[] {(short) 5}));
+			Object instance = constructor(members);
+			assertEquals(2, invoke(members, "increment", members, instance));
+		}
+		assertCause(NullPointerException.class, () -> invoke(members, "callInstance", Object.class, null));
+		assertCause(IllegalArgumentException.class, () -> invoke(members, "callInstance", Object.class, 1));
+		assertCause(IllegalArgumentException.class, () -> invoke(members, "callWith", Object[].class, new Object[] {"x"}));
+		assertCause(IllegalArgumentException.class, () -> invoke(members, "callWith", Object[].class, new Object[0]));
+		Object receiver = constructor(members);
+		InvocationTargetException ex = assertCause(InvocationTargetException.class, () -> invoke(members, "callFailing", Object.class, receiver));
+		assertInstanceOf(IllegalStateException.class, ex.getCause());
+		for (int i = 0; i < 2; i++) {
+			assertCause(NoSuchMethodException.class, () -> invoke(members, "callMissing"));
+		}
+	}
+
+	@Test
+	void escapingMembersAreLeftAlone() throws Exception {
+		TransformOptions options = new TransformOptions();
+		options.setReflectionConstants(true);
+		TransformReport report = new TransformReport();
+		Dygenerate.transformBytecodes(read(Members.class), options, report);
+		boolean skipped = false;
+		for (TransformReport.Entry entry : report.getEntries()) {
+			if (entry.getMethod().startsWith("escapes")) skipped |= !entry.isConverted();
+		}
+		assertTrue(skipped);
+	}
+
+	@Test
+	void lookupsAreLeftAloneByDefault() throws Exception {
+		TransformReport report = new TransformReport();
+		Dygenerate.transformBytecodes(read(Lookups.class), new TransformOptions(), report);
+		assertTrue(report.getChangedClasses().isEmpty());
+	}
+
+	private static Object invoke(Class<?> owner, String name) throws ReflectiveOperationException {
+		Method method = owner.getDeclaredMethod(name);
+		method.setAccessible(true);
+		return method.invoke(null);
+	}
+
+	private static Object invoke(Class<?> owner, String name, Class<?> parameterType, Object argument) throws ReflectiveOperationException {
+		Method method = owner.getDeclaredMethod(name, parameterType);
+		method.setAccessible(true);
+		return method.invoke(null, argument);
+	}
+
+	private static Object constructor(Class<?> owner) throws ReflectiveOperationException {
+		Constructor<?> constructor = owner.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return constructor.newInstance();
+	}
+
+	// the exception thrown by a transformed method called through reflection
+	private static <T extends Throwable> T assertCause(Class<T> type, Executable executable) {
+		InvocationTargetException ex = assertThrows(InvocationTargetException.class, executable);
+		return assertInstanceOf(type, ex.getCause());
+	}
+
+	private static int converted(TransformReport report) {
+		int count = 0;
+		for (TransformReport.Entry entry : report.getEntries()) {
+			if (entry.isConverted()) count++;
+		}
+		return count;
+	}
+
+	// the number of methods, failing if any two share a name
+	private static int methodCount(byte[] classBytecode) {
+		ClassNode node = new ClassNode(Opcodes.ASM9);
+		new ClassReader(classBytecode).accept(node, 0);
+		Set<String> names = new HashSet<>();
+		for (MethodNode method : node.methods) {
+			assertTrue(names.add(method.name), method.name + " is declared twice");
+		}
+		return names.size();
+	}
+
+	private static byte[] read(Class<?> type) throws IOException {
+		String resource = "/" + type.getName().replace('.', '/') + ".class";
+		try (InputStream in = ReflectionClassVisitorTest.class.getResourceAsStream(resource)) {
+			return in.readAllBytes();
+		}
+	}
+}